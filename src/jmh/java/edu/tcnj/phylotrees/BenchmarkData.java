@@ -0,0 +1,88 @@
+package edu.tcnj.phylotrees;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Fixed-seed datasets for the benchmarks, so that every run (and every version of the code) measures
+ * the same species.
+ * <p>
+ * The species are evolved rather than drawn at random: each new sequence copies one of the sequences
+ * before it and mutates a few of its characters, so the data has a tree-like structure for the branch+bound
+ * to find, as real data does.
+ */
+public class BenchmarkData {
+
+    /**
+     * The seed of every dataset.
+     */
+    public static final long SEED = 20160505L;
+
+    /**
+     * The state symbols, taken from the front for smaller alphabets. The first four are the DNA bases
+     * in the order of the mixed-weight matrix, and all twenty are amino acids.
+     */
+    public static final String SYMBOLS = "AGTCRNDQEHILKMFPSWYV";
+
+    //The chance of each character changing from a sequence to the one copied from it
+    private static final double MUTATION_RATE = 0.1;
+
+    /**
+     * Generates distinct species, formatted as the lines of species.txt ("L:XYZ...").
+     *
+     * @param taxa   the number of species
+     * @param chars  the number of characters each species has
+     * @param states the number of states a character can take, at most {@code SYMBOLS.length()}
+     * @param seed   the seed of the random choices
+     * @return the species
+     */
+    public static List<String> species(int taxa, int chars, int states, long seed) {
+        Random random = new Random(seed);
+        char[] ancestor = new char[chars];
+        for (int i = 0; i < chars; i++) {
+            ancestor[i] = SYMBOLS.charAt(random.nextInt(states));
+        }
+        List<char[]> sequences = new ArrayList<>();
+        sequences.add(ancestor);
+
+        List<String> species = new ArrayList<>(taxa);
+        Set<String> seen = new HashSet<>();
+        while (species.size() < taxa) {
+            char[] sequence = sequences.get(random.nextInt(sequences.size())).clone();
+            for (int i = 0; i < chars; i++) {
+                if (random.nextDouble() < MUTATION_RATE) {
+                    sequence[i] = SYMBOLS.charAt(random.nextInt(states));
+                }
+            }
+            sequences.add(sequence);
+            //Two species with the same sequence would be joined by a zero-cost edge, so skip repeats
+            if (seen.add(new String(sequence))) {
+                species.add("T" + species.size() + ":" + new String(sequence));
+            }
+        }
+        return species;
+    }
+
+    /**
+     * Generates a symmetric, metric weight matrix for the mixed-weight algorithms. The states are paired
+     * off in order, and a change costs 1 within a pair and 2.5 between pairs, which for DNA is the
+     * transition/transversion matrix of the README.
+     *
+     * @param states the number of states
+     * @return the weight matrix
+     */
+    public static double[][] weights(int states) {
+        double[][] weights = new double[states][states];
+        for (int i = 0; i < states; i++) {
+            for (int j = 0; j < states; j++) {
+                if (i != j) {
+                    weights[i][j] = i / 2 == j / 2 ? 1 : 2.5;
+                }
+            }
+        }
+        return weights;
+    }
+}
@@ -0,0 +1,63 @@
+package edu.tcnj.phylotrees.mixedweight;
+
+import edu.tcnj.phylotrees.BenchmarkData;
+import edu.tcnj.phylotrees.mixedweight.algo.CubicTreeEnumerator;
+import edu.tcnj.phylotrees.mixedweight.algo.MixedTreeEnumerator;
+import edu.tcnj.phylotrees.mixedweight.data.Alphabet;
+import edu.tcnj.phylotrees.mixedweight.data.Node;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the exhaustive searches with mixed weights: each enumerator finding every most
+ * parsimonious tree of the same species.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EnumerationBenchmark {
+
+    @Param({"6", "8"})
+    public int taxa;
+
+    @Param({"30", "300"})
+    public int chars;
+
+    @Param({"4", "20"})
+    public int states;
+
+    private List<Node> species;
+    private double[][] weights;
+
+    @Setup
+    public void setUp() {
+        weights = BenchmarkData.weights(states);
+        Alphabet alphabet = new Alphabet(BenchmarkData.SYMBOLS.substring(0, states));
+        species = Parser.speciesList(BenchmarkData.species(taxa, chars, states, BenchmarkData.SEED), alphabet);
+    }
+
+    @Benchmark
+    public List<Node> cubicSankoff() {
+        return new CubicTreeEnumerator(species, weights, chars).sankoffEnumerate();
+    }
+
+    @Benchmark
+    public List<Node> mixedSankoff() {
+        return new MixedTreeEnumerator(species, weights, chars).sankoffEnumerate();
+    }
+}
@@ -0,0 +1,116 @@
+package edu.tcnj.phylotrees.mixedweight;
+
+import edu.tcnj.phylotrees.BenchmarkData;
+import edu.tcnj.phylotrees.mixedweight.algo.EdgeContractor;
+import edu.tcnj.phylotrees.mixedweight.algo.Sankoff;
+import edu.tcnj.phylotrees.mixedweight.algo.StepwiseAddition;
+import edu.tcnj.phylotrees.mixedweight.data.Alphabet;
+import edu.tcnj.phylotrees.mixedweight.data.Node;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of scoring a single tree with mixed weights: Sankoff's algorithm on a random cubic tree, and
+ * contracting the tree found by stepwise addition.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScoringBenchmark {
+
+    @Param({"16", "64"})
+    public int taxa;
+
+    @Param({"100", "1000"})
+    public int chars;
+
+    @Param({"4", "20"})
+    public int states;
+
+    private double[][] weights;
+    private Node tree;
+    private Node stepwiseTree;
+    //A fresh copy of the stepwise addition tree for each contraction
+    private Node contractTree;
+
+    @Setup
+    public void setUp() {
+        weights = BenchmarkData.weights(states);
+        Alphabet alphabet = new Alphabet(BenchmarkData.SYMBOLS.substring(0, states));
+        List<Node> species = Parser.speciesList(BenchmarkData.species(taxa, chars, states, BenchmarkData.SEED),
+                alphabet);
+
+        tree = randomTree(species, new Random(BenchmarkData.SEED));
+        //Sankoff's top down works from the costs of the bottom up
+        Sankoff.bottomUp(tree, weights, chars);
+
+        StepwiseAddition stepwiseAddition = new StepwiseAddition(species, weights, chars);
+        stepwiseAddition.search(true);
+        stepwiseTree = stepwiseAddition.getTree();
+    }
+
+    @Setup(Level.Invocation)
+    public void copyTree() {
+        contractTree = stepwiseTree.clone();
+    }
+
+    @Benchmark
+    public double sankoffBottomUp() {
+        return Sankoff.bottomUp(tree, weights, chars);
+    }
+
+    @Benchmark
+    public List<List<Node>> sankoffTopDown() {
+        return Sankoff.topDown(tree, weights, chars);
+    }
+
+    @Benchmark
+    public Set<Node> edgeContraction() {
+        return new EdgeContractor(weights, chars).edgeContraction(contractTree);
+    }
+
+    //A cubic tree of the species, each added to a random edge of the tree of the ones before it
+    static Node randomTree(List<Node> species, Random random) {
+        int chars = species.get(0).data.size();
+        Node root = new Node("", chars);
+        //The node below each edge
+        List<Node> edges = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Node leaf = species.get(i).clone();
+            Node.linkNodes(root, leaf);
+            edges.add(leaf);
+        }
+        for (int i = 3; i < species.size(); i++) {
+            Node below = edges.get(random.nextInt(edges.size()));
+            Node parent = below.parent;
+            Node internal = new Node("", chars);
+            Node leaf = species.get(i).clone();
+            Node.unlinkNodes(parent, below);
+            Node.linkNodes(parent, internal);
+            Node.linkNodes(internal, below);
+            Node.linkNodes(internal, leaf);
+            edges.add(internal);
+            edges.add(leaf);
+        }
+        return root;
+    }
+}
@@ -0,0 +1,88 @@
+package edu.tcnj.phylotrees.simpleweight;
+
+import edu.tcnj.phylotrees.BenchmarkData;
+import edu.tcnj.phylotrees.simpleweight.algo.ArrayCubicTreeEnumerator;
+import edu.tcnj.phylotrees.simpleweight.algo.CubicTreeEnumerator;
+import edu.tcnj.phylotrees.simpleweight.algo.MixedTreeEnumerator;
+import edu.tcnj.phylotrees.simpleweight.algo.ParallelCubicTreeEnumerator;
+import edu.tcnj.phylotrees.simpleweight.data.CharacterList;
+import edu.tcnj.phylotrees.simpleweight.data.Node;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the exhaustive searches with unit costs: each enumerator finding every most parsimonious
+ * tree of the same species, with the characters compressed to weighted site patterns as the program does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EnumerationBenchmark {
+
+    @Param({"7", "9"})
+    public int taxa;
+
+    @Param({"30", "300"})
+    public int chars;
+
+    @Param({"4", "20"})
+    public int states;
+
+    private List<Node<Character>> species;
+    private CharacterList<Character> worldSet;
+    private List<Integer> weights;
+    private int informative;
+
+    @Setup
+    public void setUp() {
+        species = new ArrayList<>();
+        List<Set<Character>> worldSet0 = new ArrayList<>();
+        weights = new ArrayList<>();
+        informative = new Parser().speciesList(BenchmarkData.species(taxa, chars, states, BenchmarkData.SEED),
+                species, worldSet0, weights);
+        worldSet = new CharacterList<>(worldSet0);
+    }
+
+    @Benchmark
+    public List<Node<Character>> cubicFitch() {
+        return new CubicTreeEnumerator<>(species, worldSet, informative, weights).fitchEnumerate();
+    }
+
+    @Benchmark
+    public List<Node<Character>> cubicHartigan() {
+        return new CubicTreeEnumerator<>(species, worldSet, informative, weights).hartiganEnumerate();
+    }
+
+    @Benchmark
+    public List<Node<Character>> arrayCubicFitch() {
+        return new ArrayCubicTreeEnumerator<>(species, worldSet, informative, weights).fitchEnumerate();
+    }
+
+    @Benchmark
+    public List<Node<Character>> parallelCubicFitch() {
+        return new ParallelCubicTreeEnumerator<>(species, worldSet, informative, weights,
+                Runtime.getRuntime().availableProcessors()).fitchEnumerate();
+    }
+
+    @Benchmark
+    public List<Node<Character>> mixedHartigan() {
+        return new MixedTreeEnumerator<>(species, worldSet, informative, weights).hartiganEnumerate();
+    }
+}
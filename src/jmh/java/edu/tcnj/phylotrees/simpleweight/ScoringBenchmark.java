@@ -0,0 +1,126 @@
+package edu.tcnj.phylotrees.simpleweight;
+
+import edu.tcnj.phylotrees.BenchmarkData;
+import edu.tcnj.phylotrees.simpleweight.algo.EdgeContractor;
+import edu.tcnj.phylotrees.simpleweight.algo.Fitch;
+import edu.tcnj.phylotrees.simpleweight.algo.Hartigan;
+import edu.tcnj.phylotrees.simpleweight.algo.StepwiseAddition;
+import edu.tcnj.phylotrees.simpleweight.data.CharacterList;
+import edu.tcnj.phylotrees.simpleweight.data.Node;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of scoring a single tree with unit costs: Fitch's and Hartigan's algorithms on a random
+ * cubic tree, and contracting the tree found by stepwise addition.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScoringBenchmark {
+
+    @Param({"16", "64"})
+    public int taxa;
+
+    @Param({"100", "1000"})
+    public int chars;
+
+    @Param({"4", "20"})
+    public int states;
+
+    private CharacterList<Character> worldSet;
+    //The number of characters left once the constant ones are dropped
+    private int informative;
+    private Node<Character> cubicTree;
+    private Node<Character> binaryTree;
+    private Node<Character> stepwiseTree;
+    //A fresh copy of the stepwise addition tree for each contraction
+    private Node<Character> contractTree;
+
+    @Setup
+    public void setUp() {
+        List<Node<Character>> species = new ArrayList<>();
+        List<Set<Character>> worldSet0 = new ArrayList<>();
+        new Parser().speciesList(BenchmarkData.species(taxa, chars, states, BenchmarkData.SEED), species, worldSet0);
+        worldSet = new CharacterList<>(worldSet0);
+        informative = species.get(0).root.size();
+
+        cubicTree = randomTree(species, new Random(BenchmarkData.SEED));
+        binaryTree = Fitch.cubicToBinary(randomTree(species, new Random(BenchmarkData.SEED)));
+        //Hartigan's top down works from the sets of the bottom up
+        Hartigan.bottomUp(cubicTree, worldSet, informative);
+
+        StepwiseAddition<Character> stepwiseAddition = new StepwiseAddition<>(species, informative, (int[]) null);
+        stepwiseAddition.search(true);
+        stepwiseTree = stepwiseAddition.getTree();
+    }
+
+    @Setup(Level.Invocation)
+    public void copyTree() {
+        contractTree = stepwiseTree.clone();
+    }
+
+    @Benchmark
+    public int fitchBottomUp() {
+        return Fitch.bottomUp(binaryTree, informative);
+    }
+
+    @Benchmark
+    public int hartiganBottomUp() {
+        return Hartigan.bottomUp(cubicTree, worldSet, informative);
+    }
+
+    @Benchmark
+    public List<List<Node<Character>>> hartiganTopDown() {
+        return Hartigan.topDown(cubicTree, informative);
+    }
+
+    @Benchmark
+    public Set<Node<Character>> edgeContraction() {
+        return new EdgeContractor<>(worldSet, informative).edgeContraction(contractTree);
+    }
+
+    //A cubic tree of the species, each added to a random edge of the tree of the ones before it
+    static <S> Node<S> randomTree(List<Node<S>> species, Random random) {
+        Node<S> root = new Node<>("");
+        //The node below each edge
+        List<Node<S>> edges = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Node<S> leaf = species.get(i).clone();
+            Node.linkNodes(root, leaf);
+            edges.add(leaf);
+        }
+        for (int i = 3; i < species.size(); i++) {
+            Node<S> below = edges.get(random.nextInt(edges.size()));
+            Node<S> parent = below.parent;
+            Node<S> internal = new Node<>("");
+            Node<S> leaf = species.get(i).clone();
+            Node.unlinkNodes(parent, below);
+            Node.linkNodes(parent, internal);
+            Node.linkNodes(internal, below);
+            Node.linkNodes(internal, leaf);
+            edges.add(internal);
+            edges.add(leaf);
+        }
+        return root;
+    }
+}
@@ -0,0 +1,129 @@
+package edu.tcnj.phylotrees;
+
+/**
+ * The position of a depth-first enumeration of cubic trees, which builds every tree by inserting the
+ * labelled nodes one at a time on each edge of the tree of the nodes before them. A partial tree with
+ * {@code n} labelled nodes has {@code 2n - 3} edges; the path counts how many of them have been searched
+ * in the current partial tree of each size, which tells how much of the search space has been covered.
+ * <p>
+ * The counts are plain fields, only written by the enumeration's thread. Another thread (such as a
+ * {@link ProgressReporter}'s) can still read them for an estimate, which may lag a little behind.
+ * <p>
+ * The counts up to the current partial tree are also a position the search can be resumed from, as
+ * the edges of a partial tree are always searched in the same order.
+ */
+public class InsertionPath {
+
+    //The number of edges searched in the current partial tree of each size
+    private final int[] searched;
+    //The size of the partial tree being searched (the counts of larger ones are left over from earlier trees)
+    private int depth;
+    //The position being resumed, while the search has not yet reached it (null otherwise)
+    private int[] resume;
+
+    /**
+     * Creates the path of an enumeration of trees with a given number of labelled nodes.
+     *
+     * @param labelledNodes the number of labelled nodes in the complete trees
+     */
+    public InsertionPath(int labelledNodes) {
+        searched = new int[labelledNodes + 1];
+    }
+
+    /**
+     * Starts the search of a new partial tree.
+     *
+     * @param size the number of labelled nodes in the tree
+     */
+    public void descend(int size) {
+        searched[size] = 0;
+        depth = size;
+    }
+
+    /**
+     * Counts an edge of the current partial tree as searched, whether the trees inserting the next
+     * labelled node on it were enumerated or pruned.
+     *
+     * @param size the number of labelled nodes in the tree
+     */
+    public void advance(int size) {
+        searched[size]++;
+        depth = size;
+    }
+
+    /**
+     * Gets the number of edges searched in the current partial tree of a size.
+     *
+     * @param size the number of labelled nodes in the tree
+     * @return the number of its edges searched
+     */
+    public int getSearched(int size) {
+        return searched[size];
+    }
+
+    /**
+     * Gets the position of the search, to resume from later with {@link #resume(int[])}.
+     *
+     * @return the number of edges searched in the current partial tree of each size, indexed by size, up
+     * to the size of the tree being searched
+     */
+    public int[] toArray() {
+        int depth = Math.min(this.depth, searched.length - 1);
+        int[] position = new int[depth + 1];
+        System.arraycopy(searched, 0, position, 0, depth + 1);
+        return position;
+    }
+
+    /**
+     * Starts skipping the edges searched before a position from {@link #toArray()}. Along the way to it,
+     * {@link #skip(int)} tells which edges to skip.
+     *
+     * @param position the position to resume from
+     */
+    public void resume(int[] position) {
+        resume = position;
+    }
+
+    /**
+     * Checks whether the next edge of the current partial tree was already searched before the position
+     * being resumed from. The edge the position is at in each smaller tree is not skipped, so the search
+     * goes back down the path to the position, and once past it nothing more is skipped.
+     *
+     * @param size the number of labelled nodes in the tree
+     * @return true if the edge should be skipped
+     */
+    public boolean skip(int size) {
+        if (resume == null) return false;
+        int edge = searched[size];
+        if (size >= resume.length || edge > resume[size]) {
+            //An edge on the way to the position was pruned, so the search has gone past it
+            resume = null;
+            return false;
+        }
+        if (edge < resume[size]) return true;
+        if (size == resume.length - 1) {
+            //The position itself: the rest of its tree's edges are still to be searched
+            resume = null;
+        }
+        return false;
+    }
+
+    /**
+     * Estimates the fraction of the search space covered, as the share of the complete trees that are
+     * below the edges already searched. Every edge of a partial tree is counted as an equal share of it,
+     * so pruned edges count as covered, and the estimate is only exact for an unbounded enumeration.
+     *
+     * @param startSize the number of labelled nodes in the partial tree the search started from
+     * @return the fraction covered, from 0 to 1
+     */
+    public double coverage(int startSize) {
+        double coverage = 0;
+        double share = 1;
+        int depth = Math.min(this.depth, searched.length - 2);
+        for (int size = startSize; size <= depth; size++) {
+            share /= 2 * size - 3;
+            coverage += searched[size] * share;
+        }
+        return coverage;
+    }
+}
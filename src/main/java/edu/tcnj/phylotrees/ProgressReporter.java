@@ -0,0 +1,98 @@
+package edu.tcnj.phylotrees;
+
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * Prints the progress of a long search at a fixed period: the trees visited per second, the best score
+ * and number of trees found with it, and the estimated fraction of the search space covered. This shows
+ * whether a run is worth waiting for, and makes a drop in throughput easy to spot.
+ * <p>
+ * The reports are printed from a background (daemon) thread between {@link #start()} and {@link #stop()},
+ * so a search that finishes before the first period prints nothing.
+ */
+public class ProgressReporter {
+
+    private final SearchProgress search;
+    //The time between reports, in milliseconds
+    private final long period;
+    //Added to the scores reported, such as the score of characters left out of the search
+    private final double scoreOffset;
+
+    private Timer timer;
+    //The time the reports started and the time and trees visited of the last report
+    private long startTime;
+    private long lastTime;
+    private long lastVisited;
+
+    /**
+     * Creates a reporter for a search.
+     *
+     * @param search      the search to report on
+     * @param period      the time between reports, in milliseconds
+     * @param scoreOffset added to the best score reported
+     */
+    public ProgressReporter(SearchProgress search, long period, double scoreOffset) {
+        this.search = search;
+        this.period = period;
+        this.scoreOffset = scoreOffset;
+    }
+
+    /**
+     * Starts printing reports, the first after one period.
+     */
+    public synchronized void start() {
+        stop();
+        startTime = System.currentTimeMillis();
+        lastTime = startTime;
+        lastVisited = 0;
+        timer = new Timer("progress", true);
+        timer.scheduleAtFixedRate(new TimerTask() {
+            @Override
+            public void run() {
+                System.out.println(report());
+            }
+        }, period, period);
+    }
+
+    /**
+     * Stops printing reports.
+     */
+    public synchronized void stop() {
+        if (timer != null) {
+            timer.cancel();
+            timer = null;
+        }
+    }
+
+    //Describe the progress since the last report
+    synchronized String report() {
+        long now = System.currentTimeMillis();
+        long visited = search.getTreesVisited();
+        long rate = now > lastTime ? (visited - lastVisited) * 1000 / (now - lastTime) : 0;
+        lastTime = now;
+        lastVisited = visited;
+
+        StringBuilder report = new StringBuilder();
+        report.append("Progress after ").append((now - startTime) / 1000).append("s: ")
+                .append(visited).append(" trees visited (").append(rate).append(" per second), ");
+        double score = search.getBestScore();
+        if (Double.isNaN(score)) {
+            report.append("no tree found yet");
+        } else {
+            long count = search.getBestCount();
+            report.append("best score ").append(format(score + scoreOffset)).append(" (")
+                    .append(count).append(count == 1 ? " tree)" : " trees)");
+        }
+        double coverage = search.getCoverage();
+        if (coverage >= 0) {
+            report.append(", about ").append(String.format("%.2f", 100 * coverage)).append("% searched");
+        }
+        return report.toString();
+    }
+
+    //Print whole scores without a decimal point
+    private static String format(double score) {
+        return score == Math.rint(score) ? Long.toString((long) score) : Double.toString(score);
+    }
+}
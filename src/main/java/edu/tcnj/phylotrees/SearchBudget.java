@@ -0,0 +1,94 @@
+package edu.tcnj.phylotrees;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A limit on the time a search may run and the number of nodes it may visit, to run an exhaustive search
+ * as an anytime one: once the budget runs out, the search stops cleanly and returns the best trees it has
+ * found so far, flagged as incomplete, with the gap between their score and the least score any tree it
+ * did not search could have.
+ * <p>
+ * The nodes are the partial trees an enumeration visits, or the states edge contraction searches. A search
+ * spends them in batches (see {@link #getBatch()}) and the clock is only read once per batch, so counting
+ * costs next to nothing, and a search may go over the budget by up to a batch per thread. Searches on
+ * several threads (such as the workers of a parallel enumeration) share one budget.
+ */
+public class SearchBudget {
+
+    //The number of nodes a search counts before spending them, unless the node limit is smaller
+    private static final int BATCH = 256;
+
+    //The time limit in milliseconds, and the node limit (0 for no limit)
+    private final long timeLimit;
+    private final long nodeLimit;
+    private final int batch;
+
+    //The time the budget runs out, set when the search starts
+    private long deadline = Long.MAX_VALUE;
+    //The nodes spent so far
+    private final AtomicLong spent = new AtomicLong();
+    private volatile boolean exhausted;
+
+    /**
+     * Creates a budget.
+     *
+     * @param timeLimit the time the search may run, in milliseconds, or 0 for no limit
+     * @param nodeLimit the number of nodes the search may visit, or 0 for no limit
+     */
+    public SearchBudget(long timeLimit, long nodeLimit) {
+        this.timeLimit = timeLimit;
+        this.nodeLimit = nodeLimit;
+        this.batch = nodeLimit > 0 ? (int) Math.min(BATCH, nodeLimit) : BATCH;
+    }
+
+    /**
+     * Starts (or restarts) the budget when a search starts: the clock starts from now, and no nodes have
+     * been spent. A search started with the budget spends the whole of it.
+     */
+    public void start() {
+        spent.set(0);
+        exhausted = false;
+        deadline = timeLimit > 0 ? System.currentTimeMillis() + timeLimit : Long.MAX_VALUE;
+    }
+
+    /**
+     * Spends a batch of nodes, and checks whether the budget has run out.
+     *
+     * @param nodes the number of nodes visited since the last batch
+     * @return true if the budget has run out
+     */
+    public boolean spend(int nodes) {
+        long total = spent.addAndGet(nodes);
+        if ((nodeLimit > 0 && total >= nodeLimit) || System.currentTimeMillis() >= deadline) {
+            exhausted = true;
+        }
+        return exhausted;
+    }
+
+    /**
+     * Gets the number of nodes a search should visit before spending them with {@link #spend(int)}.
+     *
+     * @return the batch size
+     */
+    public int getBatch() {
+        return batch;
+    }
+
+    /**
+     * Checks whether the budget has run out (as of the last batch spent by any search).
+     *
+     * @return true if it has
+     */
+    public boolean isExhausted() {
+        return exhausted;
+    }
+
+    /**
+     * Gets the number of nodes spent since the budget started.
+     *
+     * @return the number of nodes
+     */
+    public long getSpent() {
+        return spent.get();
+    }
+}
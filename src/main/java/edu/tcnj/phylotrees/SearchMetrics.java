@@ -0,0 +1,252 @@
+package edu.tcnj.phylotrees;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Counters of the work done by a search, to tell why one dataset takes much longer than another: the
+ * partial trees visited at each depth, the branches pruned by the bound, the trees scored, the ties and
+ * improvements of the best score, the states explored by edge contraction, and the time spent in each phase.
+ * <p>
+ * The counters are plain fields, so counting costs no more than an increment and they can stay on. A
+ * search only counts into its own metrics; searches on several threads (such as the workers of a parallel
+ * enumeration, or the contractions of a compactor) each keep their own, which are added together with
+ * {@link #merge(SearchMetrics)} once they finish. Merging into a shared total is synchronized.
+ */
+public class SearchMetrics {
+
+    //The partial trees visited, by their number of labelled nodes
+    private long[] visited = new long[0];
+    //The partial trees whose branch was cut off by the bound
+    private long pruned;
+    //The (partial) trees scored
+    private long scored;
+    //The complete trees that tied the best score so far
+    private long ties;
+    //The complete trees that improved on the best score so far
+    private long improvements;
+    //The states (sets of contracted edges) searched by edge contraction
+    private long contractionStates;
+    //The contraction states skipped since the same edges had already been contracted in another order
+    private long contractionRepeats;
+    //The time spent in each phase, in nanoseconds, in the order the phases first ran
+    private final Map<String, Long> phaseTimes = new LinkedHashMap<>();
+
+    /**
+     * Counts a partial tree being visited.
+     *
+     * @param depth the number of labelled nodes in the tree
+     */
+    public void visit(int depth) {
+        if (depth >= visited.length) {
+            visited = Arrays.copyOf(visited, Math.max(depth + 1, 2 * visited.length));
+        }
+        visited[depth]++;
+    }
+
+    /**
+     * Counts a branch cut off by the bound.
+     */
+    public void prune() {
+        pruned++;
+    }
+
+    /**
+     * Counts a tree being scored.
+     */
+    public void score() {
+        scored++;
+    }
+
+    /**
+     * Counts a complete tree that tied the best score.
+     */
+    public void tie() {
+        ties++;
+    }
+
+    /**
+     * Counts a complete tree that improved on the best score.
+     */
+    public void improve() {
+        improvements++;
+    }
+
+    /**
+     * Counts a state searched by edge contraction.
+     */
+    public void contractionState() {
+        contractionStates++;
+    }
+
+    /**
+     * Counts a state of edge contraction skipped as already searched.
+     */
+    public void contractionRepeat() {
+        contractionRepeats++;
+    }
+
+    /**
+     * Adds to the time spent in a phase. A phase run by several searches at once (merged together) counts
+     * the time of each of them.
+     *
+     * @param phase the name of the phase
+     * @param nanos the time spent, from {@link System#nanoTime()}
+     */
+    public synchronized void time(String phase, long nanos) {
+        Long total = phaseTimes.get(phase);
+        phaseTimes.put(phase, total == null ? nanos : total + nanos);
+    }
+
+    /**
+     * Adds another search's counts and times to these.
+     *
+     * @param other the metrics of a search that has finished
+     */
+    public synchronized void merge(SearchMetrics other) {
+        if (other.visited.length > visited.length) {
+            visited = Arrays.copyOf(visited, other.visited.length);
+        }
+        for (int depth = 0; depth < other.visited.length; depth++) {
+            visited[depth] += other.visited[depth];
+        }
+        pruned += other.pruned;
+        scored += other.scored;
+        ties += other.ties;
+        improvements += other.improvements;
+        contractionStates += other.contractionStates;
+        contractionRepeats += other.contractionRepeats;
+        for (Map.Entry<String, Long> phase : other.phaseTimes.entrySet()) {
+            time(phase.getKey(), phase.getValue());
+        }
+    }
+
+    /**
+     * Sets every count and time back to zero, for a new search.
+     */
+    public synchronized void reset() {
+        visited = new long[0];
+        pruned = 0;
+        scored = 0;
+        ties = 0;
+        improvements = 0;
+        contractionStates = 0;
+        contractionRepeats = 0;
+        phaseTimes.clear();
+    }
+
+    /**
+     * Gets the number of partial trees visited with a given number of labelled nodes.
+     *
+     * @param depth the number of labelled nodes
+     * @return the number of trees visited at that depth
+     */
+    public long getVisited(int depth) {
+        return depth < visited.length ? visited[depth] : 0;
+    }
+
+    /**
+     * Gets the number of partial trees visited at every depth.
+     *
+     * @return the total number of trees visited
+     */
+    public long getVisited() {
+        long total = 0;
+        for (long count : visited) {
+            total += count;
+        }
+        return total;
+    }
+
+    public long getPruned() {
+        return pruned;
+    }
+
+    public long getScored() {
+        return scored;
+    }
+
+    public long getTies() {
+        return ties;
+    }
+
+    public long getImprovements() {
+        return improvements;
+    }
+
+    public long getContractionStates() {
+        return contractionStates;
+    }
+
+    public long getContractionRepeats() {
+        return contractionRepeats;
+    }
+
+    /**
+     * Gets the time spent in a phase.
+     *
+     * @param phase the name of the phase
+     * @return the time in nanoseconds, or 0 if the phase never ran
+     */
+    public synchronized long getTime(String phase) {
+        Long time = phaseTimes.get(phase);
+        return time == null ? 0 : time;
+    }
+
+    /**
+     * Formats the metrics as a JSON object, with the trees visited as an array by depth and the phase
+     * times in milliseconds.
+     *
+     * @return the JSON text
+     */
+    public synchronized String toJson() {
+        StringBuilder json = new StringBuilder("{\n");
+        json.append("  \"visited\": ").append(getVisited()).append(",\n");
+        json.append("  \"visitedByDepth\": [");
+        //Up to the deepest trees visited, rather than the whole (grown) array
+        int depths = visited.length;
+        while (depths > 0 && visited[depths - 1] == 0) {
+            depths--;
+        }
+        for (int depth = 0; depth < depths; depth++) {
+            if (depth > 0) json.append(", ");
+            json.append(visited[depth]);
+        }
+        json.append("],\n");
+        json.append("  \"pruned\": ").append(pruned).append(",\n");
+        json.append("  \"scored\": ").append(scored).append(",\n");
+        json.append("  \"ties\": ").append(ties).append(",\n");
+        json.append("  \"improvements\": ").append(improvements).append(",\n");
+        json.append("  \"contractionStates\": ").append(contractionStates).append(",\n");
+        json.append("  \"contractionRepeats\": ").append(contractionRepeats).append(",\n");
+        json.append("  \"phaseMillis\": {");
+        boolean first = true;
+        for (Map.Entry<String, Long> phase : phaseTimes.entrySet()) {
+            json.append(first ? "\n" : ",\n");
+            json.append("    \"").append(phase.getKey()).append("\": ").append(phase.getValue() / 1e6);
+            first = false;
+        }
+        json.append(first ? "}\n" : "\n  }\n");
+        return json.append("}\n").toString();
+    }
+
+    /**
+     * Writes the metrics to a file as JSON (see {@link #toJson()}).
+     *
+     * @param file the file to write, which is replaced if it exists
+     * @throws IOException if the file can't be written
+     */
+    public void writeJson(File file) throws IOException {
+        Writer writer = new FileWriter(file);
+        try {
+            writer.write(toJson());
+        } finally {
+            writer.close();
+        }
+    }
+}
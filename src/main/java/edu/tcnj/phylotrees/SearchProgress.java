@@ -0,0 +1,38 @@
+package edu.tcnj.phylotrees;
+
+/**
+ * A search whose progress can be followed while it runs, such as by a {@link ProgressReporter}.
+ * <p>
+ * The methods are called from another thread than the search's, so they only read the search's
+ * state, and may see it slightly out of date.
+ */
+public interface SearchProgress {
+
+    /**
+     * Gets the number of (partial) trees visited so far.
+     *
+     * @return the number of trees
+     */
+    long getTreesVisited();
+
+    /**
+     * Gets the best score of the trees found so far.
+     *
+     * @return the score, or NaN if no tree has been found
+     */
+    double getBestScore();
+
+    /**
+     * Gets the number of trees found so far with the best score.
+     *
+     * @return the number of trees
+     */
+    long getBestCount();
+
+    /**
+     * Estimates the fraction of the search space covered so far.
+     *
+     * @return the fraction from 0 to 1, or -1 if the search can't estimate it
+     */
+    double getCoverage();
+}
@@ -1,7 +1,13 @@
 package edu.tcnj.phylotrees.mixedweight;
 
+import edu.tcnj.phylotrees.ProgressReporter;
+import edu.tcnj.phylotrees.SearchMetrics;
+import edu.tcnj.phylotrees.mixedweight.algo.AdditionOrder;
+import edu.tcnj.phylotrees.mixedweight.algo.CompactingTreeSink;
 import edu.tcnj.phylotrees.mixedweight.algo.CubicTreeEnumerator;
-import edu.tcnj.phylotrees.mixedweight.algo.EdgeContractor;
+import edu.tcnj.phylotrees.mixedweight.algo.ScaledSankoff;
+import edu.tcnj.phylotrees.mixedweight.algo.StepwiseAddition;
+import edu.tcnj.phylotrees.mixedweight.data.Alphabet;
 import edu.tcnj.phylotrees.mixedweight.data.Node;
 
 import java.io.*;
@@ -38,13 +44,18 @@ public class MixedWeightPhyloTrees {
 
 //    private Parser parser = new Parser();
 
+    //The states of the characters, as declared by weights.txt
+    private Alphabet alphabet = Alphabet.DNA;
+
+    //The time between progress reports of a long enumeration, in milliseconds
+    private static final long PROGRESS_PERIOD = 10000;
+
     private void enumerateCubicFromInput() throws IOException {
         List<String> rawSpecies = readSpecies();
-        List<Node> species = Parser.speciesList(rawSpecies);
         double[][] weights = readWeights();
+        List<Node> species = Parser.speciesList(rawSpecies, alphabet);
         System.out.println("Now enumerating cubic trees and contracting them to find"
-                + " the most parsimonious, most compact mixed-labelled tree. Note that"
-                + " some trees may be duplicates or re-rooted versions of others.");
+                + " the most parsimonious, most compact mixed-labelled tree.");
         System.out.println("(this may take some time)");
 
         runCubic(species, weights);
@@ -66,6 +77,9 @@ public class MixedWeightPhyloTrees {
         return rawSpecies;
     }
 
+    //Read the weight matrix, and the alphabet if the file declares one: a first line of the states,
+    //separated by spaces, followed by a line of costs for each of them. Without it, the matrix is for
+    //the DNA bases in the order A G T C.
     private double[][] readWeights() throws IOException {
         System.out.println("Reading weight input from file \"weights.txt\".");
         File file = new File("weights.txt");
@@ -73,16 +87,53 @@ public class MixedWeightPhyloTrees {
         FileInputStream fis = new FileInputStream(file);
         BufferedReader br = new BufferedReader(new InputStreamReader(fis));
         String line;
-        double[][] weights = new double[4][4];
-        //TODO check validity of file contents?
-        for (int i = 0; i < 4; i++) {
-            line = br.readLine();
-            String[] split = line.split(" ");
-            for (int j = 0; j < 4; j++) {
-                weights[i][j] = Double.valueOf(split[j]);
+        List<String[]> lines = new ArrayList<>();
+        while ((line = br.readLine()) != null) {
+            if (!line.trim().isEmpty()) {
+                lines.add(line.trim().split(" +"));
             }
         }
         br.close();
+
+        if (!lines.isEmpty() && lines.size() == lines.get(0).length + 1) {
+            StringBuilder symbols = new StringBuilder();
+            for (String symbol : lines.remove(0)) {
+                if (symbol.length() != 1) {
+                    throw new IOException("The state \"" + symbol + "\" in weights.txt is not a single character.");
+                }
+                symbols.append(symbol);
+            }
+            try {
+                alphabet = new Alphabet(symbols.toString());
+            } catch (IllegalArgumentException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+        } else {
+            alphabet = Alphabet.DNA;
+        }
+        int states = alphabet.size();
+        if (lines.size() != states) {
+            throw new IOException("weights.txt has " + lines.size() + " rows of costs, but there are "
+                    + states + " states (" + alphabet + ").");
+        }
+        double[][] weights = new double[states][states];
+        for (int i = 0; i < states; i++) {
+            String[] split = lines.get(i);
+            if (split.length != states) {
+                throw new IOException("Row " + (i + 1) + " of weights.txt has " + split.length
+                        + " costs, but there are " + states + " states.");
+            }
+            for (int j = 0; j < states; j++) {
+                try {
+                    weights[i][j] = Double.valueOf(split[j]);
+                } catch (NumberFormatException e) {
+                    throw new IOException("\"" + split[j] + "\" in weights.txt is not a number.", e);
+                }
+            }
+        }
+        if (alphabet != Alphabet.DNA) {
+            System.out.println("Read costs for the " + states + " states " + alphabet + ".");
+        }
         return weights;
     }
 
@@ -90,65 +141,113 @@ public class MixedWeightPhyloTrees {
         int chars = species.get(0).data.size();
         long before = System.currentTimeMillis();
         CubicTreeEnumerator treeEnumerator = new CubicTreeEnumerator(species, weights, chars);
-        Set<Node> mostParsimonious = treeEnumerator.sankoffEnumerate();
-        List<Node> mostCompact = compactCubic(mostParsimonious, weights, chars);
+        //Add the most different species first, so that the branch+bound prunes early
+        AdditionOrder additionOrder = treeEnumerator.planAdditionOrder();
+        List<Node> order = treeEnumerator.getLabelledNodes();
+        System.out.println("Adding species in the order " + labels(order) + " (distance added by the first half: "
+                + additionOrder.earlyDistance(order) + ", versus " + additionOrder.earlyDistance(species)
+                + " in input order).");
+        //Start the branch+bound from the score of a good heuristic tree rather than the first tree found
+        long stepwiseStart = System.nanoTime();
+        double upperBound = new StepwiseAddition(order, weights, chars).search(true);
+        long stepwiseTime = System.nanoTime() - stepwiseStart;
+        System.out.println("Stepwise addition found a tree with parsimony score " + upperBound
+                + ", using it as the starting bound.");
+        treeEnumerator.setUpperBound(upperBound);
+        ScaledSankoff scaledSankoff = ScaledSankoff.create(weights, chars, 2 * species.size());
+        if (scaledSankoff != null) {
+            System.out.println("Scoring trees on whole numbers, with the weights multiplied by "
+                    + scaledSankoff.getScale() + ".");
+        }
+        //Contract the most parsimonious trees as they are found, rather than keeping them all until the end
+        CompactingTreeSink compactingSink = new CompactingTreeSink(weights, chars,
+                Runtime.getRuntime().availableProcessors());
+        treeEnumerator.setTreeSink(compactingSink);
+        //Report the enumeration's progress every so often, as it can take hours
+        ProgressReporter progressReporter = new ProgressReporter(treeEnumerator, PROGRESS_PERIOD, 0);
+        progressReporter.start();
+        treeEnumerator.sankoffEnumerate();
+        progressReporter.stop();
+        List<Node> mostCompact = compactingSink.finish();
 
         long time = System.currentTimeMillis() - before;
+        SearchMetrics metrics = new SearchMetrics();
+        metrics.time("stepwiseAddition", stepwiseTime);
+        metrics.merge(treeEnumerator.getMetrics());
+        metrics.merge(compactingSink.getMetrics());
         int mostCompactSize = mostCompact.get(0).size();
-        int cubicSize = mostParsimonious.iterator().next().size();
+        int cubicSize = compactingSink.getCubicSize();
         System.out.println("Cubic Tree Contraction:\n"
                 + "Species: " + species.size() + "\n"
                 + "Time taken: " + time + "ms\n"
-                + "Number of most parsimonious cubic trees: " + mostParsimonious.size() + "\n"
+                + "Number of most parsimonious cubic trees: " + compactingSink.getTreeCount() + "\n"
+                + "Partial trees visited: " + metrics.getVisited() + "\n"
+                + "Branches pruned by branch+bound: " + treeEnumerator.getPrunedCount() + "\n"
                 + "Number of most compacted mixed-labelled trees: " + mostCompact.size() + "\n"
                 + "Size of most compact mixed-labelled trees: " + mostCompact.get(0).size()
                 + " (" + (cubicSize - mostCompactSize) + " contractions)"
         );
+        writeMetrics(metrics);
         System.out.println("List of best trees (structure only): ");
         for (Node node : mostCompact) {
             System.out.println(Parser.toString(node));
         }
     }
 
+    private String labels(List<Node> nodes) {
+        StringBuilder labels = new StringBuilder();
+        for (Node node : nodes) {
+            if (labels.length() > 0) labels.append(", ");
+            labels.append(node.label);
+        }
+        return labels.toString();
+    }
 
     private void onlyContractCubics() throws IOException {
-        System.out.println("Reading tree input from file \"trees.txt\".");
+        List<String> rawSpecies = readSpecies();
+        double[][] weights = readWeights();
+        List<Node> species = Parser.speciesList(rawSpecies, alphabet);
+        Map<String, String> labelToSequence = new HashMap<>();
+        for (String l : rawSpecies) {
+            String[] s = l.split(":");
+            labelToSequence.put(s[0], s[1]);
+        }
+
+        System.out.println("Reading tree input from file \"trees.txt\", and contracting each tree as it is read.");
         File file = new File("trees.txt");
 
+        //Stream the trees to the contractions rather than reading them all first, as the file can hold
+        //millions, and only the most compact trees are kept
+        CompactingTreeSink compactingSink = new CompactingTreeSink(weights, species.get(0).data.size(),
+                Runtime.getRuntime().availableProcessors());
         BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(file)));
-        String line;
-        Set<Node> inTrees = new HashSet<>();
-        while ((line = br.readLine()) != null) {
-            inTrees.add(Parser.fromString(line));
-        }
-        br.close();
-        List<String> rawSpecies = readSpecies();
-        List<Node> species = Parser.speciesList(rawSpecies);
-        for (Node inTree : inTrees) {
-            Parser.fillNodes(inTree, rawSpecies);
+        try {
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (line.isEmpty()) continue;
+                Node inTree = Parser.fromString(line);
+                Parser.fillNodes(inTree, labelToSequence, alphabet);
+                //The input trees are all taken as most parsimonious, so they share a score
+                compactingSink.accept(inTree, 0);
+            }
+        } finally {
+            br.close();
         }
+        compactingSink.finish();
+        writeMetrics(compactingSink.getMetrics());
 
-        compactCubic(inTrees, readWeights(), species.get(0).data.size());
+        long treeCount = compactingSink.getTreeCount();
+        System.out.println("Contracted " + treeCount + " cubic tree" + (treeCount == 1 ? "." : "s."));
     }
 
-    private List<Node> compactCubic(Set<Node> mostParsimonious,
-                                               double[][] weights, int chars) {
-        List<Node> mostCompact = new ArrayList<>();
-        int mostCompactSize = Integer.MAX_VALUE;
-        for (Node tree : mostParsimonious) {
-            EdgeContractor edgeContractor = new EdgeContractor(weights, chars);
-            for (Node compactTree : edgeContractor.edgeContraction(tree)) {
-                int thisSize = compactTree.size();
-                if (thisSize <= mostCompactSize) {
-                    if (compactTree.size() < mostCompactSize) {
-                        mostCompact.clear();
-                    }
-                    mostCompact.add(compactTree);
-                    mostCompactSize = thisSize;
-                }
-            }
+    //Write the counts of the work done by a search to a file, to see where the time goes on a dataset
+    private void writeMetrics(SearchMetrics metrics) {
+        try {
+            metrics.writeJson(new File("metrics.json"));
+            System.out.println("Wrote the search metrics to file \"metrics.json\".");
+        } catch (IOException e) {
+            System.out.println("There was an error writing the search metrics to \"metrics.json\".");
         }
-        return mostCompact;
     }
 
     private void getTimingInfoFromInput() throws IOException {
@@ -187,6 +286,6 @@ public class MixedWeightPhyloTrees {
         System.out.println("Running " + numTrials + " trials for trees from " + minTreeSize + " to " + maxTreeSize + " input species with" + (multithreaded ? "" : "out") + " multithreading.");
         List<String> rawSpecies = readSpecies();
         double[][] weights = readWeights();
-        TreeTiming.runTiming(rawSpecies, weights, numTrials, minTreeSize, maxTreeSize, multithreaded);
+        TreeTiming.runTiming(rawSpecies, alphabet, weights, numTrials, minTreeSize, maxTreeSize, multithreaded);
     }
 }
\ No newline at end of file
@@ -1,5 +1,6 @@
 package edu.tcnj.phylotrees.mixedweight;
 
+import edu.tcnj.phylotrees.mixedweight.data.Alphabet;
 import edu.tcnj.phylotrees.mixedweight.data.Node;
 
 import java.util.*;
@@ -54,6 +55,10 @@ public class Parser {
 
     /**
      * Converts a Newick tree string to a {@link Node} object which roots the entire tree.
+     * <p>
+     * The string is read in a single pass from left to right, keeping the children read so far of each
+     * node whose closing parenthesis is still to come, so the time taken is linear in its length (and
+     * deep trees don't recurse).
      *
      * @param s Newick-formatted string
      * @return root {@link Node} of the tree
@@ -65,77 +70,64 @@ public class Parser {
         if (s.charAt(s.length() - 1) != ';') {
             throw new IllegalArgumentException("Invalid Newick string, missing ';'");
         }
-        return fromStringRecursive(s.substring(0, s.length() - 1), null);
-    }
-
-    private static Node fromStringRecursive(String s, Node parent) {
-        int prevSpecial = -1;
-        for (int i = s.length() - 1; i >= 0; i--) {
-            // scan left until we find one of our special characters
-            char ch = s.charAt(i);
-
-            if (SPECIALS.indexOf(ch) != -1) {
-                prevSpecial = i;
-                break;
+        int end = s.length() - 1;
+
+        //The children read so far of each node that is still open, innermost first (the last holds the root)
+        Deque<List<Node>> open = new ArrayDeque<>();
+        open.push(new ArrayList<Node>(1));
+        //Whether a subtree starts at i: at the start, and after every '(' and ','
+        boolean subtree = true;
+        int i = 0;
+        while (subtree || i < end) {
+            if (subtree) {
+                if (i < end && s.charAt(i) == '(') {
+                    open.push(new ArrayList<Node>());
+                    i++;
+                } else {
+                    //A leaf, whose (possibly empty) label runs up to the next special character
+                    int labelEnd = labelEnd(s, i, end);
+                    open.peek().add(nodeFromLabel(s.substring(i, labelEnd)));
+                    i = labelEnd;
+                    subtree = false;
+                }
+                continue;
             }
-        }
-        String label = s.substring(prevSpecial == -1 ? 0 : prevSpecial + 1, s.length());
-
-        Node current = nodeFromLabel(label);
-        if (parent != null) {
-            current.parent = parent;
-            parent.children.add(current);
-        }
-
-        // current node has no children
-        if (prevSpecial == -1 || s.charAt(prevSpecial) != ')') {
-            return current;
-        }
-        // otherwise
-        // find the matching ( for all of current's children
-        int childrenEnd = -1;
-        int parens = 0;
-        for (int i = prevSpecial; i >= 0; i--) { // first will always be a close paren
-            char ch = s.charAt(i);
-            if (ch == ')') parens++;
-            else if (ch == '(') parens--;
-
-            // when parens hits 0, it means the initial (prevSpecial) ')' has been closed
-            if (parens == 0) {
-                childrenEnd = i;
-                break;
+            char ch = s.charAt(i++);
+            if (ch == ',') {
+                subtree = true;
+            } else if (ch == ')') {
+                //The node's label follows its children
+                int labelEnd = labelEnd(s, i, end);
+                Node current = nodeFromLabel(s.substring(i, labelEnd));
+                if (open.size() == 1) {
+                    throw new IllegalArgumentException("Missing opening parenthesis for children of " + current.label);
+                }
+                for (Node child : open.pop()) {
+                    child.parent = current;
+                    current.children.add(child);
+                }
+                open.peek().add(current);
+                i = labelEnd;
+            } else {
+                throw new IllegalArgumentException("Invalid Newick string, unexpected '" + ch + "' at " + (i - 1));
             }
         }
-        if (childrenEnd == -1) {
-            throw new IllegalArgumentException("Missing opening parenthesis for children of " + current.label);
-        }
-        String sC = s.substring(childrenEnd + 1, prevSpecial); // string containing all current children
-        List<Integer> childSeps = new ArrayList<>();
-        parens = 0;
-        for (int i = 0; i < sC.length(); i++) {
-            char ch = sC.charAt(i);
-            if (ch == '(') parens++;
-            else if (ch == ')') parens--;
-
-            if (parens == 0 && ch == ',') {
-                childSeps.add(i);
-            }
+        if (open.size() > 1) {
+            throw new IllegalArgumentException("Missing closing parenthesis");
         }
-        if (childSeps.isEmpty()) {
-            fromStringRecursive(sC, current); // single child
-        } else {
-            int start = 0;
-            int next = 0;
-            for (int i : childSeps) {
-                next = i;
-                fromStringRecursive(sC.substring(start, next), current); // children up to the last ','
-                start = next;
-            }
-            fromStringRecursive(sC.substring(next + 1, sC.length()), current); // child from last ',' to the ')'
+        List<Node> roots = open.pop();
+        if (roots.size() > 1) {
+            throw new IllegalArgumentException("Invalid Newick string, more than one root");
         }
+        return roots.get(0);
+    }
 
-        return current;
-
+    //Find the end of the label starting at i: the next special character, or the end
+    private static int labelEnd(String s, int i, int end) {
+        while (i < end && SPECIALS.indexOf(s.charAt(i)) == -1) {
+            i++;
+        }
+        return i;
     }
 
     protected static Node nodeFromLabel(String label) {
@@ -154,14 +146,15 @@ public class Parser {
      *
      * @param input    list of a string for each species in the form "L:XYZ" where L is the name and each
      *                 X, Y, and Z is the state of the character at the given position
+     * @param alphabet the states the characters can take
      */
-    public static List<Node> speciesList(List<String> input) {
+    public static List<Node> speciesList(List<String> input, Alphabet alphabet) {
         List<Node> species = new ArrayList<>();
         for (String line : input) {
             String[] sp = line.split(":");
             String label = sp[0];
             String data = sp[1];
-            Node node = new Node(label, data);
+            Node node = new Node(label, data, alphabet);
             species.add(node);
         }
         return species;
@@ -191,23 +184,24 @@ public class Parser {
     /**
      * Recursively sets data on all labelled nodes in a tree.
      * @param root node at root of tree
-     * @param labelToSequence map of node labels to the dna sequence of that species
+     * @param labelToSequence map of node labels to the sequence of that species
+     * @param alphabet the states the characters can take
      */
-    public static void fillNodes(Node root, Map<String, String> labelToSequence) {
+    public static void fillNodes(Node root, Map<String, String> labelToSequence, Alphabet alphabet) {
         for (Node child : root.children) {
-            fillNodes(child, labelToSequence);
+            fillNodes(child, labelToSequence, alphabet);
         }
         if (root.labelled && labelToSequence.containsKey(root.label)) {
-            root.setData(labelToSequence.get(root.label));
+            root.setData(labelToSequence.get(root.label), alphabet);
         }
     }
 
-    public static void fillNodes(Node root, List<String> labelToSequence) {
+    public static void fillNodes(Node root, List<String> labelToSequence, Alphabet alphabet) {
         Map<String, String> map = new HashMap<>();
         for (String l : labelToSequence) {
             String[] s = l.split(":");
             map.put(s[0], s[1]);
         }
-        fillNodes(root, map);
+        fillNodes(root, map, alphabet);
     }
 }
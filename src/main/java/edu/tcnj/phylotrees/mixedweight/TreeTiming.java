@@ -4,6 +4,7 @@ package edu.tcnj.phylotrees.mixedweight;
 import edu.tcnj.phylotrees.mixedweight.algo.CubicTreeEnumerator;
 import edu.tcnj.phylotrees.mixedweight.algo.EdgeContractor;
 import edu.tcnj.phylotrees.mixedweight.algo.MixedTreeEnumerator;
+import edu.tcnj.phylotrees.mixedweight.data.Alphabet;
 import edu.tcnj.phylotrees.mixedweight.data.Node;
 
 import java.util.*;
@@ -12,7 +13,7 @@ import java.util.concurrent.*;
 public class TreeTiming {
     private static Parser parser = new Parser();
 
-    public static void runTiming(List<String> testData, final double[][] weights, int numTrials, int minTreeSize, int maxTreeSize, boolean multithreaded) {
+    public static void runTiming(List<String> testData, Alphabet alphabet, final double[][] weights, int numTrials, int minTreeSize, int maxTreeSize, boolean multithreaded) {
         ExecutorService executorService = (multithreaded) ?
                 Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors())
                 : Executors.newSingleThreadExecutor();
@@ -30,7 +31,7 @@ public class TreeTiming {
             for (int j = 0; j < numTrials; j++) {
                 final int trialNum = j;
 
-                final List<Node> species = parser.speciesList(dataPerTrial.get(j).subList(0, treeSize));
+                final List<Node> species = parser.speciesList(dataPerTrial.get(j).subList(0, treeSize), alphabet);
                 callables.add(new Callable<long[]>() {
                     @Override
                     public long[] call() throws Exception {
@@ -38,7 +39,7 @@ public class TreeTiming {
                     }
                 });
 
-                final List<Node> species0 = parser.speciesList(dataPerTrial.get(j).subList(0, treeSize));
+                final List<Node> species0 = parser.speciesList(dataPerTrial.get(j).subList(0, treeSize), alphabet);
                 callables.add(new Callable<long[]>() {
                     @Override
                     public long[] call() throws Exception {
@@ -116,7 +117,7 @@ public class TreeTiming {
         int chars = species.get(0).data.size();
         long before = System.currentTimeMillis();
         MixedTreeEnumerator treeEnumerator = new MixedTreeEnumerator(species, weights, chars);
-        Set<Node> mostParsimonious = treeEnumerator.sankoffEnumerate();
+        List<Node> mostParsimonious = treeEnumerator.sankoffEnumerate();
         Set<Node> mostCompact = compactMixed(mostParsimonious);
 
 
@@ -125,7 +126,7 @@ public class TreeTiming {
         return new long[]{species.size(), time, mostCompact.size()};
     }
 
-    private static Set<Node> compactMixed(Set<Node> mostParsimonious) {
+    private static Set<Node> compactMixed(List<Node> mostParsimonious) {
         Set<Node> mostCompact = new HashSet<>();
         int mostCompactSize = Integer.MAX_VALUE;
         for (Node tree : mostParsimonious) {
@@ -145,7 +146,7 @@ public class TreeTiming {
         int chars = species.get(0).data.size();
         long before = System.currentTimeMillis();
         CubicTreeEnumerator treeEnumerator = new CubicTreeEnumerator(species, chars);
-        Set<Node> mostParsimonious = treeEnumerator.sankoffEnumerate();
+        List<Node> mostParsimonious = treeEnumerator.sankoffEnumerate();
         Set<Node> mostCompact = compactCubic(mostParsimonious, weights, chars);
         int initialSize = mostParsimonious.iterator().next().size();
         int numContractions = initialSize - mostCompact.iterator().next().size();
@@ -155,7 +156,7 @@ public class TreeTiming {
         return new long[]{time, mostParsimonious.size(), mostCompact.size(), numContractions};
     }
 
-    private static Set<Node> compactCubic(Set<Node> mostParsimonious, double[][] weights, int chars) {
+    private static Set<Node> compactCubic(List<Node> mostParsimonious, double[][] weights, int chars) {
         Set<Node> mostCompact = new HashSet<>();
         int mostCompactSize = Integer.MAX_VALUE;
         for (Node tree : mostParsimonious) {
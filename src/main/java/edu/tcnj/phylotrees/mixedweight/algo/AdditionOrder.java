@@ -0,0 +1,125 @@
+package edu.tcnj.phylotrees.mixedweight.algo;
+
+import edu.tcnj.phylotrees.mixedweight.data.Node;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Plans the order in which a cubic tree enumerator adds the labelled nodes.
+ * <p>
+ * A branch+bound can only prune a partial tree once its score gets close to the best score, so it
+ * helps to add the most different nodes first: their partial trees score high early on, and the
+ * nodes added last (which are close to ones already in the tree) change the score the least.
+ * The max-min (furthest first) order starts with the two most distant nodes, and then keeps adding
+ * the node whose distance to the closest node already added is the largest.
+ * <p>
+ * The distance between two nodes is the least total mutation cost between their data, i.e. the
+ * Sankoff score of the tree with just those two nodes.
+ */
+public class AdditionOrder {
+
+    //The labelled nodes, in their original order
+    private final List<Node> labelledNodes;
+
+    //The distance between each pair of labelled nodes, by their original index
+    private final double[][] distances;
+
+    public AdditionOrder(List<Node> labelledNodes, double[][] weights, int chars) {
+        this.labelledNodes = labelledNodes;
+        int n = labelledNodes.size();
+        distances = new double[n][n];
+        for (int a = 0; a < n; a++) {
+            for (int b = a + 1; b < n; b++) {
+                double distance = 0;
+                for (int i = 0; i < chars; i++) {
+                    double cost = Double.POSITIVE_INFINITY;
+                    for (int stateA : labelledNodes.get(a).data.get(i)) {
+                        for (int stateB : labelledNodes.get(b).data.get(i)) {
+                            cost = Math.min(cost, weights[stateA][stateB]);
+                        }
+                    }
+                    distance += cost;
+                }
+                distances[a][b] = distance;
+                distances[b][a] = distance;
+            }
+        }
+    }
+
+    /**
+     * Orders the labelled nodes so that each node is as far as possible from all nodes before it.
+     * Ties are broken by the total distance to the nodes before it, and then by the original order.
+     *
+     * @return a new list of the labelled nodes in max-min order
+     */
+    public List<Node> maxMin() {
+        int n = labelledNodes.size();
+        List<Node> order = new ArrayList<>(n);
+        if (n < 3) {
+            order.addAll(labelledNodes);
+            return order;
+        }
+
+        //Start with the two most distant nodes
+        int first = 0, second = 1;
+        for (int a = 0; a < n; a++) {
+            for (int b = a + 1; b < n; b++) {
+                if (distances[a][b] > distances[first][second]) {
+                    first = a;
+                    second = b;
+                }
+            }
+        }
+        boolean[] added = new boolean[n];
+        //The distance from each node to the closest node added so far, and to all of them (to break ties)
+        double[] closest = new double[n];
+        double[] total = new double[n];
+        for (int a = 0; a < n; a++) {
+            closest[a] = Math.min(distances[a][first], distances[a][second]);
+            total[a] = distances[a][first] + distances[a][second];
+        }
+        added[first] = true;
+        added[second] = true;
+        order.add(labelledNodes.get(first));
+        order.add(labelledNodes.get(second));
+
+        while (order.size() < n) {
+            int furthest = -1;
+            for (int a = 0; a < n; a++) {
+                if (!added[a] && (furthest == -1 || closest[a] > closest[furthest]
+                        || closest[a] == closest[furthest] && total[a] > total[furthest])) {
+                    furthest = a;
+                }
+            }
+            added[furthest] = true;
+            order.add(labelledNodes.get(furthest));
+            for (int a = 0; a < n; a++) {
+                closest[a] = Math.min(closest[a], distances[a][furthest]);
+                total[a] += distances[a][furthest];
+            }
+        }
+        return order;
+    }
+
+    /**
+     * Measures how early an order brings in differences between the nodes, to compare the expected
+     * pruning of two orders: the sum, over the first half of the order, of the distance from each node
+     * to the closest node before it. Higher is better.
+     *
+     * @param order some order of the labelled nodes
+     * @return the distance added by the first half of the nodes
+     */
+    public double earlyDistance(List<Node> order) {
+        double distance = 0;
+        for (int k = 1; k < (order.size() + 1) / 2; k++) {
+            int b = labelledNodes.indexOf(order.get(k));
+            double closest = Double.POSITIVE_INFINITY;
+            for (int j = 0; j < k; j++) {
+                closest = Math.min(closest, distances[labelledNodes.indexOf(order.get(j))][b]);
+            }
+            distance += closest;
+        }
+        return distance;
+    }
+}
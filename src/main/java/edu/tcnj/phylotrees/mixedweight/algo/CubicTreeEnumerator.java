@@ -1,13 +1,28 @@
 package edu.tcnj.phylotrees.mixedweight.algo;
 
+import edu.tcnj.phylotrees.InsertionPath;
 import edu.tcnj.phylotrees.mixedweight.data.Node;
 
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 public class CubicTreeEnumerator extends TreeEnumerator {
 
+    //The relative slack given to an upper bound, so that a tree scoring exactly the bound is not lost
+    //to the order its costs are summed in
+    private static final double ROUNDING = 1e-9;
+
+    //A known upper bound on the most parsimonious score to start the branch+bound with, or -1 for none
+    protected double upperBound = -1;
+
+    //The lower bound on the score still to be added by the remaining labelled nodes (null for none)
+    protected LowerBound lowerBound = new MinimumCostBound();
+
+    //The integer scorer used by sankoffEnumerate, or null if the weights can't be scaled to integers
+    protected ScaledSankoff scaledSankoff;
+
+    //The edges searched so far at each size of the current enumeration, or null before it starts
+    protected InsertionPath path;
+
     public CubicTreeEnumerator(List<Node> labelledNodes, int chars) {
         this.labelledNodes = labelledNodes;
         this.chars = chars;
@@ -18,6 +33,67 @@ public class CubicTreeEnumerator extends TreeEnumerator {
         this.weights = weights;
     }
 
+    /**
+     * Sets the lower bound used to prune partial trees in {@link #sankoffEnumerate()}, on top of their
+     * own parsimony score.
+     *
+     * @param lowerBound the bound on the score still to be added, or null to only use the partial tree's score
+     */
+    public void setLowerBound(LowerBound lowerBound) {
+        this.lowerBound = lowerBound;
+    }
+
+    /**
+     * Seeds the branch+bound of {@link #sankoffEnumerate()} with a known upper bound on the parsimony
+     * score, such as the score of a tree from {@link StepwiseAddition}.
+     * <p>
+     * The bound is inclusive: trees that score exactly the bound are still kept, so all most parsimonious
+     * trees are found as long as some tree has a score of at most the bound.
+     *
+     * @param upperBound the score of some tree of the labelled nodes, or -1 to start without a bound
+     */
+    public void setUpperBound(double upperBound) {
+        this.upperBound = upperBound;
+    }
+
+    /**
+     * Reorders the labelled nodes into max-min order (see {@link AdditionOrder#maxMin()}), so that
+     * the branch+bound can prune earlier. The trees found are the same, but are built (and rooted)
+     * from the new order.
+     *
+     * @return the planner used, to compare the new order with the original one
+     */
+    public AdditionOrder planAdditionOrder() {
+        AdditionOrder additionOrder = new AdditionOrder(labelledNodes, weights, chars);
+        labelledNodes = additionOrder.maxMin();
+        return additionOrder;
+    }
+
+    /**
+     * Gets the labelled nodes in the order they are added to the trees.
+     *
+     * @return the labelled nodes
+     */
+    public List<Node> getLabelledNodes() {
+        return labelledNodes;
+    }
+
+    /**
+     * Gets the number of branches that were pruned in the last branch+bounded enumeration,
+     * to compare the effect of different {@link LowerBound}s.
+     *
+     * @return the number of partial trees that were not extended
+     */
+    public long getPrunedCount() {
+        return metrics.getPruned();
+    }
+
+    @Override
+    public double getCoverage() {
+        InsertionPath path = this.path;
+        return path == null ? 0 : path.coverage(3);
+    }
+
     /**
      * Generates the base topology for a tree with n leaves.
      * This method initializes a tree topology to give us a starting point for
@@ -49,7 +125,7 @@ public class CubicTreeEnumerator extends TreeEnumerator {
      */
     public int enumerate() {
         // Reset the state of the algorithm by clearing trees.
-        trees = new HashSet<>();
+        clearTrees();
         treeCounter = 0;
 
         //Start with the base cases
@@ -92,29 +168,52 @@ public class CubicTreeEnumerator extends TreeEnumerator {
     }
 
     /**
-     * Branch+bounded cubic tree enumeration using fitch to score the trees
+     * Branch+bounded cubic tree enumeration using sankoff to score the trees.
+     * <p>
+     * The Sankoff costs of every node are kept from one tree to the next: adding or removing a node only
+     * changes the costs of the nodes above it, so only the path from it up to the root is rescored.
+     * If the weights can be scaled to integers, the costs are kept as integers with {@link ScaledSankoff}.
      *
-     * @return a set of the root nodes of all most parsimonious trees
+     * @return a list of the root nodes of all most parsimonious trees
      */
-    public Set<Node> sankoffEnumerate() {
+    public List<Node> sankoffEnumerate() {
         // Reset the state of the algorithm by clearing trees.
-        trees = new HashSet<>();
-        parsimonyScore = -1;
+        clearTrees();
+        //The first tree within the bound replaces it with its exact score
+        parsimonyScore = upperBound == -1 ? -1 : upperBound * (1 + ROUNDING);
+        metrics.reset();
+        startBudget();
+        path = new InsertionPath(labelledNodes.size());
+        long start = System.nanoTime();
+        //A cubic tree of n labelled nodes has n - 2 unlabelled ones
+        scaledSankoff = ScaledSankoff.create(weights, chars, 2 * labelledNodes.size());
+        if (lowerBound != null) {
+            lowerBound.initialize(labelledNodes, weights, chars);
+        }
 
         initializeTree();
+        metrics.visit(Math.min(3, labelledNodes.size()));
         if (labelledNodes.size() < 4) {
-            trees.add(root.clone());
+            addTree();
         } else {
+            if (scaledSankoff != null) {
+                scaledSankoff.bottomUp(root);
+            } else {
+                Sankoff.bottomUp(root, weights, chars);
+            }
+            metrics.time("enumerationSetup", System.nanoTime() - start);
+            start = System.nanoTime();
+            path.descend(3);
             sankoffEnumerateRecursive(root, 3);
         }
+        metrics.time("enumeration", System.nanoTime() - start);
         return trees;
     }
 
     protected void sankoffEnumerateRecursive(Node current, int size) {
         if (size == labelledNodes.size()) {
-            //Root the tree to make it bifurcating (to work in Fitch) and score it
-
-            double score = Sankoff.bottomUp(root, weights, chars);
+            //The costs are up to date, so the score is read off the root
+            double score = score();
             //Add it to the list of most parsimonious trees if its score is the best
             updateMPlist(score);
         } else {
@@ -124,20 +223,75 @@ public class CubicTreeEnumerator extends TreeEnumerator {
             }
 
             //get its current parsimony score
-            double thisScore = Sankoff.bottomUp(root, weights, chars);
+            double thisScore = score();
 
             //Same as enumerateRecursive but bounded: only continue if there is no best parsimony
-            //score or if this tree is at least as good as the most parsimonious
-            if (current != root && (thisScore <= parsimonyScore || parsimonyScore == -1)) {
+            //score or if this tree (and the least the remaining nodes will add) is at least as good
+            //as the most parsimonious
+            if (current != root && withinBound(thisScore, size) && !outOfBudget(thisScore, size)) {
                 Node internal = new Node("", chars);
                 Node leaf = labelledNodes.get(size).clone();
                 Node parent = current.parent;
 
                 addNodeToEdge(current, parent, internal, leaf);
+                //Only the path from the new node up to the root needs rescoring
+                update(internal);
+                metrics.visit(size + 1);
 
+                path.descend(size + 1);
                 sankoffEnumerateRecursive(root, size + 1);
                 removeNodeFromEdge(current, parent, internal, leaf);
+                update(parent);
+            } else if (current != root) {
+                skipEdge(current);
+            }
+            //Once out of budget, the path stays at the first edge not searched
+            if (current != root && !incomplete) {
+                path.advance(size);
+            }
+        }
+    }
+
+    //Check whether a partial tree with the given score and number of labelled nodes can still become
+    //a most parsimonious tree, counting it as pruned if not
+    protected boolean withinBound(double score, int size) {
+        if (parsimonyScore == -1) return true;
+        if (lowerBound != null) {
+            //Shrink the bound by the rounding slack, so that a tree tying the best score is not lost to
+            //its costs being summed in a different order
+            score += lowerBound.bound(size, root) * (1 - ROUNDING);
+        }
+        if (score <= parsimonyScore) return true;
+        metrics.prune();
+        return false;
+    }
+
+    //The partial tree's score and the least the remaining nodes will add to the current tree
+    @Override
+    protected double bound(double score, int size) {
+        if (lowerBound != null) {
+            score += lowerBound.bound(size, root);
+        }
+        return score;
+    }
+
+    //Rescore a node whose children changed, and then its ancestors
+    private void update(Node node) {
+        for (; node != null; node = node.parent) {
+            if (scaledSankoff != null) {
+                scaledSankoff.update(node);
+            } else {
+                Sankoff.update(node, weights, chars);
             }
         }
     }
+
+    //Get the parsimony score of the current tree, whose costs are up to date
+    private double score() {
+        metrics.score();
+        if (scaledSankoff != null) {
+            return scaledSankoff.unscale(scaledSankoff.score(root));
+        }
+        return Sankoff.score(root, weights);
+    }
 }
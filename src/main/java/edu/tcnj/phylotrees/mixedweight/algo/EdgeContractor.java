@@ -1,32 +1,141 @@
 package edu.tcnj.phylotrees.mixedweight.algo;
 
+import edu.tcnj.phylotrees.SearchBudget;
+import edu.tcnj.phylotrees.SearchMetrics;
 import edu.tcnj.phylotrees.mixedweight.data.Node;
+import edu.tcnj.phylotrees.mixedweight.data.Topology;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A class to contract a given tree to its smallest possible size
  * by removing any edges with a minimum cost of 0, and trying all
  * orderings of edge removal to get the smallest possible tree
  * with the same parsimony score as the parent.
+ * <p>
+ * Contracting a set of edges gives the same tree whatever order they are contracted in, so each
+ * state of the search is keyed by the set of edges contracted so far, and a state reached again
+ * through a different order is skipped instead of being searched again. A tree with k zero-cost edges
+ * can reach up to 2^k states, so only the first {@value #MAX_SEEN} of a contraction are remembered;
+ * the rest may be searched more than once, which repeats work but finds the same trees.
+ * <p>
+ * Sankoff's costs and top down sets are kept up to date incrementally: contracting or restoring an
+ * edge only rescores the nodes from that edge up to the root, and the top down then only reassigns
+ * those nodes, their children, and the nodes below any whose sets changed. If the weights can be scaled
+ * to integers, the costs are kept as integers with {@link ScaledSankoff}, so zero-cost edges are exact.
  */
 public class EdgeContractor {
+    //The most contraction states remembered by one contraction, to bound its memory
+    private static final int MAX_SEEN = 1 << 16;
+
     //The smallest size of a tree seen yet
     private int bestSize = Integer.MAX_VALUE;
     //The latest tree to be seen of the smallest size
     private Set<Node> bestTree;
+    //The unrooted topologies of the trees in bestTree, so that each distinct tree is only kept once
+    private Set<Topology> bestTopologies;
+    //The index of each labelled node of the tree being contracted, by its label
+    private Map<String, Integer> labelIndex;
     //(Used for Sankoff) the cost of each mutation
     private double[][] weights;
     //the number of characters a species has (Node.chars, passed in to avoid overhead)
     private int chars = 0;
+    //The top down sets of a node before it is reassigned
+    private int[] oldFits;
+    //The index of each edge of the original tree, by its child node (which stays the same through contractions)
+    private Map<Node, Integer> edgeIndex;
+    //The edges contracted so far, by index
+    private BitSet contracted;
+    //The sets of contracted edges that have already been searched (up to MAX_SEEN of them)
+    private Set<BitSet> seen;
+    //The integer scorer for the tree being contracted, or null if the weights can't be scaled to integers
+    private ScaledSankoff scaledSankoff;
+    //Whether the edge above each node could have zero cost, by edge index, as of the last top down
+    private BitSet zeroCost;
+    //The nodes whose costs or parent changed since the last top down
+    private Set<Node> changed;
+    //The smallest size found by any contractor sharing it (such as the workers of a ParallelCompactor), or null
+    private AtomicInteger sharedSize;
+    //The work done by the last contraction
+    private final SearchMetrics metrics = new SearchMetrics();
+    //The budget the contractions stop at, or null to search every order
+    private SearchBudget budget;
+    //Whether the last contraction ran out of budget, and the least size of the trees it did not search
+    private boolean incomplete;
+    private int unsearchedBound;
+    //The states searched since the last batch spent from the budget
+    private int unspent;
 
     public EdgeContractor(double[][] weights, int chars) {
         this.weights = weights;
         this.chars = chars;
     }
 
+    /**
+     * Shares the smallest tree size with other contractors, so that a tree which cannot contract to the
+     * size another contractor has already found is dropped as soon as its bound shows it. The
+     * contractions of a tree then only include trees of the smallest size shared so far, and may be empty.
+     *
+     * @param sharedSize the smallest size found by any contractor (start it at Integer.MAX_VALUE), or null
+     */
+    public void setSharedSize(AtomicInteger sharedSize) {
+        this.sharedSize = sharedSize;
+    }
+
+    /**
+     * Gets the counts of the work done by the last {@link #edgeContraction}: the contraction states
+     * searched and skipped as repeats, the trees scored, the states cut off by the size bound, and the
+     * time spent scoring the original tree and contracting it.
+     *
+     * @return the metrics of the last contraction
+     */
+    public SearchMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Limits the time and number of states of each contraction. Once the budget runs out, a contraction
+     * stops and returns the most compact trees found so far, and {@link #isComplete()} tells that the
+     * orders it did not search might have contracted further. The budget is started again by every
+     * contraction.
+     *
+     * @param budget the budget, or null to search every order
+     */
+    public void setBudget(SearchBudget budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Checks whether the last {@link #edgeContraction} searched every order of contractions, rather than
+     * running out of budget, so that the trees it found are certain to be the most compact.
+     *
+     * @return true if the contraction was complete
+     */
+    public boolean isComplete() {
+        return !incomplete;
+    }
+
+    /**
+     * Gets how much smaller than the trees found by the last {@link #edgeContraction} the trees it did not
+     * search could be: the gap between the smallest size found and the bound on the size of the states it
+     * stopped at (their size less their zero-cost edges).
+     *
+     * @return the gap in nodes (0 if the contraction was complete), or -1 if it stopped before finding any tree
+     */
+    public int getSizeGap() {
+        if (!incomplete) return 0;
+        if (bestTree.isEmpty()) return -1;
+        return Math.max(0, bestSize - unsearchedBound);
+    }
+
     /**
      * A method to contract a cubic tree into the smallest possible mixed tree
      * by contracting edges in every possible order to find the smallest
@@ -35,48 +144,214 @@ public class EdgeContractor {
      * @return the root of the compacted tree
      */
     public Set<Node> edgeContraction(Node root) {
-        bestSize = Integer.MAX_VALUE;
+        metrics.reset();
+        incomplete = false;
+        unsearchedBound = Integer.MAX_VALUE;
+        unspent = 0;
+        if (budget != null) {
+            budget.start();
+        }
+        long start = System.nanoTime();
+        bestSize = sharedSize == null ? Integer.MAX_VALUE : sharedSize.get();
         bestTree = new HashSet<>();
-        Sankoff.bottomUp(root, weights, chars);
+        bestTopologies = new HashSet<>();
+        labelIndex = Topology.index(root);
+        edgeIndex = new HashMap<>();
+        index(root);
+        contracted = new BitSet(edgeIndex.size());
+        seen = new HashSet<>();
+        scaledSankoff = ScaledSankoff.create(weights, chars, edgeIndex.size() + 1);
+        zeroCost = new BitSet(edgeIndex.size());
+        changed = new HashSet<>();
+        oldFits = new int[chars];
+        List<List<Node>> edges;
+        if (scaledSankoff != null) {
+            scaledSankoff.bottomUp(root);
+            edges = scaledSankoff.topDown(root);
+        } else {
+            Sankoff.bottomUp(root, weights, chars);
+            edges = Sankoff.topDown(root, weights, chars);
+        }
+        for (List<Node> edge : edges) {
+            zeroCost.set(edgeIndex.get(edge.get(1)));
+        }
+        metrics.score();
+        metrics.time("contractionScoring", System.nanoTime() - start);
+        start = System.nanoTime();
         edgeContractionRecursive(root);
+        metrics.time("contraction", System.nanoTime() - start);
+        edgeIndex = null;
+        seen = null;
+        zeroCost = null;
+        changed = null;
+        bestTopologies = null;
         return bestTree;
     }
 
+    //Number every edge below a node by its child node
+    private void index(Node node) {
+        for (Node child : node.children) {
+            edgeIndex.put(child, edgeIndex.size());
+            index(child);
+        }
+    }
+
     private void edgeContractionRecursive(Node root) {
+        metrics.contractionState();
         //get list of zero-cost edges
-        List<List<Node>> edgeList = Sankoff.topDown(root, weights, chars);
+        topDown(root, false);
+        List<List<Node>> edgeList = new ArrayList<>();
+        zeroCostEdges(root, edgeList);
+        takeSharedSize();
+        //stop if the budget has run out, unless the tree is already fully contracted
+        if (edgeList.size() > 0 && outOfBudget(root.size() - edgeList.size())) return;
         //bound the method: if the tree can never become the most compact, break out of recursion
         if (root.size() - edgeList.size() > bestSize) {
+            metrics.prune();
             return;
         }
-//        if (edgeList.size() + 1 > oldSize) {
-//            System.out.println("Made more 0-cost edges than we had before.");
-//        }
         //if there are no 0 cost edges, edge contraction is done
         if (edgeList.size() == 0) {
             int treeSize = root.size();
             //If the tree size is at least as compact as the best seen so far, set it as bestSize and bestTree
             if (treeSize == bestSize) {
-                bestTree.add(root.clone());
+                addBestTree(root);
             } else if (treeSize < bestSize) {
                 bestTree.clear();
-                bestTree.add(root.clone());
+                bestTopologies.clear();
+                addBestTree(root);
                 bestSize = treeSize;
+                offerSharedSize();
             }
         } else {
             //else, for every edge in list, contract edge and then recurse
             for (List<Node> edge : edgeList) {
-                contractEdge(edge);
+                int index = edgeIndex.get(edge.get(1));
+                contracted.set(index);
+                //Skip the edge if the same edges have already been contracted in another order
+                if (firstVisit()) {
+                    contractEdge(edge);
 
-                edgeContractionRecursive(root);
+                    edgeContractionRecursive(root);
 
-                //undo the contraction to try a different order
-                uncontractEdge(edge);
+                    //undo the contraction to try a different order
+                    uncontractEdge(edge);
+                } else {
+                    metrics.contractionRepeat();
+                }
+                contracted.clear(index);
             }
         }
     }
 
 
+    //Reassign the top down sets of the nodes that changed, and of the nodes below any whose sets changed
+    //(or whose parent changed, as a node that becomes labelled changes its edges). Every other node
+    //keeps its sets, and whether its edge could have zero cost.
+    private void topDown(Node node, boolean reassign) {
+        boolean propagate = changed.remove(node);
+        if (reassign || propagate) {
+            //assign overwrites the node's masks, so keep the old ones to tell whether they changed
+            boolean assigned = node.fitMasks != null;
+            if (assigned) {
+                System.arraycopy(node.fitMasks, 0, oldFits, 0, chars);
+            }
+            boolean zero = scaledSankoff != null ? scaledSankoff.assign(node) : Sankoff.assign(node, weights, chars);
+            if (node.parent != null) {
+                zeroCost.set(edgeIndex.get(node), zero);
+            }
+            propagate |= !assigned || !Arrays.equals(node.fitMasks, oldFits);
+        }
+        //The ancestors of a changed node are changed too, so only their children need checking
+        for (Node child : node.children) {
+            if (propagate || changed.contains(child)) {
+                topDown(child, propagate);
+            }
+        }
+    }
+
+    //List the edges below a node that could have zero cost, in preorder
+    private void zeroCostEdges(Node node, List<List<Node>> edges) {
+        for (Node child : node.children) {
+            if (zeroCost.get(edgeIndex.get(child))) {
+                List<Node> edge = new ArrayList<>();
+                edge.add(node);
+                edge.add(child);
+                edges.add(edge);
+            }
+            zeroCostEdges(child, edges);
+        }
+    }
+
+    //Rescore a node and its ancestors from the bottom up, marking them as changed for the next top down
+    private void update(Node node) {
+        while (node != null) {
+            rescore(node);
+            changed.add(node);
+            node = node.parent;
+        }
+    }
+
+    //Recalculate the costs of a node from its children's
+    private void rescore(Node node) {
+        if (scaledSankoff != null) {
+            scaledSankoff.update(node);
+        } else {
+            Sankoff.update(node, weights, chars);
+        }
+    }
+
+    //Check whether the current set of contracted edges has not been searched yet, remembering it if there
+    //is still room
+    private boolean firstVisit() {
+        if (seen.contains(contracted)) return false;
+        if (seen.size() < MAX_SEEN) {
+            seen.add((BitSet) contracted.clone());
+        }
+        return true;
+    }
+
+    //Add a copy of a compact tree to the best trees, unless the same unrooted tree is already there
+    //(contracting either edge at a bifurcating root gives the same tree)
+    private void addBestTree(Node root) {
+        if (bestTopologies.add(new Topology(root, labelIndex))) {
+            bestTree.add(root.clone());
+        }
+    }
+
+    //Lower the best size to the shared one if another contractor found a smaller tree, dropping the
+    //trees that can no longer be most compact
+    private void takeSharedSize() {
+        if (sharedSize != null && sharedSize.get() < bestSize) {
+            bestSize = sharedSize.get();
+            bestTree.clear();
+            bestTopologies.clear();
+        }
+    }
+
+    //Publish the best size if it is the smallest one so far
+    private void offerSharedSize() {
+        if (sharedSize == null) return;
+        int best;
+        do {
+            best = sharedSize.get();
+        } while (bestSize < best && !sharedSize.compareAndSet(best, bestSize));
+    }
+
+    //Count a state against the budget before contracting its edges, returning whether the budget has run
+    //out. Once it has, the contraction is incomplete, and keeps the bound on the size of the states it skips.
+    private boolean outOfBudget(int bound) {
+        if (budget == null) return false;
+        if (++unspent >= budget.getBatch()) {
+            budget.spend(unspent);
+            unspent = 0;
+        }
+        if (!budget.isExhausted()) return false;
+        incomplete = true;
+        unsearchedBound = Math.min(unsearchedBound, bound);
+        return true;
+    }
+
     private void contractEdge(List<Node> edge) {
         //Given an edge (parent, child), contract the edge between them
         Node parent = edge.get(0);
@@ -95,11 +370,8 @@ public class EdgeContractor {
             parent.data = child.data;
         }
 
-        //Find the root, call bottom up to fix all the scores/parentFits
-        while (parent.parent != null) {
-            parent = parent.parent;
-        }
-        Sankoff.bottomUp(parent, weights, chars);
+        //Only the contracted node and its ancestors have new costs, and so new parentFits for their children
+        update(parent);
     }
 
     private void uncontractEdge(List<Node> edge) {
@@ -124,10 +396,10 @@ public class EdgeContractor {
             parent.costs = null;
         }
 
-        //Find the root, call bottom up to fix all the scores/parentFits
-        while (parent.parent != null) {
-            parent = parent.parent;
-        }
-        Sankoff.bottomUp(parent, weights, chars);
+        //The child's children were scored against the parent, and if the child was labelled its costs
+        //were shared with the parent and changed, so rescore it before the parent and its ancestors
+        rescore(child);
+        changed.add(child);
+        update(parent);
     }
 }
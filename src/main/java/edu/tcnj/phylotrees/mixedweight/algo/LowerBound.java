@@ -0,0 +1,33 @@
+package edu.tcnj.phylotrees.mixedweight.algo;
+
+import edu.tcnj.phylotrees.mixedweight.data.Node;
+
+import java.util.List;
+
+/**
+ * A lower bound on the parsimony score that is still to be added to a partial tree
+ * during branch+bound enumeration, by the labelled nodes that have not been added yet.
+ * <p>
+ * The bound must be admissible: it may never be more than the score any completion of
+ * the partial tree really adds, otherwise most parsimonious trees would be pruned.
+ */
+public interface LowerBound {
+
+    /**
+     * Prepares the bound for an enumeration, which adds the labelled nodes in the given order.
+     *
+     * @param labelledNodes the labelled nodes, in the order they are added to the tree
+     * @param weights       the cost of each mutation
+     * @param chars         the number of characters a species has (Node.chars, passed in to avoid overhead)
+     */
+    void initialize(List<Node> labelledNodes, double[][] weights, int chars);
+
+    /**
+     * Gets a lower bound on the score added by the labelled nodes that are not yet in the tree.
+     *
+     * @param size the number of labelled nodes in the partial tree (the first {@code size} of the list)
+     * @param root the root of the partial tree, with its Sankoff costs up to date
+     * @return the least amount the score can increase by before the tree is complete
+     */
+    double bound(int size, Node root);
+}
@@ -0,0 +1,191 @@
+package edu.tcnj.phylotrees.mixedweight.algo;
+
+import edu.tcnj.phylotrees.mixedweight.data.Node;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The per-character minimum cost bound.
+ * <p>
+ * Whatever the tree, each character costs at least the cheapest tree that joins the states the
+ * labelled nodes have for it, with any states at its unlabelled nodes. This is found once per set of
+ * states from the weight matrix: exactly for up to four states, and otherwise as the most that can be
+ * said cheaply (see {@link #cheapestTree(int, double[][])}). A partial tree's cost for a character can only grow as nodes are
+ * added, so the bound is how far each character's cost is still below its minimum, summed over all
+ * characters.
+ * <p>
+ * Unlike with unit costs, a new state does not always add to a tree's cost (an unlabelled node may
+ * already have it on the way between two others), so the bound does not count the nodes left to add.
+ * It assumes the weights are symmetric and obey the triangle inequality, as the branch+bound on the
+ * partial tree's own score does.
+ * <p>
+ * When the weights can be scaled to integers, the partial tree is read from its {@link ScaledSankoff}
+ * costs, as the enumerator scores it that way.
+ */
+public class MinimumCostBound implements LowerBound {
+
+    //The least cost of each character over all trees of the labelled nodes
+    protected double[] minimum;
+    //The number of states a character can take
+    protected int states;
+    //The integer scorer the enumerator uses, and the least scaled cost of each character (null if unscaled)
+    protected ScaledSankoff scaledSankoff;
+    protected int[] scaledMinimum;
+
+    @Override
+    public void initialize(List<Node> labelledNodes, double[][] weights, int chars) {
+        states = weights.length;
+        //The states of each character, as bitmasks
+        int[] bases = new int[chars];
+        for (int i = 0; i < chars; i++) {
+            for (Node node : labelledNodes) {
+                for (int state : node.data.get(i)) {
+                    bases[i] |= 1 << state;
+                }
+            }
+        }
+        minimum = minimum(bases, weights);
+
+        //A cubic tree of n labelled nodes has n - 2 unlabelled ones
+        scaledSankoff = ScaledSankoff.create(weights, chars, 2 * labelledNodes.size());
+        scaledMinimum = null;
+        if (scaledSankoff != null) {
+            //The scaled weights are whole numbers, so their sums are exact even as doubles
+            int[][] scaled = scaledSankoff.getWeights();
+            double[][] scaledWeights = new double[scaled.length][];
+            for (int i = 0; i < scaled.length; i++) {
+                scaledWeights[i] = new double[scaled[i].length];
+                for (int j = 0; j < scaled[i].length; j++) {
+                    scaledWeights[i][j] = scaled[i][j];
+                }
+            }
+            double[] scaledCheapest = minimum(bases, scaledWeights);
+            scaledMinimum = new int[chars];
+            for (int i = 0; i < chars; i++) {
+                scaledMinimum[i] = (int) scaledCheapest[i];
+            }
+        }
+    }
+
+    //Find the least cost of each character from the states it has
+    private static double[] minimum(int[] bases, double[][] weights) {
+        //The cheapest tree for each set of states seen, by bitmask (there are too many to find them all
+        //for a large alphabet)
+        Map<Integer, Double> cheapest = new HashMap<>();
+        double[] minimum = new double[bases.length];
+        for (int i = 0; i < bases.length; i++) {
+            Double cost = cheapest.get(bases[i]);
+            if (cost == null) {
+                cost = cheapestTree(bases[i], weights);
+                cheapest.put(bases[i], cost);
+            }
+            minimum[i] = cost;
+        }
+        return minimum;
+    }
+
+    @Override
+    public double bound(int size, Node root) {
+        if (scaledSankoff != null) {
+            int bound = 0;
+            for (int i = 0; i < scaledMinimum.length; i++) {
+                int cost = scaledSankoff.cost(root, i);
+                if (cost < scaledMinimum[i]) {
+                    bound += scaledMinimum[i] - cost;
+                }
+            }
+            return scaledSankoff.unscale(bound);
+        }
+        double bound = 0;
+        double[] costs = root.costs;
+        for (int i = 0; i < minimum.length; i++) {
+            int offset = i * states;
+            double cost = Double.MAX_VALUE;
+            for (int base = offset; base < offset + states; base++) {
+                if (costs[base] < cost) cost = costs[base];
+            }
+            if (cost < minimum[i]) {
+                bound += minimum[i] - cost;
+            }
+        }
+        return bound;
+    }
+
+    //The cost of the cheapest tree with one leaf of each of the states. With up to three states, that is
+    //a star around the best state; with four, it is the best of the three ways to pair them around two.
+    //With more, the tree is at least as costly as the one for any three of its states, and at least half
+    //the minimum spanning tree of its states, so the larger of those is used.
+    private static double cheapestTree(int bases, double[][] weights) {
+        int[] leaves = new int[Integer.bitCount(bases)];
+        for (int base = 0, i = 0; base < weights.length; base++) {
+            if ((bases & 1 << base) != 0) leaves[i++] = base;
+        }
+        if (leaves.length < 4) {
+            return star(leaves, weights);
+        }
+        if (leaves.length == 4) {
+            double best = Double.POSITIVE_INFINITY;
+            for (int pair = 1; pair < 4; pair++) {
+                //leaves[0] and leaves[pair] on one side, the other two on the other
+                int c = pair == 1 ? 2 : 1;
+                int d = 6 - pair - c;
+                for (int left = 0; left < weights.length; left++) {
+                    for (int right = 0; right < weights.length; right++) {
+                        double cost = weights[left][leaves[0]] + weights[left][leaves[pair]] + weights[left][right]
+                                + weights[right][leaves[c]] + weights[right][leaves[d]];
+                        best = Math.min(best, cost);
+                    }
+                }
+            }
+            return best;
+        }
+        double best = spanningTree(leaves, weights) / 2;
+        for (int a = 0; a < leaves.length; a++) {
+            for (int b = a + 1; b < leaves.length; b++) {
+                for (int c = b + 1; c < leaves.length; c++) {
+                    best = Math.max(best, star(new int[]{leaves[a], leaves[b], leaves[c]}, weights));
+                }
+            }
+        }
+        return best;
+    }
+
+    //The cost of the cheapest star joining the leaves
+    private static double star(int[] leaves, double[][] weights) {
+        double best = Double.POSITIVE_INFINITY;
+        for (int center = 0; center < weights.length; center++) {
+            double cost = 0;
+            for (int leaf : leaves) {
+                cost += weights[center][leaf];
+            }
+            best = Math.min(best, cost);
+        }
+        return best;
+    }
+
+    //The cost of the minimum spanning tree of the leaves, by Prim's algorithm
+    private static double spanningTree(int[] leaves, double[][] weights) {
+        double[] distance = new double[leaves.length];
+        boolean[] joined = new boolean[leaves.length];
+        Arrays.fill(distance, Double.POSITIVE_INFINITY);
+        distance[0] = 0;
+        double cost = 0;
+        for (int added = 0; added < leaves.length; added++) {
+            int next = -1;
+            for (int i = 0; i < leaves.length; i++) {
+                if (!joined[i] && (next == -1 || distance[i] < distance[next])) next = i;
+            }
+            joined[next] = true;
+            cost += distance[next];
+            for (int i = 0; i < leaves.length; i++) {
+                if (!joined[i]) {
+                    distance[i] = Math.min(distance[i], weights[leaves[next]][leaves[i]]);
+                }
+            }
+        }
+        return cost;
+    }
+}
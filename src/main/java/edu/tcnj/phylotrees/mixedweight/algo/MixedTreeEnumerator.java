@@ -3,7 +3,6 @@ package edu.tcnj.phylotrees.mixedweight.algo;
 import edu.tcnj.phylotrees.mixedweight.data.Node;
 
 import java.util.List;
-import java.util.Set;
 
 public class MixedTreeEnumerator extends TreeEnumerator {
 
@@ -70,21 +69,28 @@ public class MixedTreeEnumerator extends TreeEnumerator {
     /**
      * Branch+bounded enumeration of all mixed trees, scored using hartigan
      *
-     * @return a set of root nodes of all most parsimonious trees
+     * @return a list of root nodes of all most parsimonious trees
      */
-    public Set<Node> sankoffEnumerate() {
+    public List<Node> sankoffEnumerate() {
         parsimonyScore = -1;
-        trees.clear();
+        clearTrees();
+        metrics.reset();
+        startBudget();
+        long start = System.nanoTime();
         initializeTree();
         if (labelledNodes.size() <= 2) {
-            trees.add(root.clone());
+            metrics.visit(labelledNodes.size());
+            addTree();
         } else {
             sankoffEnumerateRecursive(root, 2);
         }
+        metrics.time("enumeration", System.nanoTime() - start);
         return trees;
     }
 
     protected void sankoffEnumerateRecursive(Node current, int size) {
+        metrics.visit(size);
+        metrics.score();
         //Same as enumerateRecursive, but bounded using hartigan to score the trees in-progress
         if (size == labelledNodes.size()) {
             double score = Sankoff.bottomUp(root, weights, chars);
@@ -92,12 +98,19 @@ public class MixedTreeEnumerator extends TreeEnumerator {
 //            if (normalScore != score) {
 //                System.out.println(normalScore + " " + score);
 //            }
+            if (outOfBudget(score, size)) return;
             updateMPlist(score);
-        } else if (Sankoff.bottomUp(root, weights, chars) <= parsimonyScore || parsimonyScore == -1) {
-            case1(current, size, true);
-            case2(current, size, true);
-            case3(current, size, true);
-            case4(current, size, true);
+        } else {
+            double score = Sankoff.bottomUp(root, weights, chars);
+            if (outOfBudget(score, size)) return;
+            if (score <= parsimonyScore || parsimonyScore == -1) {
+                case1(current, size, true);
+                case2(current, size, true);
+                case3(current, size, true);
+                case4(current, size, true);
+            } else {
+                metrics.prune();
+            }
         }
     }
 
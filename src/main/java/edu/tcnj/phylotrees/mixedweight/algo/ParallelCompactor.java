@@ -0,0 +1,160 @@
+package edu.tcnj.phylotrees.mixedweight.algo;
+
+import edu.tcnj.phylotrees.SearchMetrics;
+import edu.tcnj.phylotrees.mixedweight.data.CompactTreeList;
+import edu.tcnj.phylotrees.mixedweight.data.Node;
+import edu.tcnj.phylotrees.mixedweight.data.Topology;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Contracts a set of (most parsimonious) cubic trees on several threads, keeping the most compact results.
+ * <p>
+ * Every tree is contracted by its own {@link EdgeContractor} as a task on a work-stealing
+ * {@link ForkJoinPool}. The smallest size found so far is shared between the contractors, so a tree
+ * is dropped as soon as its bound shows it cannot contract to that size.
+ * <p>
+ * The most compact trees found are the same as those of contracting every tree one after another.
+
+ */
+public class ParallelCompactor {
+
+    //(Used for Sankoff) the cost of each mutation
+    private final double[][] weights;
+    //the number of characters a species has (Node.chars, passed in to avoid overhead)
+    private final int chars;
+    //The number of threads to contract on
+    private final int parallelism;
+
+    //The size of the most compact trees of the last compaction
+    private int bestSize = Integer.MAX_VALUE;
+    //The work done by the contractors of the last compaction, added together
+    private final SearchMetrics metrics = new SearchMetrics();
+
+    public ParallelCompactor(double[][] weights, int chars, int parallelism) {
+        this.weights = weights;
+        this.chars = chars;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Contracts every given tree to its smallest possible size, and keeps the smallest of all of them.
+     *
+     * @param trees the cubic trees to contract
+     * @return the most compact trees, in the order of the trees they were contracted from
+     */
+    public List<Node> compact(Collection<Node> trees) {
+        metrics.reset();
+        final AtomicInteger sharedSize = new AtomicInteger(Integer.MAX_VALUE);
+        final List<Contraction> contractions = new ArrayList<>(trees.size());
+        if (trees instanceof CompactTreeList) {
+            //Only build each stored tree when it is contracted, rather than all of them at once
+            CompactTreeList stored = (CompactTreeList) trees;
+            for (int i = 0; i < stored.size(); i++) {
+                contractions.add(new Contraction(stored, i, sharedSize));
+            }
+        } else {
+            for (Node tree : trees) {
+                contractions.add(new Contraction(tree, sharedSize));
+            }
+        }
+
+        if (parallelism < 2) {
+            for (Contraction contraction : contractions) {
+                contraction.compute();
+            }
+        } else {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                pool.invoke(new RecursiveAction() {
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    protected void compute() {
+                        invokeAll(contractions);
+                    }
+                });
+            } finally {
+                pool.shutdown();
+            }
+        }
+
+        //Keep the trees of the contractions that found the smallest size, once each
+        //(different cubic trees can contract to the same compact tree)
+        bestSize = sharedSize.get();
+        List<Node> mostCompact = new ArrayList<>();
+        Map<String, Integer> labelIndex = null;
+        Set<Topology> topologies = new HashSet<>();
+        for (Contraction contraction : contractions) {
+            for (Node compactTree : contraction.compactTrees) {
+                if (labelIndex == null) {
+                    labelIndex = Topology.index(compactTree);
+                }
+                if (compactTree.size() == bestSize && topologies.add(new Topology(compactTree, labelIndex))) {
+                    mostCompact.add(compactTree);
+                }
+            }
+        }
+        return mostCompact;
+    }
+
+    /**
+     * Gets the size of the most compact trees found by the last {@link #compact(Collection)}.
+     *
+     * @return the number of nodes in each of the most compact trees, or Integer.MAX_VALUE if there were none
+     */
+    public int getBestSize() {
+        return bestSize;
+    }
+
+    /**
+     * Gets the counts of the work done by every contractor of the last {@link #compact(Collection)}.
+     *
+     * @return the metrics of the contractions, added together
+     */
+    public SearchMetrics getMetrics() {
+        return metrics;
+    }
+
+    //The contraction of one tree, run as a task on the pool
+    private class Contraction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        //The tree to contract, or null to build it from a stored list
+        private Node tree;
+        private final CompactTreeList stored;
+        private final int index;
+        private final AtomicInteger sharedSize;
+        private Set<Node> compactTrees;
+
+        private Contraction(Node tree, AtomicInteger sharedSize) {
+            this.tree = tree;
+            this.stored = null;
+            this.index = -1;
+            this.sharedSize = sharedSize;
+        }
+
+        private Contraction(CompactTreeList stored, int index, AtomicInteger sharedSize) {
+            this.stored = stored;
+            this.index = index;
+            this.sharedSize = sharedSize;
+        }
+
+        @Override
+        protected void compute() {
+            EdgeContractor edgeContractor = new EdgeContractor(weights, chars);
+            edgeContractor.setSharedSize(sharedSize);
+            compactTrees = edgeContractor.edgeContraction(tree != null ? tree : stored.get(index));
+            tree = null;
+            metrics.merge(edgeContractor.getMetrics());
+        }
+    }
+}
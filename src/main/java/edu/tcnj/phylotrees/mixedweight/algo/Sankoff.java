@@ -1,14 +1,21 @@
 package edu.tcnj.phylotrees.mixedweight.algo;
 
-import edu.tcnj.phylotrees.mixedweight.data.DNABase;
 import edu.tcnj.phylotrees.mixedweight.data.Node;
 
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
+/**
+ * Sankoff's algorithm for any number of states, one row and column of the weight matrix per state of
+ * the {@link edu.tcnj.phylotrees.mixedweight.data.Alphabet}. DNA (4 states) and amino acids (20 states)
+ * are scored by their own kernels, so the common alphabets don't pay for the general one's loops.
+ */
 public class Sankoff {
+
+    //The number of states of the alphabets with their own kernels
+    static final int DNA = 4;
+    static final int PROTEIN = 20;
+
     /**
      * Recursive bottom-up method to calculate the costs of each base at a given node
      *
@@ -25,61 +32,165 @@ public class Sankoff {
 
         //Outside the if statement because magic reasons
         //Reset the node's costs in case bottomUp has been run before
-        current.initializeCosts(chars);
+        current.initializeCosts(chars, weights.length);
         //If the node is not a leaf, score it using sankoff()
         if (current.children.size() >= 1) {
             sankoff(current, weights, chars);
         }
         //Only important for the root: for each character, find the minimum cost,
         //And return the sum of those costs.
+        return score(current, weights);
+    }
+
+    /**
+     * Gets the parsimony score of a tree whose costs are up to date, such as after
+     * {@link #bottomUp(Node, double[][], int)}: the sum over all characters of the root's minimum cost.
+     *
+     * @param root    the root of the tree
+     * @param weights the matrix of mutation costs
+     * @return the parsimony score
+     */
+    public static double score(Node root, double[][] weights) {
         double totalCost = 0;
-        for (double[] cost : current.costs) {
+        double[] costs = root.costs;
+        int states = weights.length;
+        for (int offset = 0; offset < costs.length; offset += states) {
             double minCost = Double.MAX_VALUE;
-            for (int i = 0; i < cost.length; i++) {
-                if (cost[i] < minCost) minCost = cost[i];
+            for (int i = offset; i < offset + states; i++) {
+                if (costs[i] < minCost) minCost = costs[i];
             }
             totalCost += minCost;
         }
         return totalCost;
     }
 
-    //Sankoff's algorithm for scoring a given node based on its children's scores and mutation costs
+    /**
+     * Recalculates the costs of a single node from its children's, which must be up to date, and
+     * sets the children's parentFits. Unlike {@link #bottomUp(Node, double[][], int)}, the nodes
+     * below are not rescored, so after a change to the tree only the changed node and its
+     * ancestors need updating, from the bottom up.
+     *
+     * @param current the node to rescore
+     * @param weights the matrix of mutation costs
+     * @param chars   the number of characters a species has
+     */
+    public static void update(Node current, double[][] weights, int chars) {
+        current.initializeCosts(chars, weights.length);
+        if (current.children.size() >= 1) {
+            sankoff(current, weights, chars);
+        }
+    }
+
+    //Sankoff's algorithm for scoring a given node based on its children's scores and mutation costs.
+    //The costs of a character are the states entries from its offset, and the child's states
+    //that lead to each minimum are kept as a bitmask, so nothing is allocated or boxed.
     private static void sankoff(Node current, double[][] weights, int chars) {
+        double[] costs = current.costs;
         //For every child
         for (Node child : current.children) {
-            //For every character
-            for (int i = 0; i < chars; i++) {
-                //For every one of the parent's states
-                for (DNABase currentBase : DNABase.values()) {
-                    //Find min(current cost + mutation cost) to generate the given parent base
-                    double minScore = Double.MAX_VALUE;
-                    //used to help with the top down: tracks the child's state(s) that lead to the min cost
-                    Set<DNABase> childContributions = new HashSet<>();
-                    //For each of the child bases, find (current cost + mutation cost) to see which is min
-                    for (DNABase childBase : DNABase.values()) {
-                        double score = child.costs.get(i)[childBase.value]
-                                + weights[currentBase.value][childBase.value];
-                        if (score < minScore) {
-                            minScore = score;
-                            //If a new lowest score is found, clear the set of bases
-                            childContributions.clear();
-                        }
-                        if (score == minScore) {
-                            //If this base has a score of minScore, add it as a potential contribution to the parent
-                            childContributions.add(childBase);
-                        }
+            if (child.parentFits == null || child.parentFits.length != costs.length) {
+                child.initializeFits(chars, weights.length);
+            }
+            switch (weights.length) {
+                case DNA:
+                    sankoffDNA(costs, child.costs, child.parentFits, weights);
+                    break;
+                case PROTEIN:
+                    sankoffProtein(costs, child.costs, child.parentFits, weights);
+                    break;
+                default:
+                    sankoff(costs, child.costs, child.parentFits, weights);
+            }
+        }
+    }
+
+    //Add one child's costs to its parent's, for any number of states
+    private static void sankoff(double[] costs, double[] childCosts, int[] parentFits, double[][] weights) {
+        int states = weights.length;
+        //For every character
+        for (int offset = 0; offset < costs.length; offset += states) {
+            //For every one of the parent's states
+            for (int currentState = 0; currentState < states; currentState++) {
+                double[] mutationCosts = weights[currentState];
+                //Find min(current cost + mutation cost) to generate the given parent state
+                double minScore = Double.MAX_VALUE;
+                //used to help with the top down: tracks the child's state(s) that lead to the min cost
+                int childContributions = 0;
+                //For each of the child states, find (current cost + mutation cost) to see which is min
+                for (int childState = 0; childState < states; childState++) {
+                    double score = childCosts[offset + childState] + mutationCosts[childState];
+                    if (score < minScore) {
+                        minScore = score;
+                        //If a new lowest score is found, clear the set of states
+                        childContributions = 0;
+                    }
+                    if (score == minScore) {
+                        //If this state has a score of minScore, add it as a potential contribution to the parent
+                        childContributions |= 1 << childState;
+                    }
+                }
+                //If the current node does not have Inf as its score (which would mean it's labelled),
+                //add the minScore to this character's cost and set the child's contributions
+                if (costs[offset + currentState] != Double.POSITIVE_INFINITY) {
+                    costs[offset + currentState] += minScore;
+                    parentFits[offset + currentState] = childContributions;
+                }
+            }
+        }
+    }
+
+    //sankoff() for amino acids: the same loops, but with a constant number of states the JIT can unroll
+    private static void sankoffProtein(double[] costs, double[] childCosts, int[] parentFits, double[][] weights) {
+        for (int offset = 0; offset < costs.length; offset += PROTEIN) {
+            for (int currentState = 0; currentState < PROTEIN; currentState++) {
+                if (costs[offset + currentState] == Double.POSITIVE_INFINITY) continue;
+                double[] mutationCosts = weights[currentState];
+                double minScore = Double.MAX_VALUE;
+                int childContributions = 0;
+                for (int childState = 0; childState < PROTEIN; childState++) {
+                    double score = childCosts[offset + childState] + mutationCosts[childState];
+                    if (score < minScore) {
+                        minScore = score;
+                        childContributions = 0;
                     }
-                    //If the current node does not have Inf as its score (which would mean it's labelled),
-                    //add the minScore to this character's cost and set the child's contributions
-                    if (!Double.valueOf(Double.POSITIVE_INFINITY).equals(current.costs.get(i)[currentBase.value])) {
-                        current.costs.get(i)[currentBase.value] += minScore;
-                        child.parentFits.get(i)[currentBase.value] = childContributions;
+                    if (score == minScore) {
+                        childContributions |= 1 << childState;
                     }
                 }
+                costs[offset + currentState] += minScore;
+                parentFits[offset + currentState] = childContributions;
             }
         }
     }
 
+    //sankoff() for DNA (or any four states), unrolled: each character's four child costs are read once,
+    //and each of the parent's states takes the least of its four sums
+    private static void sankoffDNA(double[] costs, double[] childCosts, int[] parentFits, double[][] weights) {
+        double[] w0 = weights[0], w1 = weights[1], w2 = weights[2], w3 = weights[3];
+        for (int offset = 0; offset < costs.length; offset += DNA) {
+            double child0 = childCosts[offset];
+            double child1 = childCosts[offset + 1];
+            double child2 = childCosts[offset + 2];
+            double child3 = childCosts[offset + 3];
+            fit(costs, parentFits, offset, child0 + w0[0], child1 + w0[1], child2 + w0[2], child3 + w0[3]);
+            fit(costs, parentFits, offset + 1, child0 + w1[0], child1 + w1[1], child2 + w1[2], child3 + w1[3]);
+            fit(costs, parentFits, offset + 2, child0 + w2[0], child1 + w2[1], child2 + w2[2], child3 + w2[3]);
+            fit(costs, parentFits, offset + 3, child0 + w3[0], child1 + w3[1], child2 + w3[2], child3 + w3[3]);
+        }
+    }
+
+    //Add the least of a DNA state's four sums to its cost, and mark the child's states that give it
+    private static void fit(double[] costs, int[] parentFits, int index,
+                            double score0, double score1, double score2, double score3) {
+        if (costs[index] == Double.POSITIVE_INFINITY) return;
+        double min = score0 < score1 ? score0 : score1;
+        double min23 = score2 < score3 ? score2 : score3;
+        if (min23 < min) min = min23;
+        costs[index] += min;
+        parentFits[index] = (score0 == min ? 1 : 0) | (score1 == min ? 2 : 0)
+                | (score2 == min ? 4 : 0) | (score3 == min ? 8 : 0);
+    }
+
     /*FIND 0 min-cost edges:
     For each character, if a state contributed to the same state in a parent,
     and that parent's state contributed to an optimal assignment of the root,
@@ -89,9 +200,9 @@ public class Sankoff {
 
     /**
      * Top down function to assign sets of possible fits to return zero-cost edges.
-     * currently works like hartigan's in terms of finding edges, so the Node.data sets
+     * currently works like hartigan's in terms of finding edges, so the Node.fitMasks sets
      * are not particularly useful outside of finding zero-cost edges. This algorithm
-     * assumes that the only zero-cost mutations are between a base and itself
+     * assumes that the only zero-cost mutations are between a state and itself
      *
      * @param current the current node being worked on
      * @param chars
@@ -99,64 +210,88 @@ public class Sankoff {
      */
     public static List<List<Node>> topDown(Node current, double[][] weights, int chars) {
         List<List<Node>> edges = new ArrayList<>();
+        //If the edge is zero cost, add it to the list of edges returned.
+        if (assign(current, weights, chars)) {
+            List<Node> newEdge = new ArrayList<>();
+            newEdge.add(current.parent);
+            newEdge.add(current);
+
+            edges.add(newEdge);
+        }
+        //Recursively call the algorithm in a top-down (preorder) fashion
+        for (Node child : current.children) {
+            edges.addAll(topDown(child, weights, chars));
+        }
+        return edges;
+    }
+
+    /**
+     * Assigns a single node its top down sets: the root gets the states of minimum cost, and any other
+     * node the states that lead to its parent's (which must already be assigned). The sets are kept as a
+     * bitmask per character in the node's fitMasks, overwritten in place, so nothing is allocated or boxed.
+     *
+     * @param current the node to assign
+     * @param weights the matrix of mutation costs
+     * @param chars   the number of characters a species has
+     * @return whether the edge above the node could have zero cost (always false for the root)
+     */
+    public static boolean assign(Node current, double[][] weights, int chars) {
+        if (current.fitMasks == null || current.fitMasks.length != chars) {
+            current.fitMasks = new int[chars];
+        }
+        int[] fitMasks = current.fitMasks;
         //Special case for the root: assign it any states that had the minimum cost
+        int states = weights.length;
         if (current.parent == null) {
             for (int i = 0; i < chars; i++) {
-                double[] costArr = current.costs.get(i);
+                int offset = i * states;
                 double minCost = Double.POSITIVE_INFINITY;
-                for (DNABase base : DNABase.values()) {
-                    double cost = costArr[base.value];
+                int mask = 0;
+                for (int state = 0; state < states; state++) {
+                    double cost = current.costs[offset + state];
                     if (cost < minCost) {
                         minCost = cost;
-                        current.data.get(i).clear();
+                        mask = 0;
                     }
                     if (cost == minCost) {
-                        current.data.get(i).add(base);
+                        mask |= 1 << state;
                     }
                 }
+                fitMasks[i] = mask;
             }
-        } else {
-            //For everything but the root, assign it any states that lead to any of the parent's states
-            int cost = 0;
-            current.data = Node.sets(chars);
-            for (int i = 0; i < chars; i++) {
-                Set<DNABase> parentSet = current.parent.data.get(i);
-                for (DNABase dnaBase : parentSet) {
-                    current.data.get(i).addAll(current.parentFits.get(i)[dnaBase.value]);
-                }
-                //Check for zero-cost edges: if the parent and child have some states in common for this character,
-                //then the edge could still be zero cost. Otherwise, increase the cost.
-                boolean hasPotentialZero = false;
-                for (DNABase currentBase : current.data.get(i)) {
-                    for (DNABase parentBase : current.parent.data.get(i)) {
-                        if (weights[currentBase.value][parentBase.value] == 0.0d) {
-                            hasPotentialZero = true;
-                            break;
-                        }
+            return false;
+        }
+        //For everything but the root, assign it any states that lead to any of the parent's states
+        int[] parentMasks = current.parent.fitMasks;
+        int cost = 0;
+        for (int i = 0; i < chars; i++) {
+            int offset = i * states;
+            int parentMask = parentMasks[i];
+            int fits = 0;
+            for (int rest = parentMask; rest != 0; rest &= rest - 1) {
+                fits |= current.parentFits[offset + Integer.numberOfTrailingZeros(rest)];
+            }
+            fitMasks[i] = fits;
+            //Check for zero-cost edges: if the parent and child have some states in common for this character,
+            //then the edge could still be zero cost. Otherwise, increase the cost.
+            boolean hasPotentialZero = false;
+            for (int currentState = 0; currentState < states && !hasPotentialZero; currentState++) {
+                if ((fits & 1 << currentState) == 0) continue;
+                for (int parentState = 0; parentState < states; parentState++) {
+                    if ((parentMask & 1 << parentState) != 0 && weights[currentState][parentState] == 0.0d) {
+                        hasPotentialZero = true;
+                        break;
                     }
-                    if (hasPotentialZero) break;
-                }
-
-                if (!hasPotentialZero) {
-                    cost++;
                 }
             }
-            //If the edge is zero cost, add it to the list of edges returned.
-            //Exceptions: do not count two labelled nodes as a zero cost edge.
-            //This shouldn't ever happen, as all species should be
-            //unique, unless only part of their dna sequences are used.
-            if (cost == 0 && !(current.parent.labelled && current.labelled)) {
-                List<Node> newEdge = new ArrayList<>();
-                newEdge.add(current.parent);
-                newEdge.add(current);
-
-                edges.add(newEdge);
+
+            if (!hasPotentialZero) {
+                cost++;
             }
         }
-        //Recursively call the algorithm in a top-down (preorder) fashion
-        for (Node child : current.children) {
-            edges.addAll(topDown(child, weights, chars));
-        }
-        return edges;
+        //Exceptions: do not count two labelled nodes as a zero cost edge.
+        //This shouldn't ever happen, as all species should be
+        //unique, unless only part of their dna sequences are used.
+        return cost == 0 && !(current.parent.labelled && current.labelled);
     }
 }
@@ -0,0 +1,369 @@
+package edu.tcnj.phylotrees.mixedweight.algo;
+
+import edu.tcnj.phylotrees.mixedweight.data.Node;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An integer implementation of {@link Sankoff}, for weights with finite decimal expansions.
+ * <p>
+ * Every weight is multiplied by the same power of ten to make it a whole number (weights of 1 and 2.5
+ * become 10 and 25), and the costs of each node are kept in {@link Node#scaledCosts} as {@code int}s.
+ * Sums of scaled weights are exact, so ties between states and zero-cost edges are found exactly rather
+ * than through {@code double} comparisons, and a cost table takes half the memory of {@link Node#costs}.
+ * The parentFits masks and the top down sets are the same as Sankoff's, and DNA and amino acids have
+ * their own kernels in the same way.
+ * <p>
+ * A labelled node keeps its infinite costs in {@link Node#costs}, which this class reads but never
+ * changes. The scores are the same as {@link Sankoff#bottomUp(Node, double[][], int)} once
+ * {@link #unscale(int) unscaled}, which remains the fallback when the weights can't be scaled
+ * (see {@link #create(double[][], int, int)}).
+ */
+public class ScaledSankoff {
+
+    /**
+     * The cost used for a state a labelled node does not have. It is far above any real cost, and can
+     * have a weight added to it without overflowing.
+     */
+    public static final int INFINITY = Integer.MAX_VALUE / 2;
+
+    //The most decimal places a weight may have to be scaled
+    private static final int MAX_DECIMALS = 6;
+
+    //The cost of each mutation, scaled to whole numbers
+    private final int[][] weights;
+    //The power of ten the weights were multiplied by
+    private final int scale;
+    //the number of characters a species has
+    private final int chars;
+    //the number of states a character can take
+    private final int states;
+
+    private ScaledSankoff(int[][] weights, int scale, int chars) {
+        this.weights = weights;
+        this.scale = scale;
+        this.chars = chars;
+        this.states = weights.length;
+    }
+
+    /**
+     * Scales the weights to whole numbers, if each has a finite decimal expansion of a few places and
+     * no tree of the given size could overflow an {@code int}.
+     *
+     * @param weights the matrix of mutation costs
+     * @param chars   the number of characters a species has
+     * @param nodes   the largest number of nodes a tree to be scored will have
+     * @return the scorer, or null if the weights can't be scaled
+     */
+    public static ScaledSankoff create(double[][] weights, int chars, int nodes) {
+        int decimals = 0;
+        for (double[] row : weights) {
+            for (double weight : row) {
+                if (Double.isInfinite(weight) || Double.isNaN(weight) || weight < 0) return null;
+                //The shortest decimal that gives the weight, which is what it was written as
+                decimals = Math.max(decimals, BigDecimal.valueOf(weight).stripTrailingZeros().scale());
+            }
+        }
+        if (decimals > MAX_DECIMALS) return null;
+
+        int[][] scaled = new int[weights.length][];
+        long maxWeight = 0;
+        for (int i = 0; i < weights.length; i++) {
+            scaled[i] = new int[weights[i].length];
+            for (int j = 0; j < weights[i].length; j++) {
+                BigDecimal weight = BigDecimal.valueOf(weights[i][j]).movePointRight(decimals);
+                if (weight.compareTo(BigDecimal.valueOf(INFINITY)) >= 0) return null;
+                scaled[i][j] = weight.intValueExact();
+                maxWeight = Math.max(maxWeight, scaled[i][j]);
+            }
+        }
+        //A tree's cost is at most the largest weight on every edge for every character
+        if (maxWeight * chars * nodes >= INFINITY) return null;
+        int scale = 1;
+        for (int i = 0; i < decimals; i++) {
+            scale *= 10;
+        }
+        return new ScaledSankoff(scaled, scale, chars);
+    }
+
+    /**
+     * Gets the power of ten the weights were multiplied by.
+     *
+     * @return the scale of the weights and costs
+     */
+    public int getScale() {
+        return scale;
+    }
+
+    /**
+     * Gets the scaled weights.
+     *
+     * @return the cost of each mutation, times {@link #getScale()}
+     */
+    public int[][] getWeights() {
+        return weights;
+    }
+
+    /**
+     * Converts a scaled cost back to the units of the weights.
+     *
+     * @param cost a scaled cost, such as a score
+     * @return the cost in the original units
+     */
+    public double unscale(int cost) {
+        return (double) cost / scale;
+    }
+
+    /**
+     * Recursive bottom-up method to calculate the scaled costs of each state at every node of a tree.
+     *
+     * @param current the root of the (sub)tree
+     * @return the scaled parsimony score of the (sub)tree
+     */
+    public int bottomUp(Node current) {
+        for (Node child : current.children) {
+            bottomUp(child);
+        }
+        update(current);
+        return score(current);
+    }
+
+    /**
+     * Recalculates the scaled costs of a single node from its children's, which must be up to date,
+     * and sets the children's parentFits, as {@link Sankoff#update(Node, double[][], int)} does.
+     *
+     * @param current the node to rescore
+     */
+    public void update(Node current) {
+        initializeCosts(current);
+        if (current.children.size() >= 1) {
+            sankoff(current);
+        }
+    }
+
+    /**
+     * Gets the scaled parsimony score of a tree whose costs are up to date: the sum over all characters
+     * of the root's minimum cost.
+     *
+     * @param root the root of the tree
+     * @return the scaled parsimony score
+     */
+    public int score(Node root) {
+        int totalCost = 0;
+        int[] costs = root.scaledCosts;
+        for (int offset = 0; offset < costs.length; offset += states) {
+            totalCost += minimum(costs, offset, states);
+        }
+        return totalCost;
+    }
+
+    /**
+     * Gets the least scaled cost of a character at a node whose costs are up to date.
+     *
+     * @param node      the node (such as the root)
+     * @param character the index of the character
+     * @return the minimum of the character's costs
+     */
+    public int cost(Node node, int character) {
+        return minimum(node.scaledCosts, character * states, states);
+    }
+
+    private static int minimum(int[] costs, int offset, int states) {
+        int minCost = Integer.MAX_VALUE;
+        for (int i = offset; i < offset + states; i++) {
+            if (costs[i] < minCost) minCost = costs[i];
+        }
+        return minCost;
+    }
+
+    //Reset a node's costs to zero, or to infinity for the states a labelled node does not have
+    private void initializeCosts(Node node) {
+        int length = chars * states;
+        if (node.scaledCosts == null || node.scaledCosts.length != length) {
+            node.scaledCosts = new int[length];
+        }
+        if (node.costs == null) {
+            //A node that stopped being labelled (such as when an edge contraction is undone)
+            node.initializeCosts(chars, states);
+        }
+        int[] costs = node.scaledCosts;
+        double[] pattern = node.costs;
+        for (int i = 0; i < length; i++) {
+            costs[i] = pattern[i] == Double.POSITIVE_INFINITY ? INFINITY : 0;
+        }
+    }
+
+    //Sankoff's algorithm for one node, as in Sankoff.sankoff but on scaled costs
+    private void sankoff(Node current) {
+        int[] costs = current.scaledCosts;
+        for (Node child : current.children) {
+            if (child.scaledCosts == null) {
+                //A leaf that has not been scored yet, such as a newly added labelled node
+                initializeCosts(child);
+            }
+            if (child.parentFits == null || child.parentFits.length != costs.length) {
+                child.initializeFits(chars, states);
+            }
+            switch (states) {
+                case Sankoff.DNA:
+                    sankoffDNA(costs, child.scaledCosts, child.parentFits);
+                    break;
+                case Sankoff.PROTEIN:
+                    sankoffProtein(costs, child.scaledCosts, child.parentFits);
+                    break;
+                default:
+                    sankoff(costs, child.scaledCosts, child.parentFits);
+            }
+        }
+    }
+
+    //Add one child's costs to its parent's, for any number of states
+    private void sankoff(int[] costs, int[] childCosts, int[] parentFits) {
+        for (int offset = 0; offset < costs.length; offset += states) {
+            for (int currentState = 0; currentState < states; currentState++) {
+                //States a labelled node does not have stay infinite
+                if (costs[offset + currentState] == INFINITY) continue;
+                int[] mutationCosts = weights[currentState];
+                int minScore = Integer.MAX_VALUE;
+                int childContributions = 0;
+                for (int childState = 0; childState < states; childState++) {
+                    int score = childCosts[offset + childState] + mutationCosts[childState];
+                    if (score < minScore) {
+                        minScore = score;
+                        childContributions = 0;
+                    }
+                    if (score == minScore) {
+                        childContributions |= 1 << childState;
+                    }
+                }
+                costs[offset + currentState] += minScore;
+                parentFits[offset + currentState] = childContributions;
+            }
+        }
+    }
+
+    //sankoff() for amino acids, with a constant number of states the JIT can unroll
+    private void sankoffProtein(int[] costs, int[] childCosts, int[] parentFits) {
+        for (int offset = 0; offset < costs.length; offset += Sankoff.PROTEIN) {
+            for (int currentState = 0; currentState < Sankoff.PROTEIN; currentState++) {
+                if (costs[offset + currentState] == INFINITY) continue;
+                int[] mutationCosts = weights[currentState];
+                int minScore = Integer.MAX_VALUE;
+                int childContributions = 0;
+                for (int childState = 0; childState < Sankoff.PROTEIN; childState++) {
+                    int score = childCosts[offset + childState] + mutationCosts[childState];
+                    if (score < minScore) {
+                        minScore = score;
+                        childContributions = 0;
+                    }
+                    if (score == minScore) {
+                        childContributions |= 1 << childState;
+                    }
+                }
+                costs[offset + currentState] += minScore;
+                parentFits[offset + currentState] = childContributions;
+            }
+        }
+    }
+
+    //sankoff() for DNA (or any four states), unrolled as in Sankoff
+    private void sankoffDNA(int[] costs, int[] childCosts, int[] parentFits) {
+        int[] w0 = weights[0], w1 = weights[1], w2 = weights[2], w3 = weights[3];
+        for (int offset = 0; offset < costs.length; offset += Sankoff.DNA) {
+            int child0 = childCosts[offset];
+            int child1 = childCosts[offset + 1];
+            int child2 = childCosts[offset + 2];
+            int child3 = childCosts[offset + 3];
+            fit(costs, parentFits, offset, child0 + w0[0], child1 + w0[1], child2 + w0[2], child3 + w0[3]);
+            fit(costs, parentFits, offset + 1, child0 + w1[0], child1 + w1[1], child2 + w1[2], child3 + w1[3]);
+            fit(costs, parentFits, offset + 2, child0 + w2[0], child1 + w2[1], child2 + w2[2], child3 + w2[3]);
+            fit(costs, parentFits, offset + 3, child0 + w3[0], child1 + w3[1], child2 + w3[2], child3 + w3[3]);
+        }
+    }
+
+    //Add the least of a DNA state's four sums to its cost, and mark the child's states that give it
+    private static void fit(int[] costs, int[] parentFits, int index,
+                            int score0, int score1, int score2, int score3) {
+        if (costs[index] == INFINITY) return;
+        int min = Math.min(Math.min(score0, score1), Math.min(score2, score3));
+        costs[index] += min;
+        parentFits[index] = (score0 == min ? 1 : 0) | (score1 == min ? 2 : 0)
+                | (score2 == min ? 4 : 0) | (score3 == min ? 8 : 0);
+    }
+
+    /**
+     * Top down function to assign sets of possible fits and find the zero-cost edges, as in
+     * {@link Sankoff#topDown(Node, double[][], int)}.
+     *
+     * @param current the root of the (sub)tree
+     * @return a list of zero-cost edges
+     */
+    public List<List<Node>> topDown(Node current) {
+        List<List<Node>> edges = new ArrayList<>();
+        if (assign(current)) {
+            List<Node> newEdge = new ArrayList<>();
+            newEdge.add(current.parent);
+            newEdge.add(current);
+
+            edges.add(newEdge);
+        }
+        for (Node child : current.children) {
+            edges.addAll(topDown(child));
+        }
+        return edges;
+    }
+
+    /**
+     * Assigns a single node its top down sets, as in {@link Sankoff#assign(Node, double[][], int)}.
+     *
+     * @param current the node to assign
+     * @return whether the edge above the node could have zero cost (always false for the root)
+     */
+    public boolean assign(Node current) {
+        if (current.fitMasks == null || current.fitMasks.length != chars) {
+            current.fitMasks = new int[chars];
+        }
+        int[] fitMasks = current.fitMasks;
+        if (current.parent == null) {
+            //The root gets every state of minimum cost
+            for (int i = 0; i < chars; i++) {
+                int offset = i * states;
+                int minCost = minimum(current.scaledCosts, offset, states);
+                int mask = 0;
+                for (int state = 0; state < states; state++) {
+                    if (current.scaledCosts[offset + state] == minCost) {
+                        mask |= 1 << state;
+                    }
+                }
+                fitMasks[i] = mask;
+            }
+            return false;
+        }
+        //Any other node gets the states that lead to its parent's
+        int[] parentMasks = current.parent.fitMasks;
+        boolean zeroCost = true;
+        for (int i = 0; i < chars; i++) {
+            int offset = i * states;
+            int parentMask = parentMasks[i];
+            int fits = 0;
+            for (int rest = parentMask; rest != 0; rest &= rest - 1) {
+                fits |= current.parentFits[offset + Integer.numberOfTrailingZeros(rest)];
+            }
+            fitMasks[i] = fits;
+            boolean hasPotentialZero = false;
+            for (int currentState = 0; currentState < states && !hasPotentialZero; currentState++) {
+                if ((fits & 1 << currentState) == 0) continue;
+                for (int parentState = 0; parentState < states && !hasPotentialZero; parentState++) {
+                    if ((parentMask & 1 << parentState) != 0 && weights[currentState][parentState] == 0) {
+                        hasPotentialZero = true;
+                    }
+                }
+            }
+            zeroCost &= hasPotentialZero;
+        }
+        //Two labelled nodes are never joined by a zero cost edge
+        return zeroCost && !(current.parent.labelled && current.labelled);
+    }
+}
@@ -0,0 +1,131 @@
+package edu.tcnj.phylotrees.mixedweight.algo;
+
+import edu.tcnj.phylotrees.mixedweight.data.Node;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A heuristic search for a good (but not necessarily most parsimonious) cubic tree, used to get an
+ * upper bound on the Sankoff score before an exhaustive branch+bound search.
+ * <p>
+ * The labelled nodes are added one at a time, in order, each to the edge where it adds the least
+ * to the score (greedy stepwise addition). The tree can then be refined by subtree pruning and
+ * regrafting (SPR): any subtree below a non-root internal node is moved to whichever other edge gives
+ * the best score, until no move improves it. Every nearest neighbour interchange is one of these moves.
+ */
+public class StepwiseAddition {
+
+    //The list of labelled nodes to build a tree of
+    private final List<Node> labelledNodes;
+
+    //The matrix of mutation costs
+    private final double[][] weights;
+
+    //the number of characters a species has (Node.chars, passed in to avoid overhead)
+    private final int chars;
+
+    //The root of the current tree
+    private Node root;
+
+    public StepwiseAddition(List<Node> labelledNodes, double[][] weights, int chars) {
+        this.labelledNodes = labelledNodes;
+        this.weights = weights;
+        this.chars = chars;
+    }
+
+    /**
+     * Builds a tree by stepwise addition, optionally refined by SPR.
+     *
+     * @param refine whether to improve the tree with SPR moves after adding all nodes
+     * @return the Sankoff score of the tree found, an upper bound on the most parsimonious score
+     */
+    public double search(boolean refine) {
+        root = new Node("", chars);
+        for (int i = 0; i < Math.min(3, labelledNodes.size()); i++) {
+            Node.linkNodes(root, labelledNodes.get(i).clone());
+        }
+        double score = Sankoff.bottomUp(root, weights, chars);
+
+        for (int size = 3; size < labelledNodes.size(); size++) {
+            Node internal = new Node("", chars);
+            Node leaf = labelledNodes.get(size).clone();
+            score = regraft(internal, leaf, null, null);
+        }
+
+        if (refine && labelledNodes.size() > 4) {
+            double previous;
+            do {
+                previous = score;
+                score = sprPass(score);
+            } while (score < previous);
+        }
+        return score;
+    }
+
+    /**
+     * Gets the tree built by the last {@link #search(boolean)}.
+     *
+     * @return the root of the (cubic) tree
+     */
+    public Node getTree() {
+        return root;
+    }
+
+    //Try moving every subtree below a non-root internal node to every other edge, making any move
+    //that improves the score, and return the score of the resulting tree
+    private double sprPass(double score) {
+        for (Node subtree : nodes(root)) {
+            Node internal = subtree.parent;
+            if (internal == null || internal == root) continue;
+
+            //Prune the subtree, joining its sibling to its grandparent
+            Node parent = internal.parent;
+            Node sibling = internal.children.get(0) == subtree
+                    ? internal.children.get(1) : internal.children.get(0);
+            TreeEnumerator.removeNodeFromEdge(sibling, parent, internal, subtree);
+
+            //Put it back on the best edge, which is the original one unless some edge is strictly better
+            double best = regraft(internal, subtree, sibling, parent);
+            if (best < score) {
+                score = best;
+            }
+        }
+        return score;
+    }
+
+    //Add internal (with child as its other child) to whichever edge of the tree gives the best score,
+    //preferring the edge between bestCurrent and bestParent (if given) on ties
+    private double regraft(Node internal, Node child, Node bestCurrent, Node bestParent) {
+        double best = Double.POSITIVE_INFINITY;
+        if (bestCurrent != null) {
+            TreeEnumerator.addNodeToEdge(bestCurrent, bestParent, internal, child);
+            best = Sankoff.bottomUp(root, weights, chars);
+            TreeEnumerator.removeNodeFromEdge(bestCurrent, bestParent, internal, child);
+        }
+        for (Node current : nodes(root)) {
+            if (current == root || current == bestCurrent) continue;
+            Node parent = current.parent;
+            TreeEnumerator.addNodeToEdge(current, parent, internal, child);
+            double score = Sankoff.bottomUp(root, weights, chars);
+            if (score < best) {
+                best = score;
+                bestCurrent = current;
+                bestParent = parent;
+            }
+            TreeEnumerator.removeNodeFromEdge(current, parent, internal, child);
+        }
+        TreeEnumerator.addNodeToEdge(bestCurrent, bestParent, internal, child);
+        return Sankoff.bottomUp(root, weights, chars);
+    }
+
+    //Get all nodes of a tree in breadth-first order, so that the tree can be changed while going through them
+    private static List<Node> nodes(Node root) {
+        List<Node> nodes = new ArrayList<>();
+        nodes.add(root);
+        for (int i = 0; i < nodes.size(); i++) {
+            nodes.addAll(nodes.get(i).children);
+        }
+        return nodes;
+    }
+}
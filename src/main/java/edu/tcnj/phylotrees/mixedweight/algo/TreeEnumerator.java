@@ -1,13 +1,16 @@
 package edu.tcnj.phylotrees.mixedweight.algo;
 
+import edu.tcnj.phylotrees.SearchBudget;
+import edu.tcnj.phylotrees.SearchMetrics;
+import edu.tcnj.phylotrees.SearchProgress;
+import edu.tcnj.phylotrees.mixedweight.data.CompactTreeList;
 import edu.tcnj.phylotrees.mixedweight.data.Node;
+import edu.tcnj.phylotrees.mixedweight.data.TreeSink;
 
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
-public abstract class TreeEnumerator {
+public abstract class TreeEnumerator implements SearchProgress {
 
     double[][] weights = {
             {0, 1, 1, 1},
@@ -22,8 +25,26 @@ public abstract class TreeEnumerator {
     //The list of labelled nodes received from the input
     protected List<Node> labelledNodes = new ArrayList<>();
 
-    //The set of all tree topologies
-    protected Set<Node> trees = new HashSet<>();
+    //The list of all tree topologies (a CompactTreeList once an enumeration has started, see clearTrees)
+    protected List<Node> trees = new ArrayList<>();
+
+    //The counts and times of the last enumeration
+    protected SearchMetrics metrics = new SearchMetrics();
+
+    //The number of (distinct) trees found with the best score in the current enumeration
+    protected long bestCount = 0;
+
+    //The budget the branch+bounded enumerations stop at, or null to search every tree
+    protected SearchBudget budget;
+    //Whether the current enumeration ran out of budget before searching every tree
+    protected boolean incomplete = false;
+    //The least score of the trees the current enumeration stopped without searching (a bound, as they are not scored)
+    protected double unsearchedBound = Double.POSITIVE_INFINITY;
+    //The partial trees visited since the last batch spent from the budget
+    private int unspent = 0;
+
+    //Where to send the most parsimonious trees as they are found, instead of keeping them in trees (null to keep them)
+    protected TreeSink treeSink;
 
     //The count of all trees enumerated (only maintained in the basic enumerate methods, not in fitch or hartigan)
     protected int treeCounter = 0;
@@ -34,8 +55,117 @@ public abstract class TreeEnumerator {
     //The root of the current tree
     protected Node root = new Node("", chars);
 
+    /**
+     * Gets the counts of the work done by the last enumeration: the partial trees visited at each
+     * depth, the branches pruned, the trees scored, the ties and improvements of the best score, and
+     * the time it took.
+     *
+     * @return the metrics of the last enumeration
+     */
+    public SearchMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public long getTreesVisited() {
+        return metrics.getVisited();
+    }
+
+    @Override
+    public double getBestScore() {
+        return bestCount > 0 ? parsimonyScore : Double.NaN;
+    }
+
+    @Override
+    public long getBestCount() {
+        return bestCount;
+    }
+
+    //Only enumerations that insert the labelled nodes on edges in a fixed order can estimate it
+    @Override
+    public double getCoverage() {
+        return -1;
+    }
+
+    /**
+     * Sends the most parsimonious trees to a sink as they are found, instead of keeping them until the
+     * enumeration ends. The sink is reset at the start of every enumeration, and the lists of trees the
+     * enumerations return are then empty. The enumeration keeps nothing else for each tree, so its memory
+     * does not grow with the number of most parsimonious trees.
+     *
+     * @param treeSink the sink, or null to keep the trees in the returned list
+     */
+    public void setTreeSink(TreeSink treeSink) {
+        this.treeSink = treeSink;
+    }
+
+    /**
+     * Limits the time and number of partial trees of the branch+bounded enumerations. Once the budget
+     * runs out, an enumeration stops and returns the most parsimonious trees found so far, and
+     * {@link #isComplete()} tells that the trees it did not search might have been better. The budget is
+     * started again by every enumeration.
+     *
+     * @param budget the budget, or null to search every tree
+     */
+    public void setBudget(SearchBudget budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Checks whether the last branch+bounded enumeration searched every tree, rather than running out of
+     * budget, so that the trees it found are certain to be the most parsimonious.
+     *
+     * @return true if the enumeration was complete
+     */
+    public boolean isComplete() {
+        return !incomplete;
+    }
+
+    /**
+     * Gets how much better than the trees found by the last branch+bounded enumeration the trees it did not
+     * search could be: the gap between the best score found and the lower bound on the score of the
+     * partial trees it stopped at.
+     *
+     * @return the gap (0 if the enumeration was complete), or -1 if it stopped before finding any tree
+     */
+    public double getScoreGap() {
+        if (!incomplete) return 0;
+        if (bestCount == 0) return -1;
+        return Math.max(0, parsimonyScore - unsearchedBound);
+    }
+
+    //Start the budget (if any) for a new enumeration
+    protected void startBudget() {
+        incomplete = false;
+        unsearchedBound = Double.POSITIVE_INFINITY;
+        unspent = 0;
+        if (budget != null) {
+            budget.start();
+        }
+    }
+
+    //Count a partial tree against the budget before searching the trees that extend it, returning whether
+    //the budget has run out. Once it has, the enumeration is incomplete, and keeps the bound on the score of
+    //the trees it does not search.
+    protected boolean outOfBudget(double score, int size) {
+        if (budget == null) return false;
+        if (++unspent >= budget.getBatch()) {
+            budget.spend(unspent);
+            unspent = 0;
+        }
+        if (!budget.isExhausted()) return false;
+        incomplete = true;
+        unsearchedBound = Math.min(unsearchedBound, bound(score, size));
+        return true;
+    }
+
+    //The least score of any tree extending a partial tree with the given score and number of labelled nodes
+    protected double bound(double score, int size) {
+        return score;
+    }
+
     //Add internal between current and parent, and then make leaf a child of internal
-    protected void addNodeToEdge(Node current, Node parent, Node internal, Node leaf) {
+    protected static void addNodeToEdge(Node current, Node parent, Node internal, Node leaf) {
         Node.unlinkNodes(parent, current);
 
         Node.linkNodes(parent, internal);
@@ -43,8 +173,17 @@ public abstract class TreeEnumerator {
         Node.linkNodes(internal, leaf);
     }
 
+    //Move current to the end of its parent's children without adding anything to its edge, as adding
+    //and removing a node there would have. The enumerations visit every child of a node by recursing
+    //into the first child once per child, so an edge that is pruned must still be moved along.
+    protected void skipEdge(Node current) {
+        Node parent = current.parent;
+        Node.unlinkNodes(parent, current);
+        Node.linkNodes(parent, current);
+    }
+
     //Remove internal and leaf, leaving just parent and current
-    protected void removeNodeFromEdge(Node current, Node parent, Node internal, Node leaf) {
+    protected static void removeNodeFromEdge(Node current, Node parent, Node internal, Node leaf) {
         Node.unlinkNodes(internal, leaf);
         Node.unlinkNodes(internal, current);
         Node.unlinkNodes(parent, internal);
@@ -59,13 +198,40 @@ public abstract class TreeEnumerator {
                 //Clear the list if a new best parsimony score is found
                 parsimonyScore = thisParsimonyScore;
                 trees.clear();
+                bestCount = 0;
+                metrics.improve();
+            } else {
+                metrics.tie();
             }
             //Add the tree if it matches the current best parsimony score
-            trees.add(root.clone());
+            addTree();
         } else if (parsimonyScore == -1) {
             //Initialize the parsimony score if it is -1
             parsimonyScore = thisParsimonyScore;
-            trees.add(root.clone());
+            metrics.improve();
+            addTree();
+        }
+    }
+
+    //Start a new, empty list of trees (a new one, as the last enumeration's may have been returned),
+    //and reset the sink if there is one
+    protected void clearTrees() {
+        bestCount = 0;
+        trees = new CompactTreeList(labelledNodes, chars);
+        if (treeSink != null) {
+            treeSink.reset();
+        }
+    }
+
+    //Add the current tree to the list of trees (or send it to the sink). The list stores its own compact
+    //copy of the tree's structure. The enumerations insert the taxa in a fixed order, so they reach each
+    //unrooted tree exactly once and the trees need no check for duplicates.
+    protected void addTree() {
+        bestCount++;
+        if (treeSink != null) {
+            treeSink.accept(root, parsimonyScore);
+        } else {
+            trees.add(root);
         }
     }
 }
@@ -0,0 +1,81 @@
+package edu.tcnj.phylotrees.mixedweight.data;
+
+/**
+ * The states a character can take with mixed weights, such as the four DNA bases or the twenty amino
+ * acids. Each state is a single textual character in a species' sequence, and is known everywhere else
+ * by its index, which is its row and column in the weight matrix.
+ * <p>
+ * The states of a character are kept as bitmasks of their indices (see {@link Node#parentFits}), so an
+ * alphabet has at most {@link #MAX_STATES} states.
+ */
+public class Alphabet {
+
+    /**
+     * The most states an alphabet can have.
+     */
+    public static final int MAX_STATES = Integer.SIZE;
+
+    /**
+     * The DNA bases, in the order of a weight matrix without an alphabet of its own: A G T C.
+     */
+    public static final Alphabet DNA = new Alphabet("AGTC");
+
+    //The state with each index
+    private final String symbols;
+
+    /**
+     * Construct an alphabet of the given states.
+     *
+     * @param symbols the textual character of each state, in the order of the weight matrix
+     */
+    public Alphabet(String symbols) {
+        if (symbols.isEmpty() || symbols.length() > MAX_STATES) {
+            throw new IllegalArgumentException("An alphabet must have between 1 and " + MAX_STATES
+                    + " states, not " + symbols.length());
+        }
+        for (int i = 0; i < symbols.length(); i++) {
+            if (symbols.indexOf(symbols.charAt(i)) != i) {
+                throw new IllegalArgumentException("The state " + symbols.charAt(i) + " is in the alphabet twice");
+            }
+        }
+        this.symbols = symbols;
+    }
+
+    /**
+     * Gets the number of states, and so the number of costs a node keeps for each character.
+     *
+     * @return the size of the alphabet
+     */
+    public int size() {
+        return symbols.length();
+    }
+
+    /**
+     * Gets the index of a state.
+     *
+     * @param symbol the state's textual character
+     * @return the index of the state
+     */
+    public int index(char symbol) {
+        int index = symbols.indexOf(symbol);
+        if (index == -1) {
+            throw new IllegalArgumentException("The state " + symbol + " is not in the alphabet " + symbols);
+        }
+        return index;
+    }
+
+    /**
+     * Gets the textual character of a state.
+     *
+     * @param index the index of the state
+     * @return the state's textual character
+     */
+    public char symbol(int index) {
+        return symbols.charAt(index);
+    }
+
+    @Override
+    public String toString() {
+        return symbols;
+    }
+}
@@ -6,7 +6,8 @@ import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * A wrapper class for a list of sets, representing the possible states a character
- * can exist in for a sequence of characters of a species.
+ * can exist in for a sequence of characters of a species. Each state is its index
+ * in the {@link Alphabet}.
  * <p>
  * <p>Since the underlying data structure is a {@link CopyOnWriteArrayList}, care should
  * be taken to correctly use this class:</p>
@@ -20,12 +21,12 @@ import java.util.concurrent.CopyOnWriteArrayList;
  * </ul>
  *
  */
-public class CharacterList extends CopyOnWriteArrayList<Set<DNABase>> {
+public class CharacterList extends CopyOnWriteArrayList<Set<Integer>> {
 
     public CharacterList() {
     }
 
-    public CharacterList(List<Set<DNABase>> sets) {
+    public CharacterList(List<Set<Integer>> sets) {
         super(sets);
     }
 }
@@ -0,0 +1,207 @@
+package edu.tcnj.phylotrees.mixedweight.data;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A list of trees of the same labelled nodes, each stored as a packed parent array instead of
+ * linked {@link Node}s, for keeping large numbers of (most parsimonious) trees.
+ * <p>
+ * Labelled node {@code i} of a tree is numbered {@code i}, and its unlabelled nodes are numbered
+ * from {@code n} up in preorder. A tree is then the parent number of each node (the root being its
+ * own parent), in one byte per node, or two once trees can have more than 256 nodes. A tree of 20
+ * species takes about 40 bytes, instead of the 40 {@code Node}s, child lists and
+ * cost arrays of a clone.
+ * <p>
+ * Adding a tree copies its structure, so the tree may go on changing afterwards. The trees are only
+ * built as {@code Node}s again, as clones of the labelled nodes, when they are iterated over or
+ * fetched with {@link #get(int)}; each time, new nodes are made (so, as {@code Node}s are compared
+ * by identity, the list never contains a tree it has given out). Trees are kept in the order they
+ * are added, without any check for duplicates: the tree enumerators reach each tree only once, so
+ * nothing else is kept per tree, and where the same tree can come up more than once (edge
+ * contraction), its {@link Topology} is the key.
+ * <p>
+ * The list can also be given to an enumerator as its {@link TreeSink}, keeping the trees of the best score.
+
+ */
+public class CompactTreeList extends AbstractList<Node> implements TreeSink {
+
+    //The labelled nodes, by number
+    private final List<Node> labelledNodes;
+    //the number of characters a species has (Node.chars, passed in to avoid overhead)
+    private final int chars;
+    //The number of each labelled node, by its label
+    private final Map<String, Integer> labelIndex = new HashMap<>();
+    //Whether parent numbers take two bytes
+    private final boolean wide;
+    //The parent array of each tree
+    private final List<byte[]> encoded = new ArrayList<>();
+    //The score of the trees given as a sink
+    private double score = Double.POSITIVE_INFINITY;
+
+    /**
+     * Creates an empty list for trees of the given labelled nodes.
+     *
+     * @param labelledNodes the labelled nodes that every tree is made of
+     * @param chars         the number of characters a species has
+     */
+    public CompactTreeList(List<Node> labelledNodes, int chars) {
+        this.labelledNodes = new ArrayList<>(labelledNodes);
+        this.chars = chars;
+        for (Node node : labelledNodes) {
+            labelIndex.put(node.label, labelIndex.size());
+        }
+        //A tree has at most n labelled nodes, n - 2 unlabelled ones and a bifurcating root
+        this.wide = 2 * labelledNodes.size() > 256;
+    }
+
+    /**
+     * Records the structure of a tree, which must contain every labelled node.
+     *
+     * @param root the root of the tree
+     * @return true
+     */
+    @Override
+    public boolean add(Node root) {
+        store(encode(root));
+        return true;
+    }
+
+    /**
+     * Keeps a packed tree.
+     *
+     * @param tree the packed parent array, from {@link #encode(Node)}
+     */
+    protected void store(byte[] tree) {
+        encoded.add(tree);
+    }
+
+    @Override
+    public synchronized void accept(Node tree, double score) {
+        if (score > this.score) return;
+        if (score < this.score) {
+            clear();
+            this.score = score;
+        }
+        add(tree);
+    }
+
+    @Override
+    public synchronized void reset() {
+        clear();
+        score = Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Gets the score of the trees given to this list as a {@link TreeSink}.
+     *
+     * @return the best score accepted, or infinity if no tree has been
+     */
+    public double getScore() {
+        return score;
+    }
+
+    /**
+     * Packs the structure of a tree into a parent array.
+     *
+     * @param root the root of the tree, which must contain every labelled node
+     * @return the packed parent array
+     */
+    protected byte[] encode(Node root) {
+        int[] parents = new int[labelledNodes.size() + root.size()];
+        int[] nextUnlabelled = {labelledNodes.size()};
+        number(root, -1, parents, nextUnlabelled);
+
+        int count = nextUnlabelled[0];
+        byte[] tree = new byte[wide ? 2 * count : count];
+        for (int i = 0; i < count; i++) {
+            if (wide) {
+                tree[2 * i] = (byte) (parents[i] >>> 8);
+                tree[2 * i + 1] = (byte) parents[i];
+            } else {
+                tree[i] = (byte) parents[i];
+            }
+        }
+        return tree;
+    }
+
+    //Number the nodes of a (sub)tree, unlabelled ones in preorder, and record the parent of each
+    private void number(Node node, int parent, int[] parents, int[] nextUnlabelled) {
+        int number = node.labelled ? labelIndex.get(node.label) : nextUnlabelled[0]++;
+        parents[number] = parent == -1 ? number : parent;
+        for (Node child : node.children) {
+            number(child, number, parents, nextUnlabelled);
+        }
+    }
+
+    /**
+     * Builds one of the trees as linked {@code Node}s. This only reads the list, so different threads
+     * may build trees at the same time.
+     *
+     * @param index the position of the tree, in the order the trees were added
+     * @return the root of a new copy of the tree
+     */
+    public Node get(int index) {
+        return decode(encoded.get(index));
+    }
+
+    /**
+     * Builds a tree as linked {@code Node}s from its packed parent array.
+     *
+     * @param tree the packed parent array, from {@link #encode(Node)}
+     * @return the root of the tree
+     */
+    protected Node decode(byte[] tree) {
+        int count = wide ? tree.length / 2 : tree.length;
+        List<Node> nodes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            nodes.add(i < labelledNodes.size() ? labelledNodes.get(i).clone() : new Node("", chars));
+        }
+        Node root = null;
+        for (int i = 0; i < count; i++) {
+            int parent = wide ? (tree[2 * i] & 0xFF) << 8 | (tree[2 * i + 1] & 0xFF) : tree[i] & 0xFF;
+            if (parent == i) {
+                root = nodes.get(i);
+            } else {
+                Node.linkNodes(nodes.get(parent), nodes.get(i));
+            }
+        }
+        return root;
+    }
+
+    @Override
+    public Iterator<Node> iterator() {
+        return new Iterator<Node>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < size();
+            }
+
+            @Override
+            public Node next() {
+                return get(next++);
+            }
+
+            @Override
+            public void remove() {
+                encoded.remove(--next);
+            }
+        };
+    }
+
+    @Override
+    public int size() {
+        return encoded.size();
+    }
+
+    @Override
+    public void clear() {
+        encoded.clear();
+    }
+}
@@ -13,8 +13,8 @@ public class Node implements Cloneable {
     public String label;
 
     /**
-     * The sets assigned to a node during top down (or during node creation for a labelled node)
-     * that function similarly to hartigan's root sets with regards to finding zero-cost edges
+     * The character states of a labelled node, one set per character (empty for an unlabelled node).
+     * The sets Sankoff's top down assigns are kept in {@link #fitMasks} instead.
      */
     public CharacterList data;
 
@@ -25,18 +25,34 @@ public class Node implements Cloneable {
 
     /**
      * The running costs for every character state of this node
-     * (based on its children's costs + mutation costs)
+     * (based on its children's costs + mutation costs), in one array of
+     * {@link Alphabet#size()} costs per character: the cost of state b at
+     * character i is at {@code costs[i * states + b]}
      */
-    public List<double[]> costs;
+    public double[] costs;
+
+    /**
+     * The costs of {@link #costs} as whole numbers, used by
+     * {@link edu.tcnj.phylotrees.mixedweight.algo.ScaledSankoff} in their place when the weights
+     * can be scaled to integers. A labelled node's infinite costs stay in {@link #costs}.
+     */
+    public int[] scaledCosts;
 
     /**
      * (Used in Sankoff's top-down)
-     * The bases selected to contribute to a parent's base costs
-     * The array is indexed by the parent's base, and the set at
-     * each index is the set of all of the current node's bases
-     * that yielded the minimum cost for the parent's base
+     * The states selected to contribute to a parent's state costs, laid out as {@link #costs}.
+     * The entry for each of the parent's states is a bitmask of all of the current node's
+     * states (by index) that yielded the minimum cost for the parent's state
      */
-    public List<Set<DNABase>[]> parentFits;
+    public int[] parentFits;
+
+    /**
+     * (Used in Sankoff's top-down)
+     * The states assigned to the node, which function similarly to hartigan's root sets with regards to
+     * finding zero-cost edges: a bitmask of states (by index) for each character. See {@link #fitSets()}
+     * for them as sets.
+     */
+    public int[] fitMasks;
 
     /**
      * Whether this node has a known label. Sometimes useful when running algorithms
@@ -55,95 +71,100 @@ public class Node implements Cloneable {
     public List<Node> children = new ArrayList<>();
 
     /**
-     * Construct a node with the given name.
+     * Construct a node with the given name. Its costs and parentFits are made when it is first
+     * scored, as their size depends on the number of states in the weights.
      *
      * @param label a name for the node, or an empty string for an unlabelled node
      * @param chars the number of characters a species has
      */
     public Node(String label, int chars) {
         this.data = sets(chars);
-        initializeFits(chars);
-        initializeCosts(chars);
         this.label = label;
         this.labelled = !label.isEmpty();
     }
 
     /**
-     * Construct a node with the given name and cost.
-     *  @param label a name for the node, or an empty string for an unlabelled node
+     * Construct a node with the given name and character states.
      *
+     * @param label    a name for the node, or an empty string for an unlabelled node
+     * @param data     a string of character states from some known species
+     * @param alphabet the states the characters can take
      */
-    public Node(String label, String data) {
+    public Node(String label, String data, Alphabet alphabet) {
         this(label, data.length());
-        this.setData(data);
+        this.setData(data, alphabet);
     }
 
     /**
      * For a labelled node, set its data from the given tree. Also set its costs to zero
-     * for whatever base it has at the current character, or infinity for the other bases
-     * @param data A string of character states from some known species
+     * for whatever state it has at the current character, or infinity for the other states
+     * @param data     A string of character states from some known species
+     * @param alphabet the states the characters can take
      */
-    public void setData(String data) {
+    public void setData(String data, Alphabet alphabet) {
         int chars = data.length();
+        int states = alphabet.size();
+        this.data = sets(chars);
+        costs = new double[chars * states];
         for (int i = 0; i < chars; i++) {
-            for (DNABase dnaBase : DNABase.values()) {
-                if (DNABase.valueOf(data.substring(i, i + 1)) == dnaBase) {
-                    costs.get(i)[dnaBase.value] = 0;
-                    this.data.get(i).add(dnaBase);
-                } else {
-                    costs.get(i)[dnaBase.value] = Double.POSITIVE_INFINITY;
-                }
+            int state = alphabet.index(data.charAt(i));
+            for (int j = 0; j < states; j++) {
+                costs[i * states + j] = j == state ? 0 : Double.POSITIVE_INFINITY;
             }
+            this.data.get(i).add(state);
         }
     }
 
     /**
      * Reset the costs that are generated in Sankoff's bottom-up.
-     * If costs is null or empty, initialize it, otherwise set all
+     * If costs is null or the wrong size, initialize it, otherwise set all
      * non-infinite values to zero.
      */
-    public void initializeCosts(int chars) {
-        if (costs == null || costs.isEmpty()) {
-            costs = new ArrayList<>(chars);
-            for (int i = 0; i < chars; i++) {
-                costs.add(new double[DNABase.values().length]);
-                for (int j = 0; j < DNABase.values().length; j++) {
-                    costs.get(i)[j] = 0;
-                }
-            }
+    public void initializeCosts(int chars, int states) {
+        if (costs == null || costs.length != chars * states) {
+            costs = new double[chars * states];
         } else {
-            for (int i = 0; i < chars; i++) {
-                for (int j = 0; j < DNABase.values().length; j++) {
-                    if (!Double.valueOf(Double.POSITIVE_INFINITY).equals(costs.get(i)[j])) costs.get(i)[j] = 0;
-                }
+            for (int i = 0; i < costs.length; i++) {
+                if (costs[i] != Double.POSITIVE_INFINITY) costs[i] = 0;
             }
         }
     }
 
     /**
-     * Initialize the parentFits of a node to an empty list
+     * Initialize the parentFits of a node to empty masks
      */
-    public void initializeFits(int chars) {
-        parentFits = new ArrayList<>(chars);
-        for (int i = 0; i < chars; i++) {
-            parentFits.add(new HashSet[DNABase.values().length]);
-//            TODO: is this initialization necessary?
-//            for (int j = 0; j < parentFits.get(i).length; j++) {
-//                parentFits.get(i)[j] = new HashSet<>();
-//            }
-        }
+    public void initializeFits(int chars, int states) {
+        parentFits = new int[chars * states];
     }
 
 
+    /**
+     * Gets the states assigned by Sankoff's top-down, such as to print them, as a set for each character.
+     *
+     * @return the sets of state indices, or null if the node has not been assigned
+     */
+    public CharacterList fitSets() {
+        if (fitMasks == null) return null;
+        List<Set<Integer>> sets = new ArrayList<>(fitMasks.length);
+        for (int mask : fitMasks) {
+            Set<Integer> states = new HashSet<>();
+            for (int rest = mask; rest != 0; rest &= rest - 1) {
+                states.add(Integer.numberOfTrailingZeros(rest));
+            }
+            sets.add(states);
+        }
+        return new CharacterList(sets);
+    }
+
     /**
      * Utility method to generate a list of sets, one set for each Character in a species.
      *
      * @return an empty but initialized {@link CharacterList} for a node with sets for each character
      */
     public static CharacterList sets(int chars) {
-        List<Set<DNABase>> sets = new ArrayList<>(chars);
+        List<Set<Integer>> sets = new ArrayList<>(chars);
         for (int i = chars; i-- > 0; ) {
-            sets.add(new HashSet<DNABase>());
+            sets.add(new HashSet<Integer>());
         }
         return new CharacterList(sets);
     }
@@ -182,7 +203,7 @@ public class Node implements Cloneable {
      */
     @Override
     public Node clone() {
-        Node newNode = new Node(this.label, this.costs.size());
+        Node newNode = new Node(this.label, this.data.size());
         for (Node child : children) {
             Node newChild = child.clone();
             newChild.parent = newNode;
@@ -190,18 +211,21 @@ public class Node implements Cloneable {
         }
 
         //Copy the data rather than referencing the same list
-        List<Set<DNABase>> list = new ArrayList<>();
-        for (Set<DNABase> dnaBases : this.data) {
-            list.add(new HashSet<>(dnaBases));
+        List<Set<Integer>> list = new ArrayList<>();
+        for (Set<Integer> states : this.data) {
+            list.add(new HashSet<>(states));
         }
         newNode.data = new CharacterList(list);
 
-        //Copy the costs rather than referencing the same list
-        newNode.costs = new ArrayList<>(this.costs.size());
-        for (double[] cost : this.costs) {
-            double[] newCost = new double[cost.length];
-            System.arraycopy(cost, 0, newCost, 0, cost.length);
-            newNode.costs.add(newCost);
+        //Copy the costs rather than referencing the same array
+        if (this.costs != null) {
+            newNode.costs = this.costs.clone();
+        }
+        if (this.scaledCosts != null) {
+            newNode.scaledCosts = this.scaledCosts.clone();
+        }
+        if (this.fitMasks != null) {
+            newNode.fitMasks = this.fitMasks.clone();
         }
         return newNode;
     }
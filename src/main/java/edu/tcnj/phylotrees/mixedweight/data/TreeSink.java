@@ -0,0 +1,26 @@
+package edu.tcnj.phylotrees.mixedweight.data;
+
+/**
+ * Receives the most parsimonious trees of an enumeration as they are found, so that they don't all
+ * have to be held in memory until the enumeration ends.
+ * <p>
+ * A sink only keeps the trees of the best score it has been given: a tree with a better score drops
+ * every tree kept before it, and a tree with a worse score is ignored. Implementations must be
+ * thread-safe, so that one sink can be given trees from several threads.
+ */
+public interface TreeSink {
+
+    /**
+     * Offers a tree to the sink. The tree will go on changing after this call, so the sink must copy
+     * whatever it keeps.
+     *
+     * @param tree  the root of the tree
+     * @param score the parsimony score of the tree
+     */
+    void accept(Node tree, double score);
+
+    /**
+     * Drops every tree, and forgets the best score, before a new enumeration.
+     */
+    void reset();
+}
@@ -4,10 +4,15 @@ import edu.tcnj.phylotrees.simpleweight.data.CharacterList;
 import edu.tcnj.phylotrees.simpleweight.data.Node;
 
 import javax.annotation.Nullable;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Map;
 import java.util.Set;
 
 public class Parser {
@@ -68,91 +73,110 @@ public class Parser {
      * @return root {@link Node} of the tree
      */
     public <S> Node<S> fromString(String s, @Nullable List<Node<S>> species) {
+        return fromString(s, species == null ? null : speciesIndex(species));
+    }
+
+    /**
+     * Converts a Newick tree string to a {@link Node} object which roots the entire tree, looking up the
+     * labelled nodes in an index from {@link #speciesIndex(List)}. Parsing many trees of the same species
+     * should build the index once and use this method.
+     * <p>
+     * The string is read in a single pass from left to right, keeping the children read so far of each
+     * node whose closing parenthesis is still to come, so the time taken is linear in its length (and
+     * deep trees don't recurse).
+     *
+     * @param s       Newick-formatted string
+     * @param species the species to copy for the labels of the tree, by label, or null to only label the nodes
+     * @return root {@link Node} of the tree
+     */
+    public <S> Node<S> fromString(String s, @Nullable Map<String, Node<S>> species) {
         if (s.isEmpty())
             throw new IllegalArgumentException("Empty string can't be a Newick tree, needs at least a ';'");
         if (s.length() == 1 && s.charAt(0) == ';') return null; // empty tree is technically a valid tree
         if (s.charAt(s.length() - 1) != ';') {
             throw new IllegalArgumentException("Invalid Newick string, missing ';'");
         }
-        return fromStringRecursive(s.substring(0, s.length() - 1), null, species);
-    }
-
-    private <S> Node<S> fromStringRecursive(String s, Node<S> parent, @Nullable List<Node<S>> species) {
-        int prevSpecial = -1;
-        for (int i = s.length() - 1; i >= 0; i--) {
-            // scan left until we find one of our special characters
-            char ch = s.charAt(i);
+        int end = s.length() - 1;
 
-            if (SPECIALS.indexOf(ch) != -1) {
-                prevSpecial = i;
-                break;
+        //The children read so far of each node that is still open, innermost first (the last holds the root)
+        Deque<List<Node<S>>> open = new ArrayDeque<>();
+        open.push(new ArrayList<Node<S>>(1));
+        //Whether a subtree starts at i: at the start, and after every '(' and ','
+        boolean subtree = true;
+        int i = 0;
+        while (subtree || i < end) {
+            if (subtree) {
+                if (i < end && s.charAt(i) == '(') {
+                    open.push(new ArrayList<Node<S>>());
+                    i++;
+                } else {
+                    //A leaf, whose (possibly empty) label runs up to the next special character
+                    int labelEnd = labelEnd(s, i, end);
+                    open.peek().add(nodeFromLabel(s.substring(i, labelEnd), species));
+                    i = labelEnd;
+                    subtree = false;
+                }
+                continue;
+            }
+            char ch = s.charAt(i++);
+            if (ch == ',') {
+                subtree = true;
+            } else if (ch == ')') {
+                //The node's label follows its children
+                int labelEnd = labelEnd(s, i, end);
+                Node<S> current = nodeFromLabel(s.substring(i, labelEnd), species);
+                if (open.size() == 1) {
+                    throw new IllegalArgumentException("Missing opening parenthesis for children of " + current.label);
+                }
+                for (Node<S> child : open.pop()) {
+                    child.parent = current;
+                    current.children.add(child);
+                }
+                open.peek().add(current);
+                i = labelEnd;
+            } else {
+                throw new IllegalArgumentException("Invalid Newick string, unexpected '" + ch + "' at " + (i - 1));
             }
         }
-        String label = s.substring(prevSpecial == -1 ? 0 : prevSpecial + 1, s.length());
-
-        Node<S> current = nodeFromLabel(label, species);
-        if (parent != null) {
-            current.parent = parent;
-            parent.children.add(current);
+        if (open.size() > 1) {
+            throw new IllegalArgumentException("Missing closing parenthesis");
         }
-
-        // current node has no children
-        if (prevSpecial == -1 || s.charAt(prevSpecial) != ')') {
-            return current;
+        List<Node<S>> roots = open.pop();
+        if (roots.size() > 1) {
+            throw new IllegalArgumentException("Invalid Newick string, more than one root");
         }
-        // otherwise
-        // find the matching ( for all of current's children
-        int childrenEnd = -1;
-        int parens = 0;
-        for (int i = prevSpecial; i >= 0; i--) { // first will always be a close paren
-            char ch = s.charAt(i);
-            if (ch == ')') parens++;
-            else if (ch == '(') parens--;
+        return roots.get(0);
+    }
 
-            // when parens hits 0, it means the initial (prevSpecial) ')' has been closed
-            if (parens == 0) {
-                childrenEnd = i;
-                break;
-            }
+    //Find the end of the label starting at i: the next special character, or the end
+    private static int labelEnd(String s, int i, int end) {
+        while (i < end && SPECIALS.indexOf(s.charAt(i)) == -1) {
+            i++;
         }
-        if (childrenEnd == -1) {
-            throw new IllegalArgumentException("Missing opening parenthesis for children of " + current.label);
-        }
-        String sC = s.substring(childrenEnd + 1, prevSpecial); // string containing all current children
-        List<Integer> childSeps = new ArrayList<>();
-        parens = 0;
-        for (int i = 0; i < sC.length(); i++) {
-            char ch = sC.charAt(i);
-            if (ch == '(') parens++;
-            else if (ch == ')') parens--;
+        return i;
+    }
 
-            if (parens == 0 && ch == ',') {
-                childSeps.add(i);
-            }
-        }
-        if (childSeps.isEmpty()) {
-            fromStringRecursive(sC, current, species); // single child
-        } else {
-            int start = 0;
-            int next = 0;
-            for (int i : childSeps) {
-                next = i;
-                fromStringRecursive(sC.substring(start, next), current, species); // children up to the last ','
-                start = next;
+    /**
+     * Indexes species by their labels, to parse trees of them with {@link #fromString(String, Map)}.
+     *
+     * @param species the species
+     * @return the species by label (the first of any with the same label)
+     */
+    public <S> Map<String, Node<S>> speciesIndex(List<Node<S>> species) {
+        Map<String, Node<S>> index = new HashMap<>();
+        for (Node<S> specy : species) {
+            if (!index.containsKey(specy.label)) {
+                index.put(specy.label, specy);
             }
-            fromStringRecursive(sC.substring(next + 1, sC.length()), current, species); // child from last ',' to the ')'
         }
-
-        return current;
-
+        return index;
     }
 
-    protected <S> Node<S> nodeFromLabel(String label, List<Node<S>> species) {
+    protected <S> Node<S> nodeFromLabel(String label, @Nullable Map<String, Node<S>> species) {
         if (species != null) {
-            for (Node<S> specy : species) {
-                if (specy.label.equals(label)) {
-                    return specy.clone();
-                }
+            Node<S> specy = species.get(label);
+            if (specy != null) {
+                return specy.clone();
             }
         }
         Node<S> node = new Node<>("");
@@ -173,6 +197,29 @@ public class Parser {
      * @param worldSet a {@link CharacterList} to be filled with all states for each character
      */
     public <S> void speciesList(List<String> input, List<Node<S>> species, List<Set<S>> worldSet) {
+        speciesList(input, species, worldSet, null);
+    }
+
+    /**
+     * Takes an input list of species and fills a list of nodes representing those species and a world set
+     * for each character's possible states, collapsing identical characters into a single weighted one.
+     * <p>
+     * Each character of the nodes is then a distinct site pattern (column) of the input, and its weight
+     * the number of columns with that pattern. The parsimony-informative patterns come first, followed by
+     * the uninformative ones, where at most one state occurs more than once. An uninformative character adds
+     * the same score to every cubic tree (see {@link #uninformativeScore(List, List, int)}), so only the
+     * informative characters need to be scored while enumerating cubic trees. The uninformative ones are
+     * kept since they still decide which edges are zero-cost when contracting trees.
+     *
+     * @param input    list of a string for each species in the form "L:XYZ" where L is the name and each
+     *                 X, Y, and Z is the state of the character at the given position
+     * @param species  a list to be filled with nodes
+     * @param worldSet a {@link CharacterList} to be filled with all states for each character
+     * @param weights  a list to be filled with the weight of each character, or null to keep every column
+     * @return the number of informative characters
+     */
+    public <S> int speciesList(List<String> input, List<Node<S>> species, List<Set<S>> worldSet,
+                               @Nullable List<Integer> weights) {
         List<String> labels = new ArrayList<>();
         List<String> data = new ArrayList<>();
         for (String s : input) {
@@ -181,6 +228,10 @@ public class Parser {
             data.add(sp[1]);
         }
         removeAllUninformative(data);
+        int informative = data.isEmpty() ? 0 : data.get(0).length();
+        if (weights != null) {
+            informative = compressPatterns(data, weights);
+        }
         for (int i = 0; i < input.size(); i++) {
             Node<S> node = new Node<>(labels.get(i));
             int chars = data.get(i).length();
@@ -197,6 +248,81 @@ public class Parser {
             }
             species.add(node);
         }
+        return informative;
+    }
+
+    /**
+     * Calculates the score that the uninformative characters add to every cubic tree: each character
+     * needs one change for every state but the most common.
+     *
+     * @param worldSet    all states for each character
+     * @param weights     the weight of each character
+     * @param informative the number of informative characters, which come before the uninformative ones
+     * @return the weighted score of the uninformative characters
+     */
+    public <S> int uninformativeScore(List<Set<S>> worldSet, List<Integer> weights, int informative) {
+        int score = 0;
+        for (int i = informative; i < worldSet.size(); i++) {
+            score += weights.get(i) * (worldSet.get(i).size() - 1);
+        }
+        return score;
+    }
+
+    // replace the columns of data with its distinct patterns (informative first), filling in their weights,
+    // and return the number of informative patterns
+    private int compressPatterns(List<String> data, List<Integer> weights) {
+        if (data.isEmpty()) return 0;
+
+        Map<String, Integer> patterns = new LinkedHashMap<>();
+        StringBuilder column = new StringBuilder(data.size());
+        for (int i = 0; i < data.get(0).length(); i++) {
+            column.setLength(0);
+            for (String s : data) {
+                column.append(s.charAt(i));
+            }
+            String pattern = column.toString();
+            Integer count = patterns.get(pattern);
+            patterns.put(pattern, count == null ? 1 : count + 1);
+        }
+
+        List<String> ordered = new ArrayList<>(patterns.size());
+        for (String pattern : patterns.keySet()) {
+            if (isInformative(pattern)) ordered.add(pattern);
+        }
+        int informative = ordered.size();
+        for (String pattern : patterns.keySet()) {
+            if (!isInformative(pattern)) ordered.add(pattern);
+        }
+
+        weights.clear();
+        StringBuilder[] rows = new StringBuilder[data.size()];
+        for (int j = 0; j < rows.length; j++) {
+            rows[j] = new StringBuilder(ordered.size());
+        }
+        for (String pattern : ordered) {
+            weights.add(patterns.get(pattern));
+            for (int j = 0; j < rows.length; j++) {
+                rows[j].append(pattern.charAt(j));
+            }
+        }
+        for (int j = 0; j < rows.length; j++) {
+            data.set(j, rows[j].toString());
+        }
+        return informative;
+    }
+
+    // a column is parsimony-informative if at least two of its states occur more than once
+    private boolean isInformative(String pattern) {
+        Map<Character, Integer> counts = new HashMap<>();
+        int repeated = 0;
+        for (int i = 0; i < pattern.length(); i++) {
+            Integer count = counts.get(pattern.charAt(i));
+            counts.put(pattern.charAt(i), count == null ? 1 : count + 1);
+            if (count != null && count == 1) {
+                repeated++;
+            }
+        }
+        return repeated >= 2;
     }
 
     private void removeAllUninformative(List<String> data) {
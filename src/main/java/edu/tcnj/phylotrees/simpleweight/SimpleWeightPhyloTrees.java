@@ -1,7 +1,13 @@
 package edu.tcnj.phylotrees.simpleweight;
 
+import edu.tcnj.phylotrees.ProgressReporter;
+import edu.tcnj.phylotrees.SearchMetrics;
+import edu.tcnj.phylotrees.simpleweight.algo.AdditionOrder;
+import edu.tcnj.phylotrees.simpleweight.algo.Checkpoint;
+import edu.tcnj.phylotrees.simpleweight.algo.CompactingTreeSink;
 import edu.tcnj.phylotrees.simpleweight.algo.CubicTreeEnumerator;
-import edu.tcnj.phylotrees.simpleweight.algo.EdgeContractor;
+import edu.tcnj.phylotrees.simpleweight.algo.ParallelCubicTreeEnumerator;
+import edu.tcnj.phylotrees.simpleweight.algo.StepwiseAddition;
 import edu.tcnj.phylotrees.simpleweight.data.CharacterList;
 import edu.tcnj.phylotrees.simpleweight.data.Node;
 
@@ -38,19 +44,29 @@ public class SimpleWeightPhyloTrees {
 
     private Parser parser = new Parser();
 
+    //The time between progress reports of a long enumeration, in milliseconds
+    private static final long PROGRESS_PERIOD = 10000;
+
+    //The file the enumeration saves its checkpoints to, and resumes from if it exists, and the time
+    //between checkpoints in milliseconds
+    private static final String CHECKPOINT_FILE = "checkpoint.dat";
+    private static final long CHECKPOINT_PERIOD = 300000;
+
     private void enumerateCubicFromInput() throws IOException {
         List<String> rawSpecies = readSpecies();
         List<Node<Character>> species = new ArrayList<>();
         List<Set<Character>> worldSet0 = new ArrayList<>();
-        parser.speciesList(rawSpecies, species, worldSet0);
+        List<Integer> weights = new ArrayList<>();
+        int informative = parser.speciesList(rawSpecies, species, worldSet0, weights);
+        int uninformativeScore = parser.uninformativeScore(worldSet0, weights, informative);
         CharacterList<Character> worldSet = new CharacterList<>(worldSet0);
+        System.out.println("Found " + weights.size() + " distinct site patterns, " + informative + " of them informative.");
 
         System.out.println("Now enumerating cubic trees and contracting them to find"
-                + " the most parsimonious, most compact mixed-labelled tree. Note that"
-                + " some trees may be duplicates or re-rooted versions of others.");
+                + " the most parsimonious, most compact mixed-labelled tree.");
         System.out.println("(this may take some time)");
 
-        runCubic(species, worldSet);
+        runCubic(species, worldSet, weights, informative, uninformativeScore);
     }
 
     private List<String> readSpecies() throws IOException {
@@ -69,74 +85,138 @@ public class SimpleWeightPhyloTrees {
         return rawSpecies;
     }
 
-    private void runCubic(List<Node<Character>> species, CharacterList<Character> worldSet) {
+    private void runCubic(List<Node<Character>> species, CharacterList<Character> worldSet, List<Integer> weights,
+                          int informative, int uninformativeScore) {
         int chars = species.get(0).root.size();
         long before = System.currentTimeMillis();
-        CubicTreeEnumerator<Character> treeEnumerator = new CubicTreeEnumerator<>(species, chars);
-        Set<Node<Character>> mostParsimonious = treeEnumerator.fitchEnumerate();
-        List<Node<Character>> mostCompact = compactCubic(mostParsimonious, worldSet, chars);
+        //Only the informative characters change the score between cubic trees, the rest are needed to contract them
+        CubicTreeEnumerator<Character> treeEnumerator = new ParallelCubicTreeEnumerator<>(species, worldSet,
+                informative, weights, Runtime.getRuntime().availableProcessors());
+        //Add the most different species first, so that the branch+bound prunes early
+        AdditionOrder<Character> additionOrder = treeEnumerator.planAdditionOrder();
+        //Carry on from where an earlier run stopped, if it left a checkpoint
+        File checkpointFile = new File(CHECKPOINT_FILE);
+        if (checkpointFile.exists()) {
+            try {
+                Checkpoint<Character> checkpoint = treeEnumerator.resume(checkpointFile);
+                System.out.println("Resuming the enumeration from file \"" + CHECKPOINT_FILE + "\""
+                        + (checkpoint.getTreeCount() > 0 ? ", with " + checkpoint.getTreeCount()
+                        + " trees of parsimony score " + (checkpoint.getScore() + uninformativeScore)
+                        + " found so far." : "."));
+            } catch (IOException e) {
+                System.out.println("Could not resume from file \"" + CHECKPOINT_FILE + "\": " + e.getMessage()
+                        + " Starting over.");
+            }
+        }
+        treeEnumerator.setCheckpoint(checkpointFile, CHECKPOINT_PERIOD);
+        List<Node<Character>> order = treeEnumerator.getLabelledNodes();
+        System.out.println("Adding species in the order " + labels(order) + " (distance added by the first half: "
+                + additionOrder.earlyDistance(order) + ", versus " + additionOrder.earlyDistance(species)
+                + " in input order).");
+        //Start the branch+bound from the score of a good heuristic tree rather than the first tree found
+        long stepwiseStart = System.nanoTime();
+        int upperBound = new StepwiseAddition<>(order, informative, weights).search(true);
+        long stepwiseTime = System.nanoTime() - stepwiseStart;
+        System.out.println("Stepwise addition found a tree with parsimony score " + (upperBound + uninformativeScore)
+                + ", using it as the starting bound.");
+        treeEnumerator.setUpperBound(upperBound);
+        //Contract the most parsimonious trees as they are found, rather than keeping them all until the end
+        CompactingTreeSink<Character> compactingSink = new CompactingTreeSink<>(worldSet, chars,
+                Runtime.getRuntime().availableProcessors());
+        treeEnumerator.setTreeSink(compactingSink);
+        //Report the enumeration's progress every so often, as it can take hours
+        ProgressReporter progressReporter = new ProgressReporter(treeEnumerator, PROGRESS_PERIOD, uninformativeScore);
+        progressReporter.start();
+        treeEnumerator.fitchEnumerate();
+        progressReporter.stop();
+        if (treeEnumerator.getCheckpointError() != null) {
+            System.out.println("There was an error writing the checkpoint file \"" + CHECKPOINT_FILE + "\": "
+                    + treeEnumerator.getCheckpointError().getMessage());
+        }
+        List<Node<Character>> mostCompact = compactingSink.finish();
 
         long time = System.currentTimeMillis() - before;
+        SearchMetrics metrics = new SearchMetrics();
+        metrics.time("stepwiseAddition", stepwiseTime);
+        metrics.merge(treeEnumerator.getMetrics());
+        metrics.merge(compactingSink.getMetrics());
         int mostCompactSize = mostCompact.get(0).size();
-        int cubicSize = mostParsimonious.iterator().next().size();
+        int cubicSize = compactingSink.getCubicSize();
         System.out.println("Cubic Tree Contraction:\n"
                 + "Species: " + species.size() + "\n"
                 + "Time taken: " + time + "ms\n"
-                + "Number of most parsimonious cubic trees: " + mostParsimonious.size() + "\n"
+                + "Parsimony score: " + (treeEnumerator.getParsimonyScore() + uninformativeScore) + "\n"
+                + "Number of most parsimonious cubic trees: " + compactingSink.getTreeCount() + "\n"
+                + "Partial trees visited: " + metrics.getVisited() + "\n"
+                + "Branches pruned by branch+bound: " + treeEnumerator.getPrunedCount() + "\n"
                 + "Number of most compacted mixed-labelled trees: " + mostCompact.size() + "\n"
                 + "Size of most compact mixed-labelled trees: " + mostCompact.get(0).size()
                 + " (" + (cubicSize - mostCompactSize) + " contractions)"
         );
+        writeMetrics(metrics);
         System.out.println("List of best trees (structure only): ");
         for (Node<Character> node : mostCompact) {
             System.out.println(parser.toString(node));
         }
+        //The search is done, so a later run starts a new one
+        checkpointFile.delete();
+    }
+
+    private String labels(List<Node<Character>> nodes) {
+        StringBuilder labels = new StringBuilder();
+        for (Node<Character> node : nodes) {
+            if (labels.length() > 0) labels.append(", ");
+            labels.append(node.label);
+        }
+        return labels.toString();
     }
 
     private void onlyContractCubics() throws IOException {
         List<String> rawSpecies = readSpecies();
         List<Node<Character>> species = new ArrayList<>();
         List<Set<Character>> worldSet0 = new ArrayList<>();
-        parser.speciesList(rawSpecies, species, worldSet0);
+        //Duplicate characters never change which edges are zero-cost, so contract with the distinct site patterns
+        parser.speciesList(rawSpecies, species, worldSet0, new ArrayList<Integer>());
         CharacterList<Character> worldSet = new CharacterList<>(worldSet0);
 
-        System.out.println("Reading tree input from file \"trees.txt\".");
+        System.out.println("Reading tree input from file \"trees.txt\", and contracting each tree as it is read.");
         File file = new File("trees.txt");
 
+        //Stream the trees to the contractions rather than reading them all first, as the file can hold
+        //millions, and only the most compact trees are kept
+        CompactingTreeSink<Character> compactingSink = new CompactingTreeSink<>(worldSet, species.get(0).root.size(),
+                Runtime.getRuntime().availableProcessors());
+        Map<String, Node<Character>> speciesIndex = parser.speciesIndex(species);
         BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(file)));
-        String line;
-        Set<Node<Character>> inTrees = new HashSet<>();
-        while ((line = br.readLine()) != null) {
-            inTrees.add(parser.fromString(line, species));
+        try {
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (line.isEmpty()) continue;
+                //The input trees are all taken as most parsimonious, so they share a score
+                compactingSink.accept(parser.fromString(line, speciesIndex), 0);
+            }
+        } finally {
+            br.close();
         }
+        List<Node<Character>> compactCubic = compactingSink.finish();
+        writeMetrics(compactingSink.getMetrics());
 
-        System.out.println("Contracting " + inTrees.size() + " cubic tree" + (inTrees.size() == 1 ? "." : "s."));
-        List<Node<Character>> compactCubic = compactCubic(inTrees, worldSet, species.get(0).root.size());
-
+        long treeCount = compactingSink.getTreeCount();
+        System.out.println("Contracted " + treeCount + " cubic tree" + (treeCount == 1 ? "." : "s."));
         System.out.println("List of contracted trees (structure only): ");
         for (Node<Character> node : compactCubic) {
             System.out.println(parser.toString(node));
         }
     }
 
-    private List<Node<Character>> compactCubic(Set<Node<Character>> mostParsimonious,
-                                               CharacterList<Character> worldSet, int chars) {
-        List<Node<Character>> mostCompact = new ArrayList<>();
-        int mostCompactSize = Integer.MAX_VALUE;
-        for (Node<Character> tree : mostParsimonious) {
-            EdgeContractor<Character> edgeContractor = new EdgeContractor<>(worldSet, chars);
-            for (Node<Character> compactTree : edgeContractor.edgeContraction(tree)) {
-                int thisSize = compactTree.size();
-                if (thisSize <= mostCompactSize) {
-                    if (compactTree.size() < mostCompactSize) {
-                        mostCompact.clear();
-                    }
-                    mostCompact.add(compactTree);
-                    mostCompactSize = thisSize;
-                }
-            }
+    //Write the counts of the work done by a search to a file, to see where the time goes on a dataset
+    private void writeMetrics(SearchMetrics metrics) {
+        try {
+            metrics.writeJson(new File("metrics.json"));
+            System.out.println("Wrote the search metrics to file \"metrics.json\".");
+        } catch (IOException e) {
+            System.out.println("There was an error writing the search metrics to \"metrics.json\".");
         }
-        return mostCompact;
     }
 
     private void getTimingInfoFromInput() throws IOException {
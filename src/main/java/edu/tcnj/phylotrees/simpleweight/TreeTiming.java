@@ -1,5 +1,6 @@
 package edu.tcnj.phylotrees.simpleweight;
 
+import edu.tcnj.phylotrees.simpleweight.algo.ArrayCubicTreeEnumerator;
 import edu.tcnj.phylotrees.simpleweight.algo.CubicTreeEnumerator;
 import edu.tcnj.phylotrees.simpleweight.algo.EdgeContractor;
 import edu.tcnj.phylotrees.simpleweight.algo.MixedTreeEnumerator;
@@ -32,24 +33,26 @@ public class TreeTiming {
                 final CharacterList<Character> worldSet;
                 final List<Node<Character>> species = new ArrayList<>();
                 List<Set<Character>> worldSet0 = new ArrayList<>();
-                parser.speciesList(dataPerTrial.get(j).subList(0, treeSize), species, worldSet0);
+                final List<Integer> weights = new ArrayList<>();
+                parser.speciesList(dataPerTrial.get(j).subList(0, treeSize), species, worldSet0, weights);
                 worldSet = new CharacterList<>(worldSet0);
                 callables.add(new Callable<long[]>() {
                     @Override
                     public long[] call() throws Exception {
-                        return runMixed(species, worldSet, trialNum);
+                        return runMixed(species, worldSet, weights, trialNum);
                     }
                 });
 
                 final CharacterList<Character> worldSet1;
                 final List<Node<Character>> species0 = new ArrayList<>();
                 List<Set<Character>> worldSet2 = new ArrayList<>();
-                parser.speciesList(dataPerTrial.get(j).subList(0, treeSize), species0, worldSet2);
+                final List<Integer> weights0 = new ArrayList<>();
+                final int informative = parser.speciesList(dataPerTrial.get(j).subList(0, treeSize), species0, worldSet2, weights0);
                 worldSet1 = new CharacterList<>(worldSet2);
                 callables.add(new Callable<long[]>() {
                     @Override
                     public long[] call() throws Exception {
-                        return runCubic(species0, worldSet1, trialNum);
+                        return runCubic(species0, worldSet1, weights0, informative, trialNum);
                     }
                 });
             }
@@ -119,11 +122,13 @@ public class TreeTiming {
         }
     }
 
-    public static long[] runMixed(List<Node<Character>> species, CharacterList<Character> worldSet, int trialNum) {
+    public static long[] runMixed(List<Node<Character>> species, CharacterList<Character> worldSet,
+                                  List<Integer> weights, int trialNum) {
         int chars = species.get(0).root.size();
         long before = System.currentTimeMillis();
-        MixedTreeEnumerator<Character> treeEnumerator = new MixedTreeEnumerator<>(species, worldSet, chars);
-        Set<Node<Character>> mostParsimonious = treeEnumerator.hartiganEnumerate();
+        //Uninformative characters aren't constant on mixed-labelled trees, so score all of them
+        MixedTreeEnumerator<Character> treeEnumerator = new MixedTreeEnumerator<>(species, worldSet, chars, weights);
+        List<Node<Character>> mostParsimonious = treeEnumerator.hartiganEnumerate();
         Set<Node<Character>> mostCompact = new HashSet<>();
         int mostCompactSize = Integer.MAX_VALUE;
         for (Node<Character> tree : mostParsimonious) {
@@ -142,11 +147,12 @@ public class TreeTiming {
         return new long[]{species.size(), time, mostCompact.size()};
     }
 
-    public static long[] runCubic(List<Node<Character>> species, CharacterList<Character> worldSet, int trialNum) {
+    public static long[] runCubic(List<Node<Character>> species, CharacterList<Character> worldSet,
+                                  List<Integer> weights, int informative, int trialNum) {
         int chars = species.iterator().next().root.size();
         long before = System.currentTimeMillis();
-        CubicTreeEnumerator<Character> treeEnumerator = new CubicTreeEnumerator<>(species, chars);
-        Set<Node<Character>> mostParsimonious = treeEnumerator.fitchEnumerate();
+        CubicTreeEnumerator<Character> treeEnumerator = new ArrayCubicTreeEnumerator<>(species, worldSet, informative, weights);
+        List<Node<Character>> mostParsimonious = treeEnumerator.fitchEnumerate();
         //TODO maybe move PhyloTreeContract.compactCubic to util class, use it here?
         List<Node<Character>> mostCompact = new ArrayList<>();
         int numContractions = 0;
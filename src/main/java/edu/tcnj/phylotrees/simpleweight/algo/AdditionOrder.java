@@ -0,0 +1,124 @@
+package edu.tcnj.phylotrees.simpleweight.algo;
+
+import edu.tcnj.phylotrees.simpleweight.data.Node;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Plans the order in which a cubic tree enumerator adds the labelled nodes.
+ * <p>
+ * A branch+bound can only prune a partial tree once its score gets close to the best score, so it
+ * helps to add the most different nodes first: their partial trees score high early on, and the
+ * nodes added last (which are close to ones already in the tree) change the score the least.
+ * The max-min (furthest first) order starts with the two most distant nodes, and then keeps adding
+ * the node whose distance to the closest node already added is the largest.
+ * <p>
+ * The distance between two nodes is the (weighted) number of characters whose root sets have no state
+ * in common, i.e. the Hamming distance for nodes with a single state per character.
+ *
+ * @param <S> the data type used to represent each character state
+ */
+public class AdditionOrder<S> {
+
+    //The labelled nodes, in their original order
+    private final List<Node<S>> labelledNodes;
+
+    //The distance between each pair of labelled nodes, by their original index
+    private final int[][] distances;
+
+    public AdditionOrder(List<Node<S>> labelledNodes, int chars, int[] weights) {
+        this.labelledNodes = labelledNodes;
+        int n = labelledNodes.size();
+        distances = new int[n][n];
+        for (int a = 0; a < n; a++) {
+            for (int b = a + 1; b < n; b++) {
+                int distance = 0;
+                for (int i = 0; i < chars; i++) {
+                    if (Collections.disjoint(labelledNodes.get(a).root.get(i), labelledNodes.get(b).root.get(i))) {
+                        distance += weights == null ? 1 : weights[i];
+                    }
+                }
+                distances[a][b] = distance;
+                distances[b][a] = distance;
+            }
+        }
+    }
+
+    /**
+     * Orders the labelled nodes so that each node is as far as possible from all nodes before it.
+     * Ties are broken by the total distance to the nodes before it, and then by the original order.
+     *
+     * @return a new list of the labelled nodes in max-min order
+     */
+    public List<Node<S>> maxMin() {
+        int n = labelledNodes.size();
+        List<Node<S>> order = new ArrayList<>(n);
+        if (n < 3) {
+            order.addAll(labelledNodes);
+            return order;
+        }
+
+        //Start with the two most distant nodes
+        int first = 0, second = 1;
+        for (int a = 0; a < n; a++) {
+            for (int b = a + 1; b < n; b++) {
+                if (distances[a][b] > distances[first][second]) {
+                    first = a;
+                    second = b;
+                }
+            }
+        }
+        boolean[] added = new boolean[n];
+        //The distance from each node to the closest node added so far, and to all of them (to break ties)
+        int[] closest = new int[n];
+        int[] total = new int[n];
+        for (int a = 0; a < n; a++) {
+            closest[a] = Math.min(distances[a][first], distances[a][second]);
+            total[a] = distances[a][first] + distances[a][second];
+        }
+        added[first] = true;
+        added[second] = true;
+        order.add(labelledNodes.get(first));
+        order.add(labelledNodes.get(second));
+
+        while (order.size() < n) {
+            int furthest = -1;
+            for (int a = 0; a < n; a++) {
+                if (!added[a] && (furthest == -1 || closest[a] > closest[furthest]
+                        || closest[a] == closest[furthest] && total[a] > total[furthest])) {
+                    furthest = a;
+                }
+            }
+            added[furthest] = true;
+            order.add(labelledNodes.get(furthest));
+            for (int a = 0; a < n; a++) {
+                closest[a] = Math.min(closest[a], distances[a][furthest]);
+                total[a] += distances[a][furthest];
+            }
+        }
+        return order;
+    }
+
+    /**
+     * Measures how early an order brings in differences between the nodes, to compare the expected
+     * pruning of two orders: the sum, over the first half of the order, of the distance from each node
+     * to the closest node before it. Higher is better.
+     *
+     * @param order some order of the labelled nodes
+     * @return the distance added by the first half of the nodes
+     */
+    public int earlyDistance(List<Node<S>> order) {
+        int distance = 0;
+        for (int k = 1; k < (order.size() + 1) / 2; k++) {
+            int b = labelledNodes.indexOf(order.get(k));
+            int closest = Integer.MAX_VALUE;
+            for (int j = 0; j < k; j++) {
+                closest = Math.min(closest, distances[labelledNodes.indexOf(order.get(j))][b]);
+            }
+            distance += closest;
+        }
+        return distance;
+    }
+}
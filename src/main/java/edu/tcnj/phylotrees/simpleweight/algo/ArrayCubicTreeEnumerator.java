@@ -0,0 +1,188 @@
+package edu.tcnj.phylotrees.simpleweight.algo;
+
+import edu.tcnj.phylotrees.InsertionPath;
+import edu.tcnj.phylotrees.simpleweight.data.ArrayTree;
+import edu.tcnj.phylotrees.simpleweight.data.CharacterList;
+import edu.tcnj.phylotrees.simpleweight.data.Node;
+
+import java.util.List;
+
+/**
+ * A {@link CubicTreeEnumerator} whose branch+bounded Fitch enumeration runs on an {@link ArrayTree}
+ * instead of linked {@link Node}s.
+ * <p>
+ * Labelled node {@code i} is tree node {@code i}, the root is node {@code n}, and the unlabelled node
+ * added along with labelled node {@code k} is node {@code n + k - 2}, so the whole search uses one fixed
+ * set of arrays. The packed Fitch set of every node is kept at its offset in a single {@code long}
+ * array and rescored incrementally up the path from each change, as in {@link PackedFitch#update(Node)}.
+ * Adding and removing a labelled node then allocates nothing; linked trees are only built for the
+ * most parsimonious trees that are kept.
+ * <p>
+ * The most parsimonious trees found are the same as those of {@link CubicTreeEnumerator#fitchEnumerate()}.
+ * If the states can't be packed, or the enumeration saves or resumes checkpoints (see
+ * {@link #setCheckpoint(java.io.File, long)}), the linked enumeration is used instead.
+ *
+ * @param <S> the data type used to represent each character state
+ */
+public class ArrayCubicTreeEnumerator<S> extends CubicTreeEnumerator<S> {
+
+    //The tree being built
+    private ArrayTree tree;
+    //The packed Fitch set of each node, node i's at offset i * stride
+    private long[] sets;
+    //The Fitch score of the subtree below each node
+    private int[] scores;
+    //The length of a packed set
+    private int stride;
+    //Scratch sets for rescoring a node (the second is used for the three children of the root)
+    private long[] scratch;
+    private long[] scratch2;
+
+    public ArrayCubicTreeEnumerator(List<Node<S>> labelledNodes, CharacterList<S> worldSet, int chars) {
+        super(labelledNodes, worldSet, chars);
+    }
+
+    public ArrayCubicTreeEnumerator(List<Node<S>> labelledNodes, CharacterList<S> worldSet, int chars,
+                                    List<Integer> weights) {
+        super(labelledNodes, worldSet, chars, weights);
+    }
+
+    @Override
+    public List<Node<S>> fitchEnumerate() {
+        int n = labelledNodes.size();
+        if (n < 4 || checkpointFile != null || resumeFrom != null) return super.fitchEnumerate();
+        packedFitch = PackedFitch.create(labelledNodes, chars, weights);
+        if (packedFitch == null) return super.fitchEnumerate();
+
+        // Reset the state of the algorithm by clearing trees.
+        clearTrees();
+        parsimonyScore = upperBound;
+        metrics.reset();
+        startBudget();
+        path = new InsertionPath(labelledNodes.size());
+        long start = System.nanoTime();
+        if (lowerBound != null) {
+            lowerBound.initialize(labelledNodes, chars, weights);
+        }
+
+        //n labelled nodes, the root, and an unlabelled node for each labelled node after the first 3
+        tree = new ArrayTree(2 * n - 2);
+        stride = packedFitch.packedLength();
+        sets = new long[tree.capacity() * stride];
+        scores = new int[tree.capacity()];
+        scratch = new long[stride];
+        scratch2 = new long[stride];
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(labelledNodes.get(i).packed, 0, sets, i * stride, stride);
+        }
+
+        tree.root = n;
+        for (int i = 0; i < 3; i++) {
+            tree.link(tree.root, i);
+        }
+        update(tree.root);
+        metrics.visit(3);
+        metrics.time("enumerationSetup", System.nanoTime() - start);
+
+        start = System.nanoTime();
+        path.descend(3);
+        fitchEnumerateRecursive(3);
+        metrics.time("enumeration", System.nanoTime() - start);
+
+        tree = null;
+        sets = null;
+        return trees;
+    }
+
+    //Add the labelled node at index size to every edge of the tree in turn
+    private void fitchEnumerateRecursive(int size) {
+        int n = labelledNodes.size();
+        if (size == n) {
+            int score = scores[tree.root];
+            if (parsimonyScore == -1 || score <= parsimonyScore) {
+                //Root the tree to make it bifurcating, as fitchEnumerate does
+                root = Fitch.cubicToBinary(tree.toNode(labelledNodes));
+                updateMPlist(score);
+            }
+            return;
+        }
+
+        //The nodes in the tree are the first size labelled nodes and the unlabelled nodes added with
+        //them, and every one of them except the root is the lower end of one edge
+        int internal = n + size - 2;
+        for (int child = 0; child < size; child++) {
+            addToEdge(child, internal, size);
+        }
+        for (int child = n + 1; child < internal; child++) {
+            addToEdge(child, internal, size);
+        }
+    }
+
+    //Add internal to the edge above child with the next labelled node as its other child, and recurse
+    private void addToEdge(int child, int internal, int size) {
+        if (!withinBound(scores[tree.root], size)) {
+            if (!incomplete) path.advance(size);
+            return;
+        }
+        if (outOfBudget(scores[tree.root], size)) return;
+
+        tree.insertOnEdge(child, internal, size);
+        update(internal);
+        metrics.visit(size + 1);
+        metrics.score();
+
+        path.descend(size + 1);
+        fitchEnumerateRecursive(size + 1);
+
+        int parent = tree.parent[internal];
+        tree.removeFromEdge(internal);
+        update(parent);
+        //Once out of budget, the path stays at the first edge not searched
+        if (!incomplete) path.advance(size);
+    }
+
+    //Rescore a node whose children changed, and then its ancestors until a set comes out unchanged.
+    //The node's own set is always passed on, since it may be left over from a different position.
+    private void update(int node) {
+        boolean first = true;
+        while (node != ArrayTree.NONE) {
+            int oldScore = scores[node];
+            boolean changed = refresh(node) || first;
+            int delta = scores[node] - oldScore;
+            node = tree.parent[node];
+            first = false;
+            if (!changed) {
+                //The sets above are unchanged, so just pass on the difference in score
+                for (; node != ArrayTree.NONE && delta != 0; node = tree.parent[node]) {
+                    scores[node] += delta;
+                }
+                return;
+            }
+        }
+    }
+
+    //Recompute the packed set and subtree score of an internal node, returning whether its set changed
+    private boolean refresh(int node) {
+        int a = tree.firstChild[node];
+        int b = tree.nextSibling[a];
+        int score = scores[a] + scores[b];
+        if (tree.degree[node] == 2) {
+            score += packedFitch.combine(scratch, 0, sets, a * stride, sets, b * stride);
+        } else {
+            int c = tree.nextSibling[b];
+            score += scores[c];
+            score += packedFitch.combine(scratch2, 0, sets, a * stride, sets, b * stride);
+            score += packedFitch.combine(scratch, 0, scratch2, 0, sets, c * stride);
+        }
+        scores[node] = score;
+
+        boolean changed = false;
+        for (int i = 0, offset = node * stride; i < stride; i++, offset++) {
+            if (sets[offset] != scratch[i]) {
+                sets[offset] = scratch[i];
+                changed = true;
+            }
+        }
+        return changed;
+    }
+}
@@ -0,0 +1,231 @@
+package edu.tcnj.phylotrees.simpleweight.algo;
+
+import edu.tcnj.phylotrees.simpleweight.data.CompactTreeList;
+import edu.tcnj.phylotrees.simpleweight.data.Node;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The state of a branch+bounded {@link CubicTreeEnumerator} enumeration, saved so that it can resume
+ * after the program stops.
+ * <p>
+ * A checkpoint holds the order the labelled nodes are added in, the best score found so far with its
+ * most parsimonious trees (packed as in {@link CompactTreeList}), and how far the search has got: the
+ * number of edges searched in the current partial tree of each size (see
+ * {@link edu.tcnj.phylotrees.InsertionPath}) or, for a {@link ParallelCubicTreeEnumerator}, the
+ * subproblems that are done. Resuming skips everything searched before the checkpoint, and only repeats
+ * the work done since.
+ * <p>
+ * To check that a checkpoint belongs to the same search, it also holds the number of characters, their
+ * weights and a hash of the states of every species, so that a checkpoint is not resumed once the
+ * species data has been edited.
+ *
+ * @param <S> the data type used to represent each character state
+ */
+public class Checkpoint<S> {
+
+    //Identifies a checkpoint file, and the version of its format
+    private static final int MAGIC = 0x50544332;
+
+    //The labelled nodes, in the order they are added
+    final List<Node<S>> order;
+    final int chars;
+    final int[] weights;
+    //The best score found so far, or the upper bound (or -1) if no tree has been found
+    final int score;
+    //The number of edges searched in the current partial tree of each size, from 3 up to the deepest
+    //tree being searched (the smaller ones being on the path to it), or null for a parallel search
+    final int[] path;
+    //The number of labelled nodes the parallel search was split at, and the subproblems it finished
+    final int splitSize;
+    final BitSet done;
+    //The most parsimonious trees found so far
+    final CompactTreeList<S> trees;
+
+    Checkpoint(List<Node<S>> order, int chars, int[] weights, int score, int[] path, int splitSize,
+               BitSet done, CompactTreeList<S> trees) {
+        this.order = order;
+        this.chars = chars;
+        this.weights = weights;
+        this.score = score;
+        this.path = path;
+        this.splitSize = splitSize;
+        this.done = done;
+        this.trees = trees;
+    }
+
+    /**
+     * Writes the checkpoint to a file, replacing it in one step (by writing a temporary file next to it
+     * first), so that a crash while writing leaves the last checkpoint intact.
+     *
+     * @param file the file to write
+     * @throws IOException if the file can't be written
+     */
+    public void write(File file) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(order.size());
+            for (Node<S> node : order) {
+                out.writeUTF(node.label);
+            }
+            out.writeInt(chars);
+            writeInts(out, weights);
+            out.writeLong(speciesHash(order));
+            out.writeInt(score);
+            writeInts(out, path);
+            out.writeInt(splitSize);
+            long[] doneWords = done == null ? null : done.toLongArray();
+            out.writeInt(doneWords == null ? -1 : doneWords.length);
+            if (doneWords != null) {
+                for (long word : doneWords) {
+                    out.writeLong(word);
+                }
+            }
+            trees.write(out);
+        } finally {
+            out.close();
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a checkpoint of a search of the given labelled nodes.
+     *
+     * @param file          the checkpoint file
+     * @param labelledNodes the labelled nodes of the search, in any order
+     * @param chars         the number of characters scored by the search
+     * @param weights       the weight of each character, or null if every character has weight 1
+     * @param <S>           the data type used to represent each character state
+     * @return the checkpoint, with its trees made of the given labelled nodes
+     * @throws IOException if the file can't be read, or is not a checkpoint of the same search
+     */
+    public static <S> Checkpoint<S> read(File file, List<Node<S>> labelledNodes, int chars, int[] weights)
+            throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " is not a checkpoint file.");
+            }
+            Map<String, Node<S>> byLabel = new HashMap<>();
+            for (Node<S> node : labelledNodes) {
+                byLabel.put(node.label, node);
+            }
+            int count = in.readInt();
+            if (count != labelledNodes.size()) {
+                throw new IOException("The checkpoint is of " + count + " species, not " + labelledNodes.size() + ".");
+            }
+            List<Node<S>> order = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String label = in.readUTF();
+                if (!byLabel.containsKey(label)) {
+                    throw new IOException("The checkpoint's species " + label + " is not one of the input species.");
+                }
+                order.add(byLabel.get(label));
+            }
+            if (in.readInt() != chars || !Arrays.equals(readInts(in), weights)) {
+                throw new IOException("The checkpoint's characters are not those of the input species.");
+            }
+            if (in.readLong() != speciesHash(order)) {
+                throw new IOException("The checkpoint's species data is not that of the input species.");
+            }
+            int score = in.readInt();
+            int[] path = readInts(in);
+            int splitSize = in.readInt();
+            int doneCount = in.readInt();
+            BitSet done = null;
+            if (doneCount >= 0) {
+                long[] words = new long[doneCount];
+                for (int i = 0; i < doneCount; i++) {
+                    words[i] = in.readLong();
+                }
+                done = BitSet.valueOf(words);
+            }
+            CompactTreeList<S> trees = new CompactTreeList<>(order);
+            trees.read(in);
+            return new Checkpoint<>(order, chars, weights, score, path, splitSize, done, trees);
+        } finally {
+            in.close();
+        }
+    }
+
+    //Hash the labels and character states of the species, in the order they are added (the states of each
+    //character being a set, their hashes are summed so that the order they are iterated in doesn't matter)
+    private static <S> long speciesHash(List<Node<S>> order) {
+        long hash = 1;
+        for (Node<S> node : order) {
+            hash = mix(hash * 31 + node.label.hashCode());
+            for (Set<S> states : node.root) {
+                long statesHash = 0;
+                for (S state : states) {
+                    statesHash += mix(state.hashCode());
+                }
+                hash = mix(hash * 31 + statesHash);
+            }
+        }
+        return hash;
+    }
+
+    //Spread the bits of a hash (the finalizer of SplitMix64)
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    //Write an array of ints, or null, after its length (-1 for null)
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        out.writeInt(values == null ? -1 : values.length);
+        if (values != null) {
+            for (int value : values) {
+                out.writeInt(value);
+            }
+        }
+    }
+
+    private static int[] readInts(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) return null;
+        int[] values = new int[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = in.readInt();
+        }
+        return values;
+    }
+
+    /**
+     * Gets the best score found before the checkpoint.
+     *
+     * @return the score, or -1 if the search had no bound yet
+     */
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * Gets the number of most parsimonious trees found before the checkpoint.
+     *
+     * @return the number of trees
+     */
+    public int getTreeCount() {
+        return trees.size();
+    }
+}
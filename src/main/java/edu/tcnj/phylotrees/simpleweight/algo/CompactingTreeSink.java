@@ -0,0 +1,233 @@
+package edu.tcnj.phylotrees.simpleweight.algo;
+
+import edu.tcnj.phylotrees.SearchMetrics;
+import edu.tcnj.phylotrees.simpleweight.data.CharacterList;
+import edu.tcnj.phylotrees.simpleweight.data.Node;
+import edu.tcnj.phylotrees.simpleweight.data.Topology;
+import edu.tcnj.phylotrees.simpleweight.data.TreeSink;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link TreeSink} that contracts each most parsimonious cubic tree as soon as it is found, so
+ * that only the most compact trees are ever kept.
+ * <p>
+ * Each tree is copied and contracted by its own {@link EdgeContractor} on a pool of threads, with the
+ * smallest size found so far shared between them as in {@link ParallelCompactor}. The pool's queue
+ * is bounded: once it is full, the enumeration contracts the tree itself before going on, so the
+ * number of trees waiting is limited however many are found. A tree with a better score starts over,
+ * and the results of contractions of the trees it replaces are dropped.
+ * <p>
+ * After the enumeration, {@link #finish()} waits for the last contractions and gives the most
+ * compact trees, which are the same as those of contracting the enumeration's trees with a
+ * {@link ParallelCompactor}.
+ *
+ * @param <S> the data type used to represent each character state
+ */
+public class CompactingTreeSink<S> implements TreeSink<S> {
+
+    //The number of trees that can wait to be contracted per thread
+    private static final int QUEUE_PER_THREAD = 4;
+
+    //(Used for Hartigan) the set of all possible character states
+    private final CharacterList<S> worldSet;
+    //the number of characters a species has (Node.chars, passed in to avoid overhead)
+    private final int chars;
+    //The number of threads to contract on
+    private final int parallelism;
+    //The threads the trees are contracted on (created when first needed, and shut down by finish)
+    private ThreadPoolExecutor pool;
+
+    //The best score given so far, or -1
+    private int score = -1;
+    //Counts every change of score, so that contractions of dropped trees can be recognized
+    private int generation = 0;
+    //The smallest size found by the contractions of the trees of the current score
+    private AtomicInteger sharedSize = new AtomicInteger(Integer.MAX_VALUE);
+    //The number of trees of the current score given, and the number of nodes in each
+    private long treeCount = 0;
+    private int cubicSize = 0;
+
+    //The most compact trees so far, and their topologies
+    private final List<Node<S>> mostCompact = new ArrayList<>();
+    private Set<Topology> topologies = new HashSet<>();
+    private Map<String, Integer> labelIndex;
+    private int bestSize = Integer.MAX_VALUE;
+    //The work done by every contraction, including those of dropped trees
+    private final SearchMetrics metrics = new SearchMetrics();
+
+    public CompactingTreeSink(CharacterList<S> worldSet, int chars, int parallelism) {
+        this.worldSet = worldSet;
+        this.chars = chars;
+        this.parallelism = parallelism;
+    }
+
+    @Override
+    public void accept(Node<S> tree, int score) {
+        Contraction contraction;
+        ThreadPoolExecutor pool;
+        synchronized (this) {
+            if (this.score != -1 && score > this.score) return;
+            if (score != this.score) {
+                this.score = score;
+                dropTrees();
+            }
+            treeCount++;
+            cubicSize = tree.size();
+            contraction = new Contraction(tree.clone(), generation, sharedSize);
+            if (parallelism >= 2 && this.pool == null) {
+                this.pool = new ThreadPoolExecutor(parallelism, parallelism, 0, TimeUnit.MILLISECONDS,
+                        new ArrayBlockingQueue<Runnable>(QUEUE_PER_THREAD * parallelism),
+                        new ThreadPoolExecutor.CallerRunsPolicy());
+            }
+            pool = this.pool;
+        }
+        //Outside the lock, as the contraction may run on this thread
+        if (pool == null) {
+            contraction.run();
+        } else {
+            pool.execute(contraction);
+        }
+    }
+
+    @Override
+    public synchronized void reset() {
+        score = -1;
+        dropTrees();
+    }
+
+    //Forget every tree given so far, and the results of their contractions
+    private void dropTrees() {
+        generation++;
+        sharedSize = new AtomicInteger(Integer.MAX_VALUE);
+        treeCount = 0;
+        cubicSize = 0;
+        mostCompact.clear();
+        topologies = new HashSet<>();
+        bestSize = Integer.MAX_VALUE;
+    }
+
+    /**
+     * Waits for every tree to be contracted, and gets the most compact trees of the best score.
+     *
+     * @return the most compact trees, once each
+     */
+    public List<Node<S>> finish() {
+        ThreadPoolExecutor pool;
+        synchronized (this) {
+            pool = this.pool;
+            this.pool = null;
+        }
+        if (pool != null) {
+            pool.shutdown();
+            try {
+                pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while contracting trees", e);
+            }
+        }
+        synchronized (this) {
+            return new ArrayList<>(mostCompact);
+        }
+    }
+
+    /**
+     * Gets the best parsimony score given to the sink.
+     *
+     * @return the score, or -1 if no tree has been given
+     */
+    public synchronized int getScore() {
+        return score;
+    }
+
+    /**
+     * Gets the number of (most parsimonious) trees of the best score given to the sink.
+     *
+     * @return the number of trees
+     */
+    public synchronized long getTreeCount() {
+        return treeCount;
+    }
+
+    /**
+     * Gets the size of the trees given to the sink, before contraction.
+     *
+     * @return the number of nodes in each tree, or 0 if no tree has been given
+     */
+    public synchronized int getCubicSize() {
+        return cubicSize;
+    }
+
+    /**
+     * Gets the size of the most compact trees found so far.
+     *
+     * @return the number of nodes in each of the most compact trees, or Integer.MAX_VALUE if there are none
+     */
+    public synchronized int getBestSize() {
+        return bestSize;
+    }
+
+    /**
+     * Gets the counts of the work done by the contractions so far, added together. They are only
+     * complete once {@link #finish()} has returned.
+     *
+     * @return the metrics of the contractions
+     */
+    public SearchMetrics getMetrics() {
+        return metrics;
+    }
+
+    //Keep the most compact of a contraction's trees, unless they were contracted from dropped trees
+    private synchronized void merge(Set<Node<S>> compactTrees, int generation) {
+        if (generation != this.generation) return;
+        for (Node<S> compactTree : compactTrees) {
+            int size = compactTree.size();
+            if (size < bestSize) {
+                bestSize = size;
+                mostCompact.clear();
+                topologies.clear();
+            }
+            if (labelIndex == null) {
+                labelIndex = Topology.index(compactTree);
+            }
+            //Different cubic trees can contract to the same compact tree
+            if (size == bestSize && topologies.add(new Topology(compactTree, labelIndex))) {
+                mostCompact.add(compactTree);
+            }
+        }
+    }
+
+    //The contraction of one tree
+    private class Contraction implements Runnable {
+        private final Node<S> tree;
+        private final int generation;
+        private final AtomicInteger sharedSize;
+
+        private Contraction(Node<S> tree, int generation, AtomicInteger sharedSize) {
+            this.tree = tree;
+            this.generation = generation;
+            this.sharedSize = sharedSize;
+        }
+
+        @Override
+        public void run() {
+            synchronized (CompactingTreeSink.this) {
+                //Skip trees dropped while waiting in the queue
+                if (generation != CompactingTreeSink.this.generation) return;
+            }
+            EdgeContractor<S> edgeContractor = new EdgeContractor<>(worldSet, chars);
+            edgeContractor.setSharedSize(sharedSize);
+            merge(edgeContractor.edgeContraction(tree), generation);
+            metrics.merge(edgeContractor.getMetrics());
+        }
+    }
+}
@@ -1,14 +1,49 @@
 package edu.tcnj.phylotrees.simpleweight.algo;
 
+import edu.tcnj.phylotrees.InsertionPath;
 import edu.tcnj.phylotrees.simpleweight.data.CharacterList;
+import edu.tcnj.phylotrees.simpleweight.data.CompactTreeList;
 import edu.tcnj.phylotrees.simpleweight.data.Node;
 
-import java.util.HashSet;
+import java.io.File;
+import java.io.IOException;
 import java.util.List;
-import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
 
 public class CubicTreeEnumerator<S> extends TreeEnumerator<S> {
 
+    //The bit-packed Fitch scorer used by fitchEnumerate, or null if the states can't be packed
+    protected PackedFitch<S> packedFitch;
+
+    //The bitmask Hartigan scorer used by hartiganEnumerate, or null if the states can't be packed
+    protected PackedHartigan<S> packedHartigan;
+
+    //The lower bound on the score still to be added by the remaining labelled nodes (null for none)
+    protected LowerBound<S> lowerBound = new PartitionBound<>();
+
+    //A known upper bound on the most parsimonious score to start the branch+bound with, or -1 for none
+    protected int upperBound = -1;
+
+    //The edges searched so far at each size of the current enumeration, or null before it starts
+    protected InsertionPath path;
+
+    //The file to save checkpoints of the enumerations to (null for none), and the time between them in milliseconds
+    protected File checkpointFile;
+    private long checkpointPeriod;
+    //Marks checkpoints as due, and writes them, on its own thread (while an enumeration runs, otherwise null)
+    private Timer checkpointTimer;
+    //Set when a checkpoint is due, for the search to take one after the edge it is searching
+    private volatile boolean checkpointDue;
+    //The most parsimonious trees of the current enumeration, kept for the checkpoints (even with a sink)
+    protected CompactTreeList<S> checkpointTrees;
+    //The checkpoint the next enumeration resumes from, or null
+    protected Checkpoint<S> resumeFrom;
+    //Only one checkpoint is written at a time, and none once the enumeration has stopped its timer
+    private final Object checkpointLock = new Object();
+    //The last error writing a checkpoint of the current enumeration, or null
+    private volatile IOException checkpointError;
+
     public CubicTreeEnumerator(List<Node<S>> labelledNodes, int chars) {
         this.labelledNodes = labelledNodes;
         this.chars = chars;
@@ -19,6 +54,128 @@ public class CubicTreeEnumerator<S> extends TreeEnumerator<S> {
         this.worldSet = worldSet;
     }
 
+    /**
+     * Creates an enumerator for weighted characters, such as the site patterns from
+     * {@link edu.tcnj.phylotrees.simpleweight.Parser#speciesList(List, List, List, List)}.
+     *
+     * @param labelledNodes the species to build trees of
+     * @param worldSet      all states for each character
+     * @param chars         the number of characters to score (e.g. only the informative ones)
+     * @param weights       the weight of each character
+     */
+    public CubicTreeEnumerator(List<Node<S>> labelledNodes, CharacterList<S> worldSet, int chars, List<Integer> weights) {
+        this(labelledNodes, worldSet, chars);
+        this.weights = toArray(weights);
+    }
+
+    /**
+     * Sets the lower bound used to prune partial trees in {@link #fitchEnumerate()} and
+     * {@link #hartiganEnumerate()}, on top of their own parsimony score.
+     *
+     * @param lowerBound the bound on the score still to be added, or null to only use the partial tree's score
+     */
+    public void setLowerBound(LowerBound<S> lowerBound) {
+        this.lowerBound = lowerBound;
+    }
+
+    /**
+     * Seeds the branch+bound of {@link #fitchEnumerate()} and {@link #hartiganEnumerate()} with a known
+     * upper bound on the parsimony score, such as the score of a tree from {@link StepwiseAddition}.
+     * <p>
+     * The bound is inclusive: trees that score exactly the bound are still kept, so all most parsimonious
+     * trees are found as long as some tree has a score of at most the bound.
+     *
+     * @param upperBound the score of some tree of the labelled nodes, or -1 to start without a bound
+     */
+    public void setUpperBound(int upperBound) {
+        this.upperBound = upperBound;
+    }
+
+    /**
+     * Saves checkpoints of {@link #fitchEnumerate()} and {@link #hartiganEnumerate()} to a file while
+     * they run, so that an enumeration that stops can be resumed with {@link #resume(File)}. A checkpoint
+     * is taken after the first edge searched once each period has passed: the search only copies its
+     * position and (the list of) its trees, and the file is written on another thread. Once an enumeration
+     * finishes, a last checkpoint is written of the whole search, from which resuming only restores the trees.
+     * The trees are kept (packed) for the checkpoints even when they are sent to a sink.
+     *
+     * @param checkpointFile   the file to write, replacing any earlier checkpoint; or null for no checkpoints
+     * @param checkpointPeriod the time between checkpoints, in milliseconds
+     */
+    public void setCheckpoint(File checkpointFile, long checkpointPeriod) {
+        this.checkpointFile = checkpointFile;
+        this.checkpointPeriod = checkpointPeriod;
+    }
+
+    /**
+     * Gets the last error writing a checkpoint of the current (or last) enumeration. The enumeration
+     * carries on when a checkpoint can't be written, so the file may then be older than the enumeration's
+     * position, or missing.
+     *
+     * @return the error, or null if every checkpoint so far has been written
+     */
+    public IOException getCheckpointError() {
+        return checkpointError;
+    }
+
+    /**
+     * Resumes the next {@link #fitchEnumerate()} or {@link #hartiganEnumerate()} from a checkpoint of an
+     * enumeration of the same labelled nodes and characters. The trees and score of the checkpoint are
+     * restored, the edges searched before it are skipped, and the labelled nodes are put back in the
+     * order the checkpoint was searched in (which decides what was searched before it).
+     *
+     * @param file the checkpoint file
+     * @return the checkpoint
+     * @throws IOException if the file can't be read, or is not a checkpoint of the same search
+     */
+    public Checkpoint<S> resume(File file) throws IOException {
+        Checkpoint<S> checkpoint = Checkpoint.read(file, labelledNodes, chars, weights);
+        if (checkpoint.path == null) {
+            throw new IOException("The checkpoint is of a parallel enumeration.");
+        }
+        resumeFrom = checkpoint;
+        labelledNodes = checkpoint.order;
+        return checkpoint;
+    }
+
+    /**
+     * Reorders the labelled nodes into max-min order (see {@link AdditionOrder#maxMin()}), so that
+     * the branch+bound can prune earlier. The trees found are the same, but are built (and rooted)
+     * from the new order.
+     *
+     * @return the planner used, to compare the new order with the original one
+     */
+    public AdditionOrder<S> planAdditionOrder() {
+        AdditionOrder<S> additionOrder = new AdditionOrder<>(labelledNodes, chars, weights);
+        labelledNodes = additionOrder.maxMin();
+        return additionOrder;
+    }
+
+    /**
+     * Gets the labelled nodes in the order they are added to the trees.
+     *
+     * @return the labelled nodes
+     */
+    public List<Node<S>> getLabelledNodes() {
+        return labelledNodes;
+    }
+
+    /**
+     * Gets the number of branches that were pruned in the last branch+bounded enumeration,
+     * to compare the effect of different {@link LowerBound}s.
+     *
+     * @return the number of partial trees that were not extended
+     */
+    public long getPrunedCount() {
+        return metrics.getPruned();
+    }
+
+    @Override
+    public double getCoverage() {
+        InsertionPath path = this.path;
+        return path == null ? 0 : path.coverage(3);
+    }
+
     /**
      * Generates the base topology for a tree with n leaves.
      * This method initializes a tree topology to give us a starting point for
@@ -50,7 +207,7 @@ public class CubicTreeEnumerator<S> extends TreeEnumerator<S> {
      */
     public int enumerate() {
         // Reset the state of the algorithm by clearing trees.
-        trees = new HashSet<>();
+        clearTrees();
         treeCounter = 0;
 
         //Start with the base cases
@@ -95,28 +252,50 @@ public class CubicTreeEnumerator<S> extends TreeEnumerator<S> {
     /**
      * Branch+bounded cubic tree enumeration using fitch to score the trees
      *
-     * @return a set of the root nodes of all most parsimonious trees
+     * @return a list of the root nodes of all most parsimonious trees
      */
-    public Set<Node<S>> fitchEnumerate() {
+    public List<Node<S>> fitchEnumerate() {
         // Reset the state of the algorithm by clearing trees.
-        trees = new HashSet<>();
-        parsimonyScore = -1;
+        clearTrees();
+        parsimonyScore = upperBound;
+        metrics.reset();
+        startBudget();
+        path = new InsertionPath(labelledNodes.size());
+        long start = System.nanoTime();
+        packedFitch = PackedFitch.create(labelledNodes, chars, weights);
+        if (lowerBound != null) {
+            lowerBound.initialize(labelledNodes, chars, weights);
+        }
 
+        startCheckpoints();
         initializeTree();
+        metrics.visit(Math.min(3, labelledNodes.size()));
         if (labelledNodes.size() < 4) {
-            trees.add(root.clone());
+            addTree();
         } else {
+            if (packedFitch != null) {
+                packedFitch.update(root);
+            }
+            metrics.time("enumerationSetup", System.nanoTime() - start);
+            start = System.nanoTime();
+            path.descend(3);
+            if (resumeFrom != null) {
+                path.resume(resumeFrom.path);
+            }
             fitchEnumerateRecursive(root, 3);
         }
+        resumeFrom = null;
+        stopCheckpoints();
+        metrics.time("enumeration", System.nanoTime() - start);
         return trees;
     }
 
     protected void fitchEnumerateRecursive(Node<S> current, int size) {
         if (size == labelledNodes.size()) {
-            //Root the tree to make it bifurcating (to work in Fitch) and score it
+            int score = fitchScore();
+            //Root the tree to make it bifurcating (as Fitch scores it), and add it to the list
+            //of most parsimonious trees if its score is the best
             root = Fitch.cubicToBinary(root);
-            int score = Fitch.bottomUp(root, chars);
-            //Add it to the list of most parsimonious trees if its score is the best
             updateMPlist(score);
 
             //Remove the root from the binary tree to make it cubic
@@ -127,45 +306,207 @@ public class CubicTreeEnumerator<S> extends TreeEnumerator<S> {
                 fitchEnumerateRecursive(current.children.get(0), size);
             }
 
-            //Root the tree, get its current parsimony score, and unroot it
-            root = Fitch.cubicToBinary(root);
-            int thisScore = Fitch.bottomUp(root, chars);
-            root = Fitch.binaryToCubic(root);
+            int thisScore = fitchScore();
 
             //Same as enumerateRecursive but bounded: only continue if there is no best parsimony
-            //score or if this tree is at least as good as the most parsimonious
-            if (current != root && (thisScore <= parsimonyScore || parsimonyScore == -1)) {
+            //score or if this tree (and the least the remaining nodes will add) is at least as good
+            //as the most parsimonious
+            if (current != root && !path.skip(size) && withinBound(thisScore, size)
+                    && !outOfBudget(thisScore, size)) {
                 Node<S> internal = new Node<>("");
                 Node<S> leaf = labelledNodes.get(size).clone();
                 Node<S> parent = current.parent;
 
                 addNodeToEdge(current, parent, internal, leaf);
+                metrics.visit(size + 1);
+                if (packedFitch != null) {
+                    //Only the path from the new node up to the root needs rescoring
+                    packedFitch.update(internal);
+                }
 
+                path.descend(size + 1);
                 fitchEnumerateRecursive(root, size + 1);
 
                 removeNodeFromEdge(current, parent, internal, leaf);
+                if (packedFitch != null) {
+                    packedFitch.update(parent);
+                }
+            } else if (current != root) {
+                skipEdge(current);
+            }
+            //Once out of budget, the path stays at the first edge not searched
+            if (current != root && !incomplete) {
+                path.advance(size);
+                if (checkpointDue) {
+                    checkpoint();
+                }
+            }
+        }
+    }
+
+    //Start keeping the trees for checkpoints and marking them as due, and restore the trees and score of
+    //the checkpoint being resumed (the search skips what it searched itself)
+    protected void startCheckpoints() {
+        checkpointTrees = checkpointFile == null ? null : new CompactTreeList<>(labelledNodes);
+        checkpointError = null;
+        if (resumeFrom != null && resumeFrom.score != -1
+                && (parsimonyScore == -1 || resumeFrom.score <= parsimonyScore)) {
+            parsimonyScore = resumeFrom.score;
+            for (Node<S> tree : resumeFrom.trees) {
+                root = tree;
+                addTree();
+            }
+        }
+        if (checkpointFile != null) {
+            final Timer timer = new Timer("checkpoint", true);
+            synchronized (checkpointLock) {
+                checkpointTimer = timer;
             }
+            timer.schedule(new TimerTask() {
+                @Override
+                public void run() {
+                    checkpointDue(timer);
+                }
+            }, checkpointPeriod, checkpointPeriod);
         }
     }
 
+    //Called on the timer's thread when a checkpoint is due
+    protected void checkpointDue(Timer timer) {
+        checkpointDue = true;
+    }
+
+    //Take a checkpoint after the edge just searched, and write it on the timer's thread
+    private void checkpoint() {
+        checkpointDue = false;
+        final Checkpoint<S> checkpoint = new Checkpoint<>(labelledNodes, chars, weights, parsimonyScore,
+                path.toArray(), 0, null, checkpointTrees.copy());
+        final Timer timer = checkpointTimer;
+        timer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                writeCheckpoint(checkpoint, timer);
+            }
+        }, 0);
+    }
+
+    //Stop the checkpoints once the enumeration is done, and write one of the whole search
+    protected void stopCheckpoints() {
+        synchronized (checkpointLock) {
+            if (checkpointTimer == null) return;
+            checkpointTimer.cancel();
+            checkpointTimer = null;
+            checkpointDue = false;
+            writeCheckpoint(finalCheckpoint());
+        }
+    }
+
+    //The checkpoint of the whole search, once the enumeration is done
+    protected Checkpoint<S> finalCheckpoint() {
+        return new Checkpoint<>(labelledNodes, chars, weights, parsimonyScore, path.toArray(), 0, null,
+                checkpointTrees);
+    }
+
+    //Write a checkpoint taken while the given timer ran, unless the enumeration has stopped it since
+    //(and written its last checkpoint)
+    protected void writeCheckpoint(Checkpoint<S> checkpoint, Timer timer) {
+        synchronized (checkpointLock) {
+            if (timer == checkpointTimer) {
+                writeCheckpoint(checkpoint);
+            }
+        }
+    }
+
+    private void writeCheckpoint(Checkpoint<S> checkpoint) {
+        try {
+            checkpoint.write(checkpointFile);
+        } catch (IOException e) {
+            //The search carries on, and the caller can find out with getCheckpointError()
+            checkpointError = e;
+        }
+    }
+
+    //Keep the tree for the checkpoints too
+    @Override
+    protected void addTree() {
+        super.addTree();
+        if (checkpointTrees != null) {
+            checkpointTrees.accept(root, parsimonyScore);
+        }
+    }
+
+    //Check whether a partial tree with the given score and number of labelled nodes can still become
+    //a most parsimonious tree, counting it as pruned if not
+    protected boolean withinBound(int score, int size) {
+        if (parsimonyScore == -1) return true;
+        if (bound(score, size) <= parsimonyScore) return true;
+        metrics.prune();
+        return false;
+    }
+
+    //The partial tree's score and the least the remaining nodes will add
+    @Override
+    protected int bound(int score, int size) {
+        if (lowerBound != null) {
+            score += lowerBound.bound(size, score);
+        }
+        return score;
+    }
+
+    //Get the parsimony score of the current (cubic) tree. The bit-packed sets are kept up to date
+    //as nodes are added and removed, so only the fallback needs to root the tree and score all of it.
+    protected int fitchScore() {
+        metrics.score();
+        if (packedFitch != null) {
+            return root.packedScore;
+        }
+        root = Fitch.cubicToBinary(root);
+        int score = Fitch.bottomUp(root, chars, weights);
+        root = Fitch.binaryToCubic(root);
+        return score;
+    }
+
     /**
      * Branch+bounded cubic tree enumeration using hartigan to score the trees
      *
-     * @return a set of the root nodes of all most parsimonious trees
+     * @return a list of the root nodes of all most parsimonious trees
      */
-    public Set<Node<S>> hartiganEnumerate() {
+    public List<Node<S>> hartiganEnumerate() {
         // Reset the state of the algorithm by clearing trees.
-        trees = new HashSet<>();
-        parsimonyScore = -1;
+        clearTrees();
+        parsimonyScore = upperBound;
+        if (worldSet == null || worldSet.isEmpty()) return trees;
 
-        if (worldSet.isEmpty() || worldSet == null) return trees;
+        metrics.reset();
+        startBudget();
+        path = new InsertionPath(labelledNodes.size());
+        long start = System.nanoTime();
+
+        packedHartigan = PackedHartigan.create(worldSet, chars, weights);
+        if (packedHartigan != null) {
+            packedHartigan.label(labelledNodes);
+        }
+        if (lowerBound != null) {
+            lowerBound.initialize(labelledNodes, chars, weights);
+        }
 
+        startCheckpoints();
         initializeTree();
+        metrics.visit(Math.min(3, labelledNodes.size()));
         if (labelledNodes.size() < 4) {
-            trees.add(root.clone());
+            addTree();
         } else {
+            metrics.time("enumerationSetup", System.nanoTime() - start);
+            start = System.nanoTime();
+            path.descend(3);
+            if (resumeFrom != null) {
+                path.resume(resumeFrom.path);
+            }
             hartiganEnumerateRecursive(root, 3);
         }
+        resumeFrom = null;
+        stopCheckpoints();
+        metrics.time("enumeration", System.nanoTime() - start);
         return trees;
     }
 
@@ -174,7 +515,7 @@ public class CubicTreeEnumerator<S> extends TreeEnumerator<S> {
         if (size == labelledNodes.size()) {
             //If the tree contains all labelled nodes, score it with hartigans
             //and update the list of most parsimonious trees.
-            int score = Hartigan.bottomUp(root, worldSet, chars);
+            int score = hartiganScore();
             updateMPlist(score);
         } else {
             for (int i = 0; i < current.children.size(); i++) {
@@ -182,17 +523,42 @@ public class CubicTreeEnumerator<S> extends TreeEnumerator<S> {
             }
             //Same as enumerateRecursive, but use Hartigan to score the tree and stop when the tree
             //cannot be a most parsimonious tree. Same as Fitch, but no need to root the tree first
-            if (current != root && (Hartigan.bottomUp(root, worldSet, chars) <= parsimonyScore || parsimonyScore == -1)) {
+            boolean extend = false;
+            if (current != root && !path.skip(size)) {
+                int thisScore = hartiganScore();
+                extend = withinBound(thisScore, size) && !outOfBudget(thisScore, size);
+            }
+            if (extend) {
                 Node<S> internal = new Node<>("");
                 Node<S> leaf = labelledNodes.get(size).clone();
                 Node<S> parent = current.parent;
 
                 addNodeToEdge(current, parent, internal, leaf);
+                metrics.visit(size + 1);
 
+                path.descend(size + 1);
                 hartiganEnumerateRecursive(root, size + 1);
 
                 removeNodeFromEdge(current, parent, internal, leaf);
+            } else if (current != root) {
+                skipEdge(current);
+            }
+            //Once out of budget, the path stays at the first edge not searched
+            if (current != root && !incomplete) {
+                path.advance(size);
+                if (checkpointDue) {
+                    checkpoint();
+                }
             }
         }
     }
+
+    //Get the parsimony score of the current tree with Hartigan's bottom up
+    protected int hartiganScore() {
+        metrics.score();
+        if (packedHartigan != null) {
+            return packedHartigan.bottomUp(root);
+        }
+        return Hartigan.bottomUp(root, worldSet, chars, weights);
+    }
 }
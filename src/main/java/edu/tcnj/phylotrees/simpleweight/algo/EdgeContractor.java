@@ -1,32 +1,130 @@
 package edu.tcnj.phylotrees.simpleweight.algo;
 
+import edu.tcnj.phylotrees.SearchBudget;
+import edu.tcnj.phylotrees.SearchMetrics;
 import edu.tcnj.phylotrees.simpleweight.data.CharacterList;
 import edu.tcnj.phylotrees.simpleweight.data.Node;
+import edu.tcnj.phylotrees.simpleweight.data.Topology;
 
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A class to contract a given tree to its smallest possible size
  * by removing any edges with a minimum cost of 0, and trying all
  * orderings of edge removal to get the smallest possible tree
  * with the same parsimony score as the parent.
+ * <p>
+ * Contracting a set of edges gives the same tree whatever order they are contracted in, so each
+ * state of the search is keyed by the set of edges contracted so far, and a state reached again
+ * through a different order is skipped instead of being searched again. A tree with k zero-cost edges
+ * can reach up to 2^k states, so only the first {@value #MAX_SEEN} of a contraction are remembered;
+ * the rest may be searched more than once, which repeats work but finds the same trees.
  * @param <S> the data type used to represent each character state
  */
 public class EdgeContractor<S> {
+    //The most contraction states remembered by one contraction, to bound its memory
+    private static final int MAX_SEEN = 1 << 16;
+
     //The smallest size of a tree seen yet
     private int bestSize = Integer.MAX_VALUE;
     //The latest tree to be seen of the smallest size
     private Set<Node<S>> bestTree;
+    //The unrooted topologies of the trees in bestTree, so that each distinct tree is only kept once
+    private Set<Topology> bestTopologies;
+    //The index of each labelled node of the tree being contracted, by its label
+    private Map<String, Integer> labelIndex;
     //(Used for Hartigan) the set of all possible character states
     private CharacterList<S> worldSet = new CharacterList<>();
     //the number of characters a species has (Node.chars, passed in to avoid overhead)
     private int chars = 0;
+    //The bitmask Hartigan, or null to use the set based one if some character has too many states
+    private PackedHartigan<S> packedHartigan;
+    //The index of each edge of the original tree, by its child node (which stays the same through contractions)
+    private Map<Node<S>, Integer> edgeIndex;
+    //The edges contracted so far, by index
+    private BitSet contracted;
+    //The sets of contracted edges that have already been searched (up to MAX_SEEN of them)
+    private Set<BitSet> seen;
+    //The smallest size found by any contractor sharing it (such as the workers of a ParallelCompactor), or null
+    private AtomicInteger sharedSize;
+    //The work done by the last contraction
+    private final SearchMetrics metrics = new SearchMetrics();
+    //The budget the contractions stop at, or null to search every order
+    private SearchBudget budget;
+    //Whether the last contraction ran out of budget, and the least size of the trees it did not search
+    private boolean incomplete;
+    private int unsearchedBound;
+    //The states searched since the last batch spent from the budget
+    private int unspent;
 
     public EdgeContractor(CharacterList<S> worldSet, int chars) {
         this.worldSet = worldSet;
         this.chars = chars;
+        this.packedHartigan = PackedHartigan.create(worldSet, chars, null);
+    }
+
+    /**
+     * Shares the smallest tree size with other contractors, so that a tree which cannot contract to the
+     * size another contractor has already found is dropped as soon as its bound shows it. The
+     * contractions of a tree then only include trees of the smallest size shared so far, and may be empty.
+     *
+     * @param sharedSize the smallest size found by any contractor (start it at Integer.MAX_VALUE), or null
+     */
+    public void setSharedSize(AtomicInteger sharedSize) {
+        this.sharedSize = sharedSize;
+    }
+
+    /**
+     * Gets the counts of the work done by the last {@link #edgeContraction}: the contraction states
+     * searched and skipped as repeats, the trees scored, the states cut off by the size bound, and the
+     * time spent scoring the original tree and contracting it.
+     *
+     * @return the metrics of the last contraction
+     */
+    public SearchMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Limits the time and number of states of each contraction. Once the budget runs out, a contraction
+     * stops and returns the most compact trees found so far, and {@link #isComplete()} tells that the
+     * orders it did not search might have contracted further. The budget is started again by every
+     * contraction.
+     *
+     * @param budget the budget, or null to search every order
+     */
+    public void setBudget(SearchBudget budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Checks whether the last {@link #edgeContraction} searched every order of contractions, rather than
+     * running out of budget, so that the trees it found are certain to be the most compact.
+     *
+     * @return true if the contraction was complete
+     */
+    public boolean isComplete() {
+        return !incomplete;
+    }
+
+    /**
+     * Gets how much smaller than the trees found by the last {@link #edgeContraction} the trees it did not
+     * search could be: the gap between the smallest size found and the bound on the size of the states it
+     * stopped at (their size less their zero-cost edges).
+     *
+     * @return the gap in nodes (0 if the contraction was complete), or -1 if it stopped before finding any tree
+     */
+    public int getSizeGap() {
+        if (!incomplete) return 0;
+        if (bestTree.isEmpty()) return -1;
+        return Math.max(0, bestSize - unsearchedBound);
     }
 
     /**
@@ -36,52 +134,155 @@ public class EdgeContractor<S> {
      * @return the root of the compacted tree
      */
     public Set<Node<S>> edgeContraction(Node<S> root) {
-        bestSize = Integer.MAX_VALUE;
+        metrics.reset();
+        incomplete = false;
+        unsearchedBound = Integer.MAX_VALUE;
+        unspent = 0;
+        if (budget != null) {
+            budget.start();
+        }
+        long start = System.nanoTime();
+        bestSize = sharedSize == null ? Integer.MAX_VALUE : sharedSize.get();
         bestTree = new HashSet<>();
-        Hartigan.bottomUp(root, worldSet, chars);
+        bestTopologies = new HashSet<>();
+        labelIndex = Topology.index(root);
+        edgeIndex = new HashMap<>();
+        index(root);
+        contracted = new BitSet(edgeIndex.size());
+        seen = new HashSet<>();
+        if (packedHartigan != null) {
+            packedHartigan.label(root);
+            packedHartigan.bottomUp(root);
+        } else {
+            Hartigan.bottomUp(root, worldSet, chars);
+        }
+        metrics.score();
+        metrics.time("contractionScoring", System.nanoTime() - start);
+        start = System.nanoTime();
         edgeContractionRecursive(root);
+        metrics.time("contraction", System.nanoTime() - start);
+        edgeIndex = null;
+        seen = null;
+        bestTopologies = null;
         return bestTree;
     }
 
+    //Number every edge below a node by its child node
+    private void index(Node<S> node) {
+        for (Node<S> child : node.children) {
+            edgeIndex.put(child, edgeIndex.size());
+            index(child);
+        }
+    }
+
     private void edgeContractionRecursive(Node<S> root) {
-        //get list of zero-cost edges while also calculating the nodes' root sets
-        List<List<Node<S>>> edgeList = Hartigan.topDown(root, chars);
+        metrics.contractionState();
+        //get list of zero-cost edges (by their child node) while also calculating the nodes' root sets
+        List<Node<S>> edgeList = new ArrayList<>();
+        if (packedHartigan != null) {
+            packedHartigan.topDown(root, edgeList);
+        } else {
+            for (List<Node<S>> edge : Hartigan.topDown(root, chars)) {
+                edgeList.add(edge.get(1));
+            }
+        }
+        takeSharedSize();
+        //stop if the budget has run out, unless the tree is already fully contracted
+        if (edgeList.size() > 0 && outOfBudget(root.size() - edgeList.size())) return;
         //bound the method: if the tree can never become the most compact, break out of recursion
         if (root.size() - edgeList.size() > bestSize) {
+            metrics.prune();
             return;
         }
-//        if (edgeList.size() + 1 > oldSize) {
-//            System.out.println("Made more 0-cost edges than we had before.");
-//        }
         //if there are no 0 cost edges, edge contraction is done
         if (edgeList.size() == 0) {
             int treeSize = root.size();
             //If the tree size is at least as compact as the best seen so far, set it as bestSize and bestTree
             if (treeSize == bestSize) {
-                bestTree.add(root.clone());
+                addBestTree(root);
             } else if (treeSize < bestSize) {
                 bestTree.clear();
-                bestTree.add(root.clone());
+                bestTopologies.clear();
+                addBestTree(root);
                 bestSize = treeSize;
+                offerSharedSize();
             }
         } else {
             //else, for every edge in list, contract edge and then recurse
-            for (List<Node<S>> edge : edgeList) {
-                contractEdge(edge);
+            for (Node<S> child : edgeList) {
+                int index = edgeIndex.get(child);
+                contracted.set(index);
+                //Skip the edge if the same edges have already been contracted in another order
+                if (firstVisit()) {
+                    Node<S> parent = child.parent;
+                    contractEdge(parent, child);
 
-                edgeContractionRecursive(root);
+                    edgeContractionRecursive(root);
 
-                //undo the contraction to try a different order
-                uncontractEdge(edge);
+                    //undo the contraction to try a different order
+                    uncontractEdge(parent, child);
+                } else {
+                    metrics.contractionRepeat();
+                }
+                contracted.clear(index);
             }
         }
     }
 
 
-    private void contractEdge(List<Node<S>> edge) {
+    //Check whether the current set of contracted edges has not been searched yet, remembering it if there
+    //is still room
+    private boolean firstVisit() {
+        if (seen.contains(contracted)) return false;
+        if (seen.size() < MAX_SEEN) {
+            seen.add((BitSet) contracted.clone());
+        }
+        return true;
+    }
+
+    //Add a copy of a compact tree to the best trees, unless the same unrooted tree is already there
+    //(contracting either edge at a bifurcating root gives the same tree)
+    private void addBestTree(Node<S> root) {
+        if (bestTopologies.add(new Topology(root, labelIndex))) {
+            bestTree.add(root.clone());
+        }
+    }
+
+    //Lower the best size to the shared one if another contractor found a smaller tree, dropping the
+    //trees that can no longer be most compact
+    private void takeSharedSize() {
+        if (sharedSize != null && sharedSize.get() < bestSize) {
+            bestSize = sharedSize.get();
+            bestTree.clear();
+            bestTopologies.clear();
+        }
+    }
+
+    //Publish the best size if it is the smallest one so far
+    private void offerSharedSize() {
+        if (sharedSize == null) return;
+        int best;
+        do {
+            best = sharedSize.get();
+        } while (bestSize < best && !sharedSize.compareAndSet(best, bestSize));
+    }
+
+    //Count a state against the budget before contracting its edges, returning whether the budget has run
+    //out. Once it has, the contraction is incomplete, and keeps the bound on the size of the states it skips.
+    private boolean outOfBudget(int bound) {
+        if (budget == null) return false;
+        if (++unspent >= budget.getBatch()) {
+            budget.spend(unspent);
+            unspent = 0;
+        }
+        if (!budget.isExhausted()) return false;
+        incomplete = true;
+        unsearchedBound = Math.min(unsearchedBound, bound);
+        return true;
+    }
+
+    private void contractEdge(Node<S> parent, Node<S> child) {
         //Given an edge (parent, child), contract the edge between them
-        Node<S> parent = edge.get(0);
-        Node<S> child = edge.get(1);
         //Forward the child's children to the parent
         for (Node<S> childsChild : child.children) {
             Node.linkNodes(parent, childsChild);
@@ -95,13 +296,20 @@ public class EdgeContractor<S> {
             parent.upper = child.upper;
             parent.root = child.root;
             parent.lower = child.lower;
+            if (packedHartigan != null) {
+                //The masks are overwritten in place, so copy them rather than sharing the child's
+                parent.labelMask = child.labelMask;
+                System.arraycopy(child.upperMask, 0, parent.upperMask, 0, chars);
+                System.arraycopy(child.lowerMask, 0, parent.lowerMask, 0, chars);
+                System.arraycopy(child.rootMask, 0, parent.rootMask, 0, chars);
+            }
         }
         //The VU and VL sets of the newly contracted node and all of its ancestors need to be recalculated.
         //All other VU and VL sets in the tree will be unchanged.
         while (parent != null) {
             if (!parent.labelled) {
                 //Use hartigan to get the new VU and VL sets
-                Hartigan.hartigan(parent, worldSet, chars);
+                hartigan(parent);
             } //If the parent is labelled, normally fastHartigans would be done. However, since
             // the full bottomUp method has already been done (by edgeContraction(...)), this is unnecessary.
 
@@ -110,10 +318,8 @@ public class EdgeContractor<S> {
         }
     }
 
-    private void uncontractEdge(List<Node<S>> edge) {
+    private void uncontractEdge(Node<S> parent, Node<S> child) {
         //Undo an edge contraction to try the possible edge contractions in a different order
-        Node<S> parent = edge.get(0);
-        Node<S> child = edge.get(1);
         for (Node<S> childsChild : child.children) {
             //remove all the added children of parent
             Node.unlinkNodes(parent, childsChild);
@@ -133,9 +339,18 @@ public class EdgeContractor<S> {
         //As with contractEdge, the VU and VL sets of the node and its ancestors must be recalculated.
         while (parent != null) {
             if (!parent.labelled) {
-                Hartigan.hartigan(parent, worldSet, chars);
+                hartigan(parent);
             }
             parent = parent.parent;
         }
     }
+
+    //Recalculate the upper and lower sets of an unlabelled node from its children's
+    private void hartigan(Node<S> node) {
+        if (packedHartigan != null) {
+            packedHartigan.hartigan(node);
+        } else {
+            Hartigan.hartigan(node, worldSet, chars);
+        }
+    }
 }
@@ -11,7 +11,7 @@ import java.util.Set;
 public class Fitch {
 
     // internal method to calculate score from a node's children to itself
-    private static <S> int fitch(Node<S> current, int chars) {
+    private static <S> int fitch(Node<S> current, int chars, int[] weights) {
         // if we are a leaf node, our current root set is already
         // correct, and the score is 0
         if (current.children.isEmpty()) return 0;
@@ -51,7 +51,7 @@ public class Fitch {
             }
             if (union) {
                 // this character had a change, so increase the score
-                score += 1;
+                score += weights == null ? 1 : weights[i];
                 // and set our root set to the union of all children's root sets
                 for (CharacterList<S> childRoot : childRoots) {
                     currentStatesForChar.addAll(childRoot.get(i));
@@ -75,11 +75,26 @@ public class Fitch {
      * @return the parsimony score of the tree
      */
     public static <S> int bottomUp(Node<S> root, int chars) {
+        return bottomUp(root, chars, null);
+    }
+
+    /**
+     * Performs Fitch's bottom up algorithm to score a tree with weighted characters.
+     * <p>
+     * The same as {@link #bottomUp(Node, int)}, except that a change in character {@code i}
+     * adds {@code weights[i]} to the score instead of 1.
+     *
+     * @param root    the (sub)tree root node to score using Fitch's parsimony algorithm
+     * @param chars   the number of characters a species has (Node.chars, passed in to avoid overhead)
+     * @param weights the weight of each character, or null if every character has weight 1
+     * @return the parsimony score of the tree
+     */
+    public static <S> int bottomUp(Node<S> root, int chars, int[] weights) {
         int score = 0;
 
         // recursive down the to bottom of the tree first
         for (Node<S> child : root.children) {
-            score += bottomUp(child, chars);
+            score += bottomUp(child, chars, weights);
         }
 
         if (root.children.size() > 2) {
@@ -87,7 +102,7 @@ public class Fitch {
                     + (new Parser()).toString(root));
         }
 
-        score += fitch(root, chars);
+        score += fitch(root, chars, weights);
 
         return score;
     }
@@ -16,6 +16,11 @@ public class Hartigan {
     //Performs the calculation of upper and lower sets as well as MP-score.
     // Used in bottom-up of Hartigan's algorithm.
     public static <S> int hartigan(Node<S> current, CharacterList<S> worldSet, int chars) {
+        return hartigan(current, worldSet, chars, null);
+    }
+
+    //As above, but with the weight of each character (null if every character has weight 1)
+    public static <S> int hartigan(Node<S> current, CharacterList<S> worldSet, int chars, int[] weights) {
         int score = 0; //initialize maximum parsimony score of node
 
         current.upper = Node.sets(chars);
@@ -66,13 +71,13 @@ public class Hartigan {
             }
             //Update parsimony score: K children have this state, so
             //((# total children) - K) children each add +1 to this node's parsimony score
-            score += current.children.size() - kOccurrences[index];
+            score += (current.children.size() - kOccurrences[index]) * (weights == null ? 1 : weights[index]);
         }
         return score;
     }
 
     //Special case of hartigan's: initialize upper and lower sets of labelled nodes
-    private static <S> int fastHartigan(Node<S> current, int chars) {
+    private static <S> int fastHartigan(Node<S> current, int chars, int[] weights) {
         int score = 0; //initialize maximum parsimony score of node
         current.upper = Node.sets(chars);
         current.lower = Node.sets(chars); //create upper and lower sets for each char of node
@@ -87,7 +92,7 @@ public class Hartigan {
             for (Node<S> child : current.children) {
                 //For every child whose upper set doesn't contain this node's value, the score goes up by one
                 if (!child.upper.get(index).contains(label)) {
-                    score += 1;
+                    score += weights == null ? 1 : weights[index];
                 }
             }
         }
@@ -104,20 +109,34 @@ public class Hartigan {
      * @return the parsimony score of this subtree
      */
     public static <S> int bottomUp(Node<S> current, CharacterList<S> worldSet, int chars) {
+        return bottomUp(current, worldSet, chars, null);
+    }
+
+    /**
+     * Performs bottom up of Hartigan's algorithm with weighted characters, where a change in
+     * character {@code i} adds {@code weights[i]} to the score instead of 1.
+     *
+     * @param current  the current node being used in the recursive call
+     * @param worldSet this contains all possible character states
+     * @param chars the number of characters a species has (Node.chars, passed in to avoid overhead)
+     * @param weights the weight of each character, or null if every character has weight 1
+     * @return the parsimony score of this subtree
+     */
+    public static <S> int bottomUp(Node<S> current, CharacterList<S> worldSet, int chars, int[] weights) {
         int score = 0;
 
         //Calculate the score of this node's children (bottom-up recursion)
         for (Node<S> child : current.children) {
-            score += bottomUp(child, worldSet, chars);
+            score += bottomUp(child, worldSet, chars, weights);
         }
 
         //If a node is not a leaf, use hartigan's to calculate its score and upper/lower set
         if (current.children.size() >= 1) {
             //Special case: if the node is labelled, calculate the score using fastHartigan
             if (current.labelled) {
-                score += fastHartigan(current, chars);
+                score += fastHartigan(current, chars, weights);
             } else {
-                score += hartigan(current, worldSet, chars);
+                score += hartigan(current, worldSet, chars, weights);
             }
         } else {
             //Assumes a leaf is labelled, so sets its upper set to be its root set and make an empty lower set
@@ -0,0 +1,35 @@
+package edu.tcnj.phylotrees.simpleweight.algo;
+
+import edu.tcnj.phylotrees.simpleweight.data.Node;
+
+import java.util.List;
+
+/**
+ * A lower bound on the parsimony score that is still to be added to a partial tree
+ * during branch+bound enumeration, by the labelled nodes that have not been added yet.
+ * <p>
+ * The bound must be admissible: it may never be more than the score any completion of
+ * the partial tree really adds, otherwise most parsimonious trees would be pruned.
+ *
+ * @param <S> the data type used to represent each character state
+ */
+public interface LowerBound<S> {
+
+    /**
+     * Prepares the bound for an enumeration, which adds the labelled nodes in the given order.
+     *
+     * @param labelledNodes the labelled nodes, in the order they are added to the tree
+     * @param chars         the number of characters a species has (Node.chars, passed in to avoid overhead)
+     * @param weights       the weight of each character, or null if every character has weight 1
+     */
+    void initialize(List<Node<S>> labelledNodes, int chars, int[] weights);
+
+    /**
+     * Gets a lower bound on the score added by the labelled nodes that are not yet in the tree.
+     *
+     * @param size  the number of labelled nodes in the partial tree (the first {@code size} of the list)
+     * @param score the parsimony score of the partial tree
+     * @return the least amount the score can increase by before the tree is complete
+     */
+    int bound(int size, int score);
+}
@@ -0,0 +1,52 @@
+package edu.tcnj.phylotrees.simpleweight.algo;
+
+import edu.tcnj.phylotrees.simpleweight.data.Node;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The per-character minimum change bound.
+ * <p>
+ * A labelled node whose state for a character is not in the tree yet (and was not brought in by
+ * another node added before it) must add at least one change for that character, wherever it
+ * is added. The bound is the sum of these new states over all characters, times their weights.
+ *
+ * @param <S> the data type used to represent each character state
+ */
+public class MinimumChangeBound<S> implements LowerBound<S> {
+
+    //The bound for each number of labelled nodes in the tree
+    protected int[] remaining;
+
+    @Override
+    public void initialize(List<Node<S>> labelledNodes, int chars, int[] weights) {
+        int n = labelledNodes.size();
+        remaining = new int[n + 1];
+        for (int i = 0; i < chars; i++) {
+            int weight = weights == null ? 1 : weights[i];
+            for (int size = 0; size < n; size++) {
+                //Start with the states already in the tree
+                Set<S> states = new HashSet<>();
+                for (int j = 0; j < size; j++) {
+                    states.addAll(labelledNodes.get(j).root.get(i));
+                }
+                //Any node that has none of the states seen so far adds a change
+                for (int j = size; j < n; j++) {
+                    Set<S> nodeStates = labelledNodes.get(j).root.get(i);
+                    if (j > 0 && Collections.disjoint(states, nodeStates)) {
+                        remaining[size] += weight;
+                    }
+                    states.addAll(nodeStates);
+                }
+            }
+        }
+    }
+
+    @Override
+    public int bound(int size, int score) {
+        return remaining[size];
+    }
+}
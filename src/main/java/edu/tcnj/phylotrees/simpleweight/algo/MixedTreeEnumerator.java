@@ -4,7 +4,6 @@ import edu.tcnj.phylotrees.simpleweight.data.CharacterList;
 import edu.tcnj.phylotrees.simpleweight.data.Node;
 
 import java.util.List;
-import java.util.Set;
 
 public class MixedTreeEnumerator<S> extends TreeEnumerator<S> {
 
@@ -15,6 +14,12 @@ public class MixedTreeEnumerator<S> extends TreeEnumerator<S> {
         this.chars = chars;
     }
 
+    //Create an enumerator for weighted characters (see CubicTreeEnumerator)
+    public MixedTreeEnumerator(List<Node<S>> labelledNodes, CharacterList<S> worldSet, int chars, List<Integer> weights) {
+        this(labelledNodes, worldSet, chars);
+        this.weights = toArray(weights);
+    }
+
     /**
      * Generates the base topology for a tree with n leaves.
      * This method initializes a tree topology to give us a starting point for
@@ -68,29 +73,44 @@ public class MixedTreeEnumerator<S> extends TreeEnumerator<S> {
     /**
      * Branch+bounded enumeration of all mixed trees, scored using hartigan
      *
-     * @return a set of root nodes of all most parsimonious trees
+     * @return a list of root nodes of all most parsimonious trees
      */
-    public Set<Node<S>> hartiganEnumerate() {
+    public List<Node<S>> hartiganEnumerate() {
         parsimonyScore = -1;
+        clearTrees();
+        metrics.reset();
+        startBudget();
+        long start = System.nanoTime();
         initializeTree();
         if (labelledNodes.size() <= 2) {
-            trees.add(root.clone());
+            metrics.visit(labelledNodes.size());
+            addTree();
         } else {
             hartiganEnumerateRecursive(root, 2);
         }
+        metrics.time("enumeration", System.nanoTime() - start);
         return trees;
     }
 
     protected void hartiganEnumerateRecursive(Node<S> current, int size) {
+        metrics.visit(size);
+        metrics.score();
         //Same as enumerateRecursive, but bounded using hartigan to score the trees in-progress
         if (size == labelledNodes.size()) {
-            int score = Hartigan.bottomUp(root, worldSet, chars);
+            int score = Hartigan.bottomUp(root, worldSet, chars, weights);
+            if (outOfBudget(score, size)) return;
             updateMPlist(score);
-        } else if (Hartigan.bottomUp(root, worldSet, chars) <= parsimonyScore || parsimonyScore == -1) {
-            case1(current, size, true);
-            case2(current, size, true);
-            case3(current, size, true);
-            case4(current, size, true);
+        } else {
+            int score = Hartigan.bottomUp(root, worldSet, chars, weights);
+            if (outOfBudget(score, size)) return;
+            if (score <= parsimonyScore || parsimonyScore == -1) {
+                case1(current, size, true);
+                case2(current, size, true);
+                case3(current, size, true);
+                case4(current, size, true);
+            } else {
+                metrics.prune();
+            }
         }
     }
 
@@ -0,0 +1,348 @@
+package edu.tcnj.phylotrees.simpleweight.algo;
+
+import edu.tcnj.phylotrees.simpleweight.Parser;
+import edu.tcnj.phylotrees.simpleweight.data.CharacterList;
+import edu.tcnj.phylotrees.simpleweight.data.Node;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A bit-packed implementation of Fitch's bottom up algorithm.
+ * <p>
+ * Every state of a character is given a dense index, and the state sets of a node are
+ * stored "bit-sliced" in {@link Node#packed}: slice {@code s} is a run of {@code long}
+ * words in which bit {@code i} is set if state {@code s} is in the set of character {@code i}.
+ * The intersection, union and change count of 64 characters then take a handful of
+ * AND/OR/popcount operations, instead of a {@code HashSet} operation per character.
+ * <p>
+ * The scores computed are identical to {@link Fitch#bottomUp(Node, int)}, which remains the
+ * fallback when the character states cannot be packed (see {@link #create(List, int)}).
+ * Since every node caches its set and subtree score, a tree can also be rescored incrementally
+ * with {@link #update(Node)} after a local change, such as adding a leaf to an edge.
+ * <p>
+ * An instance keeps scratch space for {@link #update(Node)}, so it should not be shared between threads.
+ *
+ * @param <S> the data type used to represent each character state
+ */
+public class PackedFitch<S> {
+
+    /**
+     * The largest number of states any one character may have to be packed. Each state costs
+     * one pass over the packed words, so past this point the plain set based version is as fast.
+     */
+    public static final int MAX_STATES = 64;
+
+    //For each character, the dense index of each state
+    private final List<Map<S, Integer>> stateIndex;
+    //the number of characters a species has
+    private final int chars;
+    //the number of bit slices (the largest number of states of any character)
+    private final int states;
+    //the number of longs per slice
+    private final int words;
+    //the valid bits of the last word of each slice
+    private final long lastWordMask;
+    //the weights of the characters, split into bit planes: bit i of the word w of plane p
+    //(weightPlanes[p * words + w]) is bit p of the weight of character 64 * w + i
+    private final long[] weightPlanes;
+    //scratch sets used by update, so that the sets of unchanged nodes can be kept
+    private long[] scratch;
+    private long[] scratch2;
+
+    //Share the (read only) state indices and weights of another scorer, with new scratch space
+    private PackedFitch(PackedFitch<S> other) {
+        this.stateIndex = other.stateIndex;
+        this.chars = other.chars;
+        this.states = other.states;
+        this.words = other.words;
+        this.lastWordMask = other.lastWordMask;
+        this.weightPlanes = other.weightPlanes;
+    }
+
+    private PackedFitch(List<Map<S, Integer>> stateIndex, int chars, int states, int[] weights) {
+        this.stateIndex = stateIndex;
+        this.chars = chars;
+        this.states = states;
+        this.words = (chars + 63) >>> 6;
+        this.lastWordMask = (chars & 63) == 0 ? -1L : (1L << (chars & 63)) - 1;
+
+        int maxWeight = 1;
+        if (weights != null) {
+            for (int i = 0; i < chars; i++) {
+                maxWeight = Math.max(maxWeight, weights[i]);
+            }
+        }
+        int planes = 32 - Integer.numberOfLeadingZeros(maxWeight);
+        this.weightPlanes = new long[planes * words];
+        for (int i = 0; i < chars; i++) {
+            int weight = weights == null ? 1 : weights[i];
+            for (int p = 0; p < planes; p++) {
+                if ((weight & (1 << p)) != 0) {
+                    weightPlanes[p * words + (i >>> 6)] |= 1L << (i & 63);
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds a packed Fitch scorer for the states used by the given species, and packs
+     * the root sets of the species into their {@link Node#packed} sets.
+     *
+     * @param species the labelled nodes that will be the leaves of the scored trees
+     * @param chars   the number of characters a species has (Node.chars, passed in to avoid overhead)
+     * @return the packed scorer, or null if the states can't be packed and {@link Fitch} should be used
+     */
+    public static <S> PackedFitch<S> create(List<Node<S>> species, int chars) {
+        return create(species, chars, null);
+    }
+
+    /**
+     * Builds a packed Fitch scorer for weighted characters, as in {@link Fitch#bottomUp(Node, int, int[])}.
+     *
+     * @param species the labelled nodes that will be the leaves of the scored trees
+     * @param chars   the number of characters a species has (Node.chars, passed in to avoid overhead)
+     * @param weights the weight of each character, or null if every character has weight 1
+     * @return the packed scorer, or null if the states can't be packed and {@link Fitch} should be used
+     * @see #create(List, int)
+     */
+    public static <S> PackedFitch<S> create(List<Node<S>> species, int chars, int[] weights) {
+        List<Map<S, Integer>> stateIndex = new ArrayList<>(chars);
+        int states = 1;
+        for (int i = 0; i < chars; i++) {
+            Map<S, Integer> index = new HashMap<>();
+            for (Node<S> specy : species) {
+                if (specy.root == null) return null;
+                for (S state : specy.root.get(i)) {
+                    if (!index.containsKey(state)) {
+                        index.put(state, index.size());
+                    }
+                }
+            }
+            if (index.size() > MAX_STATES) return null;
+            states = Math.max(states, index.size());
+            stateIndex.add(index);
+        }
+        PackedFitch<S> packedFitch = new PackedFitch<>(stateIndex, chars, states, weights);
+        for (Node<S> specy : species) {
+            specy.packed = packedFitch.pack(specy.root);
+        }
+        return packedFitch;
+    }
+
+    /**
+     * Creates a scorer for the same states and weights as this one, with its own scratch space,
+     * so that another thread can score trees built from the same species.
+     *
+     * @return a copy of this scorer
+     */
+    public PackedFitch<S> copy() {
+        return new PackedFitch<>(this);
+    }
+
+    /**
+     * Gets the number of {@code long}s in a packed set.
+     *
+     * @return the length of the arrays returned by {@link #pack(CharacterList)}
+     */
+    public int packedLength() {
+        return states * words;
+    }
+
+    /**
+     * Packs a list of state sets into the bit-sliced form used by this class.
+     *
+     * @param sets the state set of each character
+     * @return the packed sets
+     */
+    public long[] pack(CharacterList<S> sets) {
+        long[] packed = new long[states * words];
+        for (int i = 0; i < chars; i++) {
+            for (S state : sets.get(i)) {
+                int s = stateIndex.get(i).get(state);
+                packed[s * words + (i >>> 6)] |= 1L << (i & 63);
+            }
+        }
+        return packed;
+    }
+
+    /**
+     * Performs Fitch's bottom up algorithm on packed sets to score a tree.
+     * <p>
+     * The leaves of the tree must have packed sets (as set by {@link #create(List, int)} on the
+     * species they were cloned from). Internal nodes are given their own packed sets, which are
+     * reused on later calls. The subtree score of every node is cached in {@link Node#packedScore}.
+     *
+     * @param root the (sub)tree root node to score
+     * @return the parsimony score of the tree
+     * @see Fitch#bottomUp(Node, int)
+     */
+    public int bottomUp(Node<S> root) {
+        int score = 0;
+
+        for (Node<S> child : root.children) {
+            score += bottomUp(child);
+        }
+
+        if (root.children.size() > 2) {
+            throw new IllegalArgumentException("Can only perform Fitch on cubic tree - got node of degree > 3: "
+                    + (new Parser()).toString(root));
+        }
+
+        score += fitch(root);
+        root.packedScore = score;
+
+        return score;
+    }
+
+    /**
+     * Recomputes the packed set and subtree score of every internal node of a (possibly cubic) tree,
+     * such as a copy of a tree whose unlabelled nodes don't have packed sets of their own yet.
+     *
+     * @param root the root of the tree to score
+     * @return the parsimony score of the tree
+     */
+    public int rescore(Node<S> root) {
+        if (!root.children.isEmpty()) {
+            for (Node<S> child : root.children) {
+                rescore(child);
+            }
+            refresh(root);
+        }
+        return root.packedScore;
+    }
+
+    /**
+     * Incrementally rescores a tree after the children of a node have changed.
+     * <p>
+     * Recomputes the packed set and subtree score of {@code node} and then of each of its
+     * ancestors, using the cached sets and scores of all other nodes. Once an ancestor's set comes
+     * out unchanged, the sets above it can't change either, so only the score difference is passed
+     * on to the remaining ancestors. A root with three children (an unrooted cubic tree) is scored
+     * as if it had been made binary by {@link Fitch#cubicToBinary(Node)}.
+     * <p>
+     * Undoing a change and calling this again on the same node restores the previous cached state.
+     *
+     * @param node the node whose children changed
+     */
+    public void update(Node<S> node) {
+        while (node != null) {
+            int oldScore = node.packedScore;
+            boolean changed = refresh(node);
+            int delta = node.packedScore - oldScore;
+            node = node.parent;
+            if (!changed) {
+                // the sets above are unchanged, so just pass on the difference in score
+                for (; node != null && delta != 0; node = node.parent) {
+                    node.packedScore += delta;
+                }
+                return;
+            }
+        }
+    }
+
+    // recompute the packed set and subtree score of a node, returning whether its set changed
+    private boolean refresh(Node<S> current) {
+        if (scratch == null) {
+            scratch = new long[states * words];
+            scratch2 = new long[states * words];
+        }
+        List<Node<S>> children = current.children;
+        int score = 0;
+        for (Node<S> child : children) {
+            score += child.packedScore;
+        }
+        if (children.size() == 1) {
+            System.arraycopy(children.get(0).packed, 0, scratch, 0, scratch.length);
+        } else if (children.size() == 2) {
+            score += combine(scratch, children.get(0).packed, children.get(1).packed);
+        } else if (children.size() == 3) {
+            score += combine(scratch2, children.get(0).packed, children.get(1).packed);
+            score += combine(scratch, scratch2, children.get(2).packed);
+        } else {
+            throw new IllegalArgumentException("Can only perform Fitch on cubic tree - got node of degree > 3: "
+                    + (new Parser()).toString(current));
+        }
+        current.packedScore = score;
+
+        if (current.packed == null) {
+            current.packed = scratch;
+            scratch = new long[states * words];
+            return true;
+        } else if (Arrays.equals(current.packed, scratch)) {
+            return false;
+        }
+        // swap the new set in, keeping the old array as scratch space
+        long[] old = current.packed;
+        current.packed = scratch;
+        scratch = old;
+        return true;
+    }
+
+    // calculate the packed set of a node from its children's, and return the number of changes
+    private int fitch(Node<S> current) {
+        // leaves already hold their packed set, and score 0
+        if (current.children.isEmpty()) return 0;
+
+        if (current.packed == null) {
+            current.packed = new long[states * words];
+        }
+        int score;
+        if (current.children.size() == 1) {
+            System.arraycopy(current.children.get(0).packed, 0, current.packed, 0, current.packed.length);
+            score = 0;
+        } else {
+            score = combine(current.packed, current.children.get(0).packed, current.children.get(1).packed);
+        }
+        return score;
+    }
+
+    // Fitch's step for two children: intersect their sets, or take the union for characters where the
+    // intersection is empty. Writes the result into dest (which must not be a or b) and returns the total
+    // weight of the characters that needed a change
+    private int combine(long[] dest, long[] a, long[] b) {
+        return combine(dest, 0, a, 0, b, 0);
+    }
+
+    /**
+     * Fitch's step for two children, on packed sets stored at an offset in larger arrays (such as
+     * the per-node sets of an {@link edu.tcnj.phylotrees.simpleweight.data.ArrayTree}).
+     *
+     * @param dest       the array to write the parent's set to, which must not overlap either child's set
+     * @param destOffset the offset of the parent's set in dest
+     * @param a          the array holding the first child's set
+     * @param aOffset    the offset of the first child's set in a
+     * @param b          the array holding the second child's set
+     * @param bOffset    the offset of the second child's set in b
+     * @return the total weight of the characters that needed a change
+     */
+    public int combine(long[] dest, int destOffset, long[] a, int aOffset, long[] b, int bOffset) {
+        int length = states * words;
+        int changes = 0;
+        for (int w = 0; w < words; w++) {
+            // intersect the sets of every state, remembering which characters are non-empty
+            long nonEmpty = 0;
+            for (int s = w; s < length; s += words) {
+                long intersection = a[aOffset + s] & b[bOffset + s];
+                dest[destOffset + s] = intersection;
+                nonEmpty |= intersection;
+            }
+
+            // characters with an empty intersection take the union instead
+            long changed = ~nonEmpty & (w == words - 1 ? lastWordMask : -1L);
+            if (changed != 0) {
+                for (int s = w; s < length; s += words) {
+                    dest[destOffset + s] |= (a[aOffset + s] | b[bOffset + s]) & changed;
+                }
+                // add up the weights of the changed characters one bit plane at a time
+                for (int p = w, shift = 0; p < weightPlanes.length; p += words, shift++) {
+                    changes += Long.bitCount(changed & weightPlanes[p]) << shift;
+                }
+            }
+        }
+        return changes;
+    }
+}
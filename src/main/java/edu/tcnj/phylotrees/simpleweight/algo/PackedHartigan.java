@@ -0,0 +1,285 @@
+package edu.tcnj.phylotrees.simpleweight.algo;
+
+import edu.tcnj.phylotrees.simpleweight.data.CharacterList;
+import edu.tcnj.phylotrees.simpleweight.data.Node;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An implementation of Hartigan's bottom up and top down algorithms on bitmasks.
+ * <p>
+ * Every state of a character is given a dense index (its bit), so each of the upper, lower and root
+ * sets of a node is one {@code long} per character, kept in {@link Node#upperMask}, {@link Node#lowerMask}
+ * and {@link Node#rootMask}. Labelled nodes take their states from {@link Node#labelMask}. The masks of
+ * a node are allocated the first time it is scored and then overwritten in place, and the state counts
+ * are kept in a scratch array, so scoring and finding zero-cost edges don't allocate.
+ * <p>
+ * The results are identical to {@link Hartigan}, which remains the fallback when a character has more
+ * than {@link #MAX_STATES} states (see {@link #create(CharacterList, int, int[])}).
+ * <p>
+ * An instance keeps scratch space, so it should not be shared between threads.
+ *
+ * @param <S> the data type used to represent each character state
+ */
+public class PackedHartigan<S> {
+
+    /**
+     * The largest number of states any one character may have, so that a set fits in a {@code long}.
+     */
+    public static final int MAX_STATES = 64;
+
+    //For each character, the dense index of each state
+    private final List<Map<S, Integer>> stateIndex;
+    //For each character, the mask of all of its states (the world set)
+    private final long[] worldMask;
+    //the number of characters a species has (Node.chars, passed in to avoid overhead)
+    private final int chars;
+    //The weight of each character, or null if every character has weight 1
+    private final int[] weights;
+    //scratch space to count how many children have each state
+    private int[] counts = new int[MAX_STATES];
+
+    private PackedHartigan(List<Map<S, Integer>> stateIndex, long[] worldMask, int chars, int[] weights) {
+        this.stateIndex = stateIndex;
+        this.worldMask = worldMask;
+        this.chars = chars;
+        this.weights = weights;
+    }
+
+    /**
+     * Builds a Hartigan scorer for the given states.
+     *
+     * @param worldSet all states for each character
+     * @param chars    the number of characters a species has (Node.chars, passed in to avoid overhead)
+     * @param weights  the weight of each character, or null if every character has weight 1
+     * @return the scorer, or null if some character has too many states and {@link Hartigan} should be used
+     */
+    public static <S> PackedHartigan<S> create(CharacterList<S> worldSet, int chars, int[] weights) {
+        if (worldSet == null || worldSet.size() < chars) return null;
+        List<Map<S, Integer>> stateIndex = new ArrayList<>(chars);
+        long[] worldMask = new long[chars];
+        for (int i = 0; i < chars; i++) {
+            if (worldSet.get(i).size() > MAX_STATES) return null;
+            Map<S, Integer> index = new HashMap<>();
+            for (S state : worldSet.get(i)) {
+                index.put(state, index.size());
+            }
+            worldMask[i] = index.size() == MAX_STATES ? -1L : (1L << index.size()) - 1;
+            stateIndex.add(index);
+        }
+        return new PackedHartigan<>(stateIndex, worldMask, chars, weights);
+    }
+
+    /**
+     * Creates a scorer for the same states and weights as this one, with its own scratch space,
+     * so that another thread can score trees built from the same species.
+     *
+     * @return a copy of this scorer
+     */
+    public PackedHartigan<S> copy() {
+        return new PackedHartigan<>(stateIndex, worldMask, chars, weights);
+    }
+
+    /**
+     * Packs the root sets of the given nodes into their {@link Node#labelMask}, which clones of them share.
+     *
+     * @param labelledNodes the labelled nodes (such as species) to pack
+     */
+    public void label(List<Node<S>> labelledNodes) {
+        for (Node<S> node : labelledNodes) {
+            node.labelMask = pack(node.root);
+        }
+    }
+
+    /**
+     * Packs the root sets of every labelled node of a tree into its {@link Node#labelMask}.
+     *
+     * @param root the root of the tree
+     */
+    public void label(Node<S> root) {
+        if (root.labelled) {
+            root.labelMask = pack(root.root);
+        }
+        for (Node<S> child : root.children) {
+            label(child);
+        }
+    }
+
+    /**
+     * Packs a list of state sets into one bitmask per character.
+     *
+     * @param sets the state set of each character
+     * @return the packed sets
+     */
+    public long[] pack(CharacterList<S> sets) {
+        long[] packed = new long[chars];
+        for (int i = 0; i < chars; i++) {
+            for (S state : sets.get(i)) {
+                packed[i] |= 1L << stateIndex.get(i).get(state);
+            }
+        }
+        return packed;
+    }
+
+    /**
+     * Performs bottom up of Hartigan's algorithm, setting the upper and lower masks of every node.
+     * Labelled nodes must have their {@link Node#labelMask} set (see {@link #label(Node)}).
+     *
+     * @param current the root of the (sub)tree to score
+     * @return the parsimony score of this subtree
+     * @see Hartigan#bottomUp(Node, CharacterList, int, int[])
+     */
+    public int bottomUp(Node<S> current) {
+        int score = 0;
+
+        //Calculate the score of this node's children (bottom-up recursion)
+        for (Node<S> child : current.children) {
+            score += bottomUp(child);
+        }
+
+        allocate(current);
+        if (current.children.size() >= 1) {
+            //Special case: if the node is labelled, calculate the score using fastHartigan
+            if (current.labelled) {
+                score += fastHartigan(current);
+            } else {
+                score += hartigan(current);
+            }
+        } else {
+            //Assumes a leaf is labelled, so its upper set is its label and its lower set is empty
+            System.arraycopy(current.labelMask, 0, current.upperMask, 0, chars);
+            Arrays.fill(current.lowerMask, 0L);
+        }
+
+        return score;
+    }
+
+    /**
+     * Calculates the upper and lower masks of an unlabelled node from those of its children.
+     *
+     * @param current the node to calculate the sets of
+     * @return the number of changes between the node and its children
+     * @see Hartigan#hartigan(Node, CharacterList, int, int[])
+     */
+    public int hartigan(Node<S> current) {
+        allocate(current);
+        List<Node<S>> children = current.children;
+        int score = 0;
+        for (int i = 0; i < chars; i++) {
+            int k;
+            long upper, lower;
+            if (children.size() == 2) {
+                //Two children: states in both are counted twice, states in one of them once
+                long a = children.get(0).upperMask[i];
+                long b = children.get(1).upperMask[i];
+                if ((a & b) != 0) {
+                    k = 2;
+                    upper = a & b;
+                    lower = a ^ b;
+                } else {
+                    k = 1;
+                    upper = a | b;
+                    lower = worldMask[i] & ~upper;
+                }
+            } else {
+                //Count how many children have each state in their upper set, and find the most common (K)
+                k = -1;
+                for (Node<S> child : children) {
+                    for (long m = child.upperMask[i]; m != 0; m &= m - 1) {
+                        int count = ++counts[Long.numberOfTrailingZeros(m)];
+                        if (count > k) k = count;
+                    }
+                }
+                //States that occur K times make up the upper set, K-1 times the lower set
+                upper = 0;
+                lower = 0;
+                for (long m = worldMask[i]; m != 0; m &= m - 1) {
+                    int state = Long.numberOfTrailingZeros(m);
+                    if (counts[state] == k) {
+                        upper |= 1L << state;
+                    } else if (counts[state] == k - 1) {
+                        lower |= 1L << state;
+                    }
+                    counts[state] = 0;
+                }
+            }
+            current.upperMask[i] = upper;
+            current.lowerMask[i] = lower;
+            //K children have this state, so the other children each add a change
+            score += (children.size() - k) * (weights == null ? 1 : weights[i]);
+        }
+        return score;
+    }
+
+    //Special case of hartigan's: the upper set of a labelled node is its label
+    private int fastHartigan(Node<S> current) {
+        int score = 0;
+        for (int i = 0; i < chars; i++) {
+            long label = current.labelMask[i];
+            current.upperMask[i] = label;
+            current.lowerMask[i] = 0;
+
+            //For every child whose upper set doesn't contain this node's value, the score goes up
+            for (Node<S> child : current.children) {
+                if ((child.upperMask[i] & label) == 0) {
+                    score += weights == null ? 1 : weights[i];
+                }
+            }
+        }
+        return score;
+    }
+
+    /**
+     * Performs top-down of Hartigan's algorithm, setting the root masks of every node and finding
+     * the zero-cost edges.
+     *
+     * @param current the root of the (sub)tree, whose upper and lower masks are set by {@link #bottomUp(Node)}
+     * @param edges   a list to add the child node of each zero-cost edge to (its parent being the other end)
+     * @see Hartigan#topDown(Node, int)
+     */
+    public void topDown(Node<S> current, List<Node<S>> edges) {
+        if (current.parent == null) {
+            System.arraycopy(current.upperMask, 0, current.rootMask, 0, chars);
+        }
+        for (Node<S> child : current.children) {
+            boolean zeroCost = true;
+            for (int i = 0; i < chars; i++) {
+                long parentRoot = current.rootMask[i];
+                long upper = child.upperMask[i];
+                long root;
+                if ((upper & parentRoot) == parentRoot) {
+                    //If current's root set is a subset of child's upper set, the child's root set is the same
+                    root = parentRoot;
+                } else {
+                    //Otherwise it is (upper set) union (intersection of current's root and child's lower)
+                    root = upper | (child.lowerMask[i] & parentRoot);
+                }
+                child.rootMask[i] = root;
+                //The character needs a change if the two root sets have nothing in common
+                if ((root & parentRoot) == 0) {
+                    zeroCost = false;
+                }
+            }
+
+            //A 0-cost edge between two labelled nodes should never happen (see Hartigan.topDown)
+            if (zeroCost && !(current.labelled && child.labelled)) {
+                edges.add(child);
+            }
+
+            topDown(child, edges);
+        }
+    }
+
+    //Give a node its own masks, the first time it is scored
+    private void allocate(Node<S> node) {
+        if (node.upperMask == null || node.upperMask.length != chars) {
+            node.upperMask = new long[chars];
+            node.lowerMask = new long[chars];
+            node.rootMask = new long[chars];
+        }
+    }
+}
@@ -0,0 +1,456 @@
+package edu.tcnj.phylotrees.simpleweight.algo;
+
+import edu.tcnj.phylotrees.InsertionPath;
+import edu.tcnj.phylotrees.simpleweight.data.CharacterList;
+import edu.tcnj.phylotrees.simpleweight.data.CompactTreeList;
+import edu.tcnj.phylotrees.simpleweight.data.Node;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Timer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link CubicTreeEnumerator} that runs its branch+bounded enumerations on several threads.
+ * <p>
+ * The search is split at a fixed number of labelled nodes (the split size): every partial tree
+ * with that many labelled nodes is an independent subproblem, which is enumerated by a worker with
+ * its own copy of the tree on a work-stealing {@link ForkJoinPool}. The best parsimony score found
+ * so far is shared between the workers, so each of them prunes with the global bound.
+ * <p>
+ * The most parsimonious trees found are the same as those of the single-threaded enumerator. If a
+ * {@link edu.tcnj.phylotrees.simpleweight.data.TreeSink} is set, every worker sends its trees straight
+ * to it, so trees of a score that another worker has already beaten may still reach the sink (which
+ * drops them once it sees the better score).
+ * <p>
+ * Checkpoints of a parallel enumeration record which subproblems are done, rather than a position in the
+ * search, so resuming one repeats the subproblems that were running when it was taken.
+ *
+ * @param <S> the data type used to represent each character state
+ */
+public class ParallelCubicTreeEnumerator<S> extends CubicTreeEnumerator<S> {
+
+    //The number of partial trees to aim for per thread when choosing the split size, so that
+    //threads that get quickly pruned subproblems can steal more work
+    private static final int SUBPROBLEMS_PER_THREAD = 16;
+
+    //The number of threads to enumerate on
+    private final int parallelism;
+
+    //The number of labelled nodes in the partial trees the search is split at (0 to choose from the parallelism)
+    private int splitSize = 0;
+
+    //The best parsimony score found by any worker in the current enumeration (or the upper bound it started from)
+    private AtomicInteger sharedScore;
+
+    //The subproblems of the current enumeration while they run, to follow their progress (null otherwise)
+    private volatile List<Subproblem> running;
+    //The coverage of the last parallel enumeration once it finished, or -1 (for a single-threaded one)
+    private double finishedCoverage = -1;
+
+    //The subproblems of the current enumeration that are done (or were done before the checkpoint it resumed)
+    private BitSet done;
+
+    public ParallelCubicTreeEnumerator(List<Node<S>> labelledNodes, CharacterList<S> worldSet, int chars,
+                                       int parallelism) {
+        super(labelledNodes, worldSet, chars);
+        this.parallelism = parallelism;
+    }
+
+    public ParallelCubicTreeEnumerator(List<Node<S>> labelledNodes, CharacterList<S> worldSet, int chars,
+                                       List<Integer> weights, int parallelism) {
+        super(labelledNodes, worldSet, chars, weights);
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Sets the number of labelled nodes in the partial trees that are handed out to the workers.
+     * A partial tree with {@code n} labelled nodes has {@code 2n - 3} edges, so every extra node
+     * multiplies the number of subproblems by about {@code 2n}.
+     *
+     * @param splitSize the split size (at least 4), or 0 to choose one from the number of threads
+     */
+    public void setSplitSize(int splitSize) {
+        this.splitSize = splitSize;
+    }
+
+    //A checkpoint of a parallel enumeration is resumed at the split size it was taken at, and one of a
+    //single-threaded enumeration (with too few labelled nodes to split) by the single-threaded search
+    @Override
+    public Checkpoint<S> resume(File file) throws IOException {
+        Checkpoint<S> checkpoint = Checkpoint.read(file, labelledNodes, chars, weights);
+        if (checkpoint.done != null) {
+            splitSize = checkpoint.splitSize;
+        }
+        resumeFrom = checkpoint;
+        labelledNodes = checkpoint.order;
+        return checkpoint;
+    }
+
+    //Whether to leave the enumeration to the single-threaded search
+    private boolean serial(int split) {
+        return parallelism < 2 || split >= labelledNodes.size() || (resumeFrom != null && resumeFrom.path != null);
+    }
+
+    //The split size to use: the given one, or the first with enough partial trees for every thread
+    private int splitSize() {
+        if (splitSize > 0) return Math.max(splitSize, 4);
+        int size = 4;
+        long subproblems = 3;
+        while (subproblems < (long) SUBPROBLEMS_PER_THREAD * parallelism) {
+            subproblems *= 2 * size - 3;
+            size++;
+        }
+        return size;
+    }
+
+    @Override
+    public List<Node<S>> fitchEnumerate() {
+        int split = splitSize();
+        finishedCoverage = -1;
+        if (serial(split)) return super.fitchEnumerate();
+
+        clearTrees();
+        parsimonyScore = upperBound;
+        metrics.reset();
+        startBudget();
+        path = new InsertionPath(labelledNodes.size());
+        long start = System.nanoTime();
+        packedFitch = PackedFitch.create(labelledNodes, chars, weights);
+        if (lowerBound != null) {
+            lowerBound.initialize(labelledNodes, chars, weights);
+        }
+        metrics.time("enumerationSetup", System.nanoTime() - start);
+        startCheckpoints();
+        return enumerateInParallel(split, true);
+    }
+
+    @Override
+    public List<Node<S>> hartiganEnumerate() {
+        int split = splitSize();
+        finishedCoverage = -1;
+        if (serial(split)) return super.hartiganEnumerate();
+
+        clearTrees();
+        parsimonyScore = upperBound;
+        if (worldSet == null || worldSet.isEmpty()) return trees;
+
+        metrics.reset();
+        startBudget();
+        path = new InsertionPath(labelledNodes.size());
+        long start = System.nanoTime();
+
+        packedHartigan = PackedHartigan.create(worldSet, chars, weights);
+        if (packedHartigan != null) {
+            packedHartigan.label(labelledNodes);
+        }
+        if (lowerBound != null) {
+            lowerBound.initialize(labelledNodes, chars, weights);
+        }
+        metrics.time("enumerationSetup", System.nanoTime() - start);
+        startCheckpoints();
+        return enumerateInParallel(split, false);
+    }
+
+    //Build all partial trees of the split size and enumerate each of them on the pool, then merge the
+    //most parsimonious trees of the workers that found the best score. Each worker counts into its own
+    //metrics, which are added to the enumerator's at the end. The subproblems done before the checkpoint
+    //being resumed are skipped, as their trees have been restored.
+    private List<Node<S>> enumerateInParallel(int split, boolean fitch) {
+        long start = System.nanoTime();
+        initializeTree();
+        metrics.visit(3);
+        final List<Subproblem> subproblems = new ArrayList<>();
+        path.descend(3);
+        splitRecursive(root, 3, split, subproblems, fitch);
+        done = resumeFrom == null ? new BitSet(subproblems.size()) : (BitSet) resumeFrom.done.clone();
+        resumeFrom = null;
+        running = subproblems;
+
+        int startScore = parsimonyScore;
+        sharedScore = new AtomicInteger(parsimonyScore);
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new RecursiveAction() {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected void compute() {
+                    invokeAll(subproblems);
+                }
+            });
+        } finally {
+            pool.shutdown();
+        }
+
+        parsimonyScore = sharedScore.get();
+        stopCheckpoints();
+        //Less than all of it if the budget ran out
+        finishedCoverage = coverage(subproblems);
+        running = null;
+        if (parsimonyScore != startScore) {
+            //The workers beat the trees restored from the checkpoint
+            trees.clear();
+            bestCount = 0;
+        }
+        for (Subproblem subproblem : subproblems) {
+            metrics.merge(subproblem.worker.metrics);
+            if (subproblem.worker.parsimonyScore == parsimonyScore) {
+                bestCount += subproblem.worker.bestCount;
+            }
+            if (subproblem.worker.incomplete) {
+                incomplete = true;
+                unsearchedBound = Math.min(unsearchedBound, subproblem.worker.unsearchedBound);
+            }
+            //With a sink, the workers have already sent it their trees
+            if (treeSink == null && subproblem.worker.parsimonyScore == parsimonyScore) {
+                trees.addAll(subproblem.worker.trees);
+            }
+        }
+        metrics.time("enumeration", System.nanoTime() - start);
+        return trees;
+    }
+
+    //While the workers run, their own counts and paths show the progress: every subproblem is an equal
+    //share of the search space, as the split enumerates every partial tree of the split size
+    @Override
+    public long getTreesVisited() {
+        List<Subproblem> running = this.running;
+        long visited = metrics.getVisited();
+        if (running != null) {
+            for (Subproblem subproblem : running) {
+                visited += subproblem.worker.getTreesVisited();
+            }
+        }
+        return visited;
+    }
+
+    @Override
+    public double getBestScore() {
+        if (running == null) return super.getBestScore();
+        return getBestCount() > 0 ? sharedScore.get() : Double.NaN;
+    }
+
+    @Override
+    public long getBestCount() {
+        List<Subproblem> running = this.running;
+        if (running == null) return super.getBestCount();
+        int best = sharedScore.get();
+        long count = 0;
+        for (Subproblem subproblem : running) {
+            if (subproblem.worker.parsimonyScore == best) {
+                count += subproblem.worker.bestCount;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public double getCoverage() {
+        List<Subproblem> running = this.running;
+        if (running != null) return coverage(running);
+        return finishedCoverage >= 0 ? finishedCoverage : super.getCoverage();
+    }
+
+    private double coverage(List<Subproblem> subproblems) {
+        if (subproblems.isEmpty()) return 1;
+        double covered = 0;
+        for (Subproblem subproblem : subproblems) {
+            covered += subproblem.resumed ? 1 : subproblem.worker.getCoverage(subproblem.size);
+        }
+        return covered / subproblems.size();
+    }
+
+    //While the workers run, checkpoints are taken on the timer's thread: the subproblems done so far, with
+    //their trees. The trees of the subproblems still running are left out, as those are searched again on resuming
+    @Override
+    protected void checkpointDue(Timer timer) {
+        if (running == null) {
+            super.checkpointDue(timer);
+        } else {
+            writeCheckpoint(finalCheckpoint(), timer);
+        }
+    }
+
+    @Override
+    protected Checkpoint<S> finalCheckpoint() {
+        if (running == null) return super.finalCheckpoint();
+        BitSet done;
+        CompactTreeList<S> trees;
+        synchronized (this.done) {
+            done = (BitSet) this.done.clone();
+            trees = checkpointTrees.copy();
+        }
+        //A worker may have published a better score than the trees copied, which it then finds again
+        int score = sharedScore.get();
+        if (trees.getScore() != -1 && (score == -1 || trees.getScore() < score)) {
+            score = trees.getScore();
+        } else if (trees.getScore() != score) {
+            trees.clear();
+        }
+        return new Checkpoint<>(labelledNodes, chars, weights, score, null, splitSize(), done, trees);
+    }
+
+    //Same as enumerateRecursive, but stop at the split size and save a copy of each partial tree
+    private void splitRecursive(Node<S> current, int size, int split, List<Subproblem> subproblems, boolean fitch) {
+        if (size == split) {
+            subproblems.add(new Subproblem(subproblems.size(), root.clone(), split, fitch));
+        } else {
+            for (int i = 0; i < current.children.size(); i++) {
+                splitRecursive(current.children.get(0), size, split, subproblems, fitch);
+            }
+            if (current != root) {
+                Node<S> internal = new Node<>("");
+                Node<S> leaf = labelledNodes.get(size).clone();
+                Node<S> parent = current.parent;
+
+                addNodeToEdge(current, parent, internal, leaf);
+                metrics.visit(size + 1);
+
+                path.descend(size + 1);
+                splitRecursive(root, size + 1, split, subproblems, fitch);
+
+                removeNodeFromEdge(current, parent, internal, leaf);
+                path.advance(size);
+            }
+        }
+    }
+
+    //The enumeration of all trees that extend one partial tree, run as a task on the pool
+    private class Subproblem extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        //The position of the subproblem in the split, which identifies it in checkpoints
+        private final int index;
+        private final Worker worker;
+        private final int size;
+        private final boolean fitch;
+        //Whether the subproblem was skipped, as it was done before the checkpoint being resumed
+        private boolean resumed;
+
+        private Subproblem(int index, Node<S> tree, int size, boolean fitch) {
+            this.index = index;
+            this.worker = new Worker(tree);
+            this.size = size;
+            this.fitch = fitch;
+        }
+
+        @Override
+        protected void compute() {
+            synchronized (done) {
+                resumed = done.get(index);
+            }
+            if (resumed) return;
+            if (checkpointTrees != null) {
+                worker.checkpointTrees = new CompactTreeList<>(labelledNodes);
+            }
+            if (fitch) {
+                worker.fitchEnumerateFrom(size);
+            } else {
+                worker.hartiganEnumerateFrom(size);
+            }
+            //A worker that ran out of budget leaves its subproblem to be searched again on resuming, so only
+            //the trees of a subproblem that is done go into the checkpoints, along with its bit
+            if (!worker.incomplete) {
+                synchronized (done) {
+                    done.set(index);
+                    if (worker.checkpointTrees != null) {
+                        int score = worker.checkpointTrees.getScore();
+                        for (Node<S> tree : worker.checkpointTrees) {
+                            checkpointTrees.accept(tree, score);
+                        }
+                    }
+                }
+            }
+            worker.checkpointTrees = null;
+        }
+    }
+
+    //An enumerator for a single subproblem, on its own copy of the tree. It keeps its own list of most
+    //parsimonious trees, but prunes with (and publishes to) the score shared by all workers.
+    private class Worker extends CubicTreeEnumerator<S> {
+
+        private Worker(Node<S> tree) {
+            super(ParallelCubicTreeEnumerator.this.labelledNodes, ParallelCubicTreeEnumerator.this.worldSet,
+                    ParallelCubicTreeEnumerator.this.chars);
+            this.weights = ParallelCubicTreeEnumerator.this.weights;
+            //The bound is only read once initialized, so it can be shared
+            this.lowerBound = ParallelCubicTreeEnumerator.this.lowerBound;
+            //The sink is thread-safe, so it can be shared too
+            this.treeSink = ParallelCubicTreeEnumerator.this.treeSink;
+            //As is the budget. The trees kept for checkpoints are the worker's own, until its subproblem is done
+            this.budget = ParallelCubicTreeEnumerator.this.budget;
+            this.root = tree;
+        }
+
+        //Only clear this worker's own trees, as the shared sink was reset when the enumeration started
+        @Override
+        protected void clearTrees() {
+            trees = new CompactTreeList<>(labelledNodes);
+        }
+
+        //The fraction of the trees extending this worker's partial tree that have been searched
+        private double getCoverage(int size) {
+            InsertionPath path = this.path;
+            return path == null ? 0 : path.coverage(size);
+        }
+
+        private void fitchEnumerateFrom(int size) {
+            clearTrees();
+            PackedFitch<S> shared = ParallelCubicTreeEnumerator.this.packedFitch;
+            if (shared != null) {
+                //The scorer's scratch space can't be shared, and the copied tree's unlabelled nodes need their own sets
+                packedFitch = shared.copy();
+                packedFitch.rescore(root);
+            }
+            path = new InsertionPath(labelledNodes.size());
+            path.descend(size);
+            fitchEnumerateRecursive(root, size);
+        }
+
+        private void hartiganEnumerateFrom(int size) {
+            clearTrees();
+            PackedHartigan<S> shared = ParallelCubicTreeEnumerator.this.packedHartigan;
+            if (shared != null) {
+                packedHartigan = shared.copy();
+            }
+            path = new InsertionPath(labelledNodes.size());
+            path.descend(size);
+            hartiganEnumerateRecursive(root, size);
+        }
+
+        @Override
+        protected boolean withinBound(int score, int size) {
+            takeSharedScore();
+            return super.withinBound(score, size);
+        }
+
+        @Override
+        protected void updateMPlist(int thisParsimonyScore) {
+            takeSharedScore();
+            super.updateMPlist(thisParsimonyScore);
+
+            //Publish the score if it is the best one so far
+            int best;
+            do {
+                best = sharedScore.get();
+            } while ((best == -1 || parsimonyScore < best) && !sharedScore.compareAndSet(best, parsimonyScore));
+        }
+
+        //Lower this worker's score to the shared one if another worker found a better tree, dropping
+        //the trees that can no longer be most parsimonious
+        private void takeSharedScore() {
+            int best = sharedScore.get();
+            if (best != -1 && (parsimonyScore == -1 || best < parsimonyScore)) {
+                parsimonyScore = best;
+                trees.clear();
+                bestCount = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package edu.tcnj.phylotrees.simpleweight.algo;
+
+import edu.tcnj.phylotrees.simpleweight.data.CharacterList;
+import edu.tcnj.phylotrees.simpleweight.data.Node;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The {@link MinimumChangeBound} combined with a pairwise incompatibility (partition) bound.
+ * <p>
+ * Two characters with two states each are incompatible if all four combinations of their states
+ * occur among the labelled nodes, and then any tree needs at least one change more than the two
+ * characters' number of states suggests. The characters are partitioned into disjoint incompatible
+ * pairs once, before enumerating.
+ * <p>
+ * A partial tree already pays for the pairs whose incompatibility shows among the nodes in it, but
+ * a pair that only becomes incompatible through the nodes still to be added will still cost one more
+ * change. Since only the total score of the partial tree is known, any score it has above the least
+ * possible ({@code score - minimum}) may already be paying for those pairs, and is subtracted from them.
+ *
+ * @param <S> the data type used to represent each character state
+ */
+public class PartitionBound<S> extends MinimumChangeBound<S> {
+
+    //The least possible score of a partial tree, for each number of labelled nodes in the tree
+    private int[] minimum;
+    //The weight of the pairs that are not incompatible yet, for each number of labelled nodes in the tree
+    private int[] hidden;
+
+    @Override
+    public void initialize(List<Node<S>> labelledNodes, int chars, int[] weights) {
+        super.initialize(labelledNodes, chars, weights);
+        int n = labelledNodes.size();
+        minimum = new int[n + 1];
+        hidden = new int[n + 1];
+
+        //Only characters with exactly one state per node and two states overall can be paired
+        List<Integer> binary = new ArrayList<>();
+        List<S> firstStates = new ArrayList<>();
+        for (int i = 0; i < chars; i++) {
+            int weight = weights == null ? 1 : weights[i];
+            Set<S> states = new HashSet<>();
+            boolean single = true;
+            for (int size = 0; size < n; size++) {
+                Set<S> nodeStates = labelledNodes.get(size).root.get(i);
+                single &= nodeStates.size() == 1;
+                states.addAll(nodeStates);
+                //Every distinct state after the first costs a change, whatever the tree
+                if (single) {
+                    minimum[size + 1] += (states.size() - 1) * weight;
+                }
+            }
+            if (single && states.size() == 2) {
+                binary.add(i);
+                firstStates.add(labelledNodes.get(0).root.get(i).iterator().next());
+            }
+        }
+
+        //Greedily pair up incompatible characters, noting how many nodes it takes for each pair to show it
+        boolean[] paired = new boolean[binary.size()];
+        for (int a = 0; a < binary.size(); a++) {
+            for (int b = a + 1; b < binary.size() && !paired[a]; b++) {
+                if (paired[b]) continue;
+                int size = incompatibleAt(labelledNodes, binary.get(a), firstStates.get(a),
+                        binary.get(b), firstStates.get(b));
+                if (size != -1) {
+                    paired[a] = true;
+                    paired[b] = true;
+                    //The extra change can be in either character, so it costs the lower weight
+                    int weight = weights == null ? 1 : Math.min(weights[binary.get(a)], weights[binary.get(b)]);
+                    for (int i = size; i <= n; i++) {
+                        minimum[i] += weight;
+                    }
+                    for (int i = 0; i < size; i++) {
+                        hidden[i] += weight;
+                    }
+                }
+            }
+        }
+    }
+
+    // the number of labelled nodes needed for all four state combinations of two characters to occur,
+    // or -1 if the characters are compatible
+    private int incompatibleAt(List<Node<S>> labelledNodes, int i, S stateI, int j, S stateJ) {
+        boolean[] seen = new boolean[4];
+        int combinations = 0;
+        for (int size = 0; size < labelledNodes.size(); size++) {
+            CharacterList<S> root = labelledNodes.get(size).root;
+            int combination = (root.get(i).contains(stateI) ? 0 : 1) + (root.get(j).contains(stateJ) ? 0 : 2);
+            if (!seen[combination]) {
+                seen[combination] = true;
+                if (++combinations == 4) {
+                    return size + 1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int bound(int size, int score) {
+        return super.bound(size, score) + Math.max(0, hidden[size] - (score - minimum[size]));
+    }
+}
@@ -0,0 +1,181 @@
+package edu.tcnj.phylotrees.simpleweight.algo;
+
+import edu.tcnj.phylotrees.simpleweight.data.Node;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A heuristic search for a good (but not necessarily most parsimonious) cubic tree, used to get an
+ * upper bound on the parsimony score before an exhaustive branch+bound search.
+ * <p>
+ * The labelled nodes are added one at a time, in order, each to the edge where it adds the least
+ * to the Fitch score (greedy stepwise addition). The tree can then be refined by subtree pruning and
+ * regrafting (SPR): any subtree below a non-root internal node is moved to whichever other edge gives
+ * the best score, until no move improves it. Every nearest neighbour interchange is one of these moves.
+ * <p>
+ * The trees are scored with {@link PackedFitch} when possible, or {@link Fitch} otherwise.
+ *
+ * @param <S> the data type used to represent each character state
+ */
+public class StepwiseAddition<S> {
+
+    //The list of labelled nodes to build a tree of
+    private final List<Node<S>> labelledNodes;
+
+    //the number of characters a species has (Node.chars, passed in to avoid overhead)
+    private final int chars;
+
+    //The weight of each character, or null if every character has weight 1
+    private final int[] weights;
+
+    //The packed scorer, or null to use Fitch
+    private PackedFitch<S> packedFitch;
+
+    //The root of the current tree
+    private Node<S> root;
+
+    public StepwiseAddition(List<Node<S>> labelledNodes, int chars, int[] weights) {
+        this.labelledNodes = labelledNodes;
+        this.chars = chars;
+        this.weights = weights;
+    }
+
+    public StepwiseAddition(List<Node<S>> labelledNodes, int chars, List<Integer> weights) {
+        this(labelledNodes, chars, TreeEnumerator.toArray(weights));
+    }
+
+    /**
+     * Builds a tree by stepwise addition, optionally refined by SPR.
+     *
+     * @param refine whether to improve the tree with SPR moves after adding all nodes
+     * @return the parsimony score of the tree found, an upper bound on the most parsimonious score
+     */
+    public int search(boolean refine) {
+        packedFitch = PackedFitch.create(labelledNodes, chars, weights);
+
+        root = new Node<>("");
+        for (int i = 0; i < Math.min(3, labelledNodes.size()); i++) {
+            Node.linkNodes(root, labelledNodes.get(i).clone());
+        }
+        int score = rescore();
+
+        for (int size = 3; size < labelledNodes.size(); size++) {
+            Node<S> internal = new Node<>("");
+            Node<S> leaf = labelledNodes.get(size).clone();
+            score = regraft(internal, leaf);
+        }
+
+        if (refine && labelledNodes.size() > 4) {
+            int previous;
+            do {
+                previous = score;
+                score = sprPass(score);
+            } while (score < previous);
+        }
+        return score;
+    }
+
+    /**
+     * Gets the tree built by the last {@link #search(boolean)}.
+     *
+     * @return the root of the (cubic) tree
+     */
+    public Node<S> getTree() {
+        return root;
+    }
+
+    //Try moving every subtree below a non-root internal node to every other edge, making any move
+    //that improves the score, and return the score of the resulting tree
+    private int sprPass(int score) {
+        for (Node<S> subtree : nodes(root)) {
+            Node<S> internal = subtree.parent;
+            if (internal == null || internal == root) continue;
+
+            //Prune the subtree, joining its sibling to its grandparent
+            Node<S> parent = internal.parent;
+            Node<S> sibling = internal.children.get(0) == subtree
+                    ? internal.children.get(1) : internal.children.get(0);
+            TreeEnumerator.removeNodeFromEdge(sibling, parent, internal, subtree);
+            changed(parent);
+
+            //Put it back on the best edge, which is the original one unless some edge is strictly better
+            int best = regraft(internal, subtree, sibling, parent);
+            if (best < score) {
+                score = best;
+            }
+        }
+        return score;
+    }
+
+    //Add internal (with child as its other child) to whichever edge of the tree gives the best score
+    private int regraft(Node<S> internal, Node<S> child) {
+        return regraft(internal, child, null, null);
+    }
+
+    //Same as above, but prefer the edge between current and parent on ties
+    private int regraft(Node<S> internal, Node<S> child, Node<S> bestCurrent, Node<S> bestParent) {
+        int best = Integer.MAX_VALUE;
+        if (bestCurrent != null) {
+            TreeEnumerator.addNodeToEdge(bestCurrent, bestParent, internal, child);
+            best = inserted(internal);
+            TreeEnumerator.removeNodeFromEdge(bestCurrent, bestParent, internal, child);
+            changed(bestParent);
+        }
+        for (Node<S> current : nodes(root)) {
+            if (current == root || current == bestCurrent) continue;
+            Node<S> parent = current.parent;
+            TreeEnumerator.addNodeToEdge(current, parent, internal, child);
+            int score = inserted(internal);
+            if (score < best) {
+                best = score;
+                bestCurrent = current;
+                bestParent = parent;
+            }
+            TreeEnumerator.removeNodeFromEdge(current, parent, internal, child);
+            changed(parent);
+        }
+        TreeEnumerator.addNodeToEdge(bestCurrent, bestParent, internal, child);
+        return inserted(internal);
+    }
+
+    //Rescore the tree after internal has been added to an edge. Its packed set is from wherever it
+    //was before, so it has to be dropped for the change to be passed on to its new ancestors
+    private int inserted(Node<S> internal) {
+        internal.packed = null;
+        return changed(internal);
+    }
+
+    //Rescore the tree after the children of node have changed
+    private int changed(Node<S> node) {
+        if (packedFitch != null) {
+            packedFitch.update(node);
+            return root.packedScore;
+        }
+        return rescore();
+    }
+
+    //Score the whole tree
+    private int rescore() {
+        if (packedFitch != null) {
+            return packedFitch.rescore(root);
+        }
+        if (root.children.size() < 3) {
+            return Fitch.bottomUp(root, chars, weights);
+        }
+        root = Fitch.cubicToBinary(root);
+        int score = Fitch.bottomUp(root, chars, weights);
+        root = Fitch.binaryToCubic(root);
+        return score;
+    }
+
+    //Get all nodes of a tree in breadth-first order, so that the tree can be changed while going through them
+    private static <S> List<Node<S>> nodes(Node<S> root) {
+        List<Node<S>> nodes = new ArrayList<>();
+        nodes.add(root);
+        for (int i = 0; i < nodes.size(); i++) {
+            nodes.addAll(nodes.get(i).children);
+        }
+        return nodes;
+    }
+}
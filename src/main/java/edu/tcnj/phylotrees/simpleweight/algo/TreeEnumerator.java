@@ -1,14 +1,17 @@
 package edu.tcnj.phylotrees.simpleweight.algo;
 
+import edu.tcnj.phylotrees.SearchBudget;
+import edu.tcnj.phylotrees.SearchMetrics;
+import edu.tcnj.phylotrees.SearchProgress;
 import edu.tcnj.phylotrees.simpleweight.data.CharacterList;
+import edu.tcnj.phylotrees.simpleweight.data.CompactTreeList;
 import edu.tcnj.phylotrees.simpleweight.data.Node;
+import edu.tcnj.phylotrees.simpleweight.data.TreeSink;
 
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
-public abstract class TreeEnumerator<S> {
+public abstract class TreeEnumerator<S> implements SearchProgress {
 
     //The set of all possible characters (used in Hartigan)
     protected CharacterList<S> worldSet = new CharacterList<>();
@@ -19,8 +22,26 @@ public abstract class TreeEnumerator<S> {
     //The list of labelled nodes received from the input
     protected List<Node<S>> labelledNodes = new ArrayList<>();
 
-    //The set of all tree topologies
-    protected Set<Node<S>> trees = new HashSet<>();
+    //The list of all tree topologies (a CompactTreeList once an enumeration has started, see clearTrees)
+    protected List<Node<S>> trees = new ArrayList<>();
+
+    //The counts and times of the last enumeration
+    protected SearchMetrics metrics = new SearchMetrics();
+
+    //The number of (distinct) trees found with the best score in the current enumeration
+    protected long bestCount = 0;
+
+    //The budget the branch+bounded enumerations stop at, or null to search every tree
+    protected SearchBudget budget;
+    //Whether the current enumeration ran out of budget before searching every tree
+    protected boolean incomplete = false;
+    //The least score of the trees the current enumeration stopped without searching (a bound, as they are not scored)
+    protected int unsearchedBound = Integer.MAX_VALUE;
+    //The partial trees visited since the last batch spent from the budget
+    private int unspent = 0;
+
+    //Where to send the most parsimonious trees as they are found, instead of keeping them in trees (null to keep them)
+    protected TreeSink<S> treeSink;
 
     //The count of all trees enumerated (only maintained in the basic enumerate methods, not in fitch or hartigan)
     protected int treeCounter = 0;
@@ -31,8 +52,140 @@ public abstract class TreeEnumerator<S> {
     //the number of characters a species has (Node.chars, passed in to avoid overhead)
     protected int chars = 0;
 
+    //The weight of each character (the number of columns with its pattern), or null if every character has weight 1
+    protected int[] weights;
+
+    /**
+     * Gets the parsimony score of the most parsimonious trees found by the last branch+bounded enumeration.
+     *
+     * @return the best parsimony score, or -1 if no tree has been scored
+     */
+    public int getParsimonyScore() {
+        return parsimonyScore;
+    }
+
+    /**
+     * Gets the counts of the work done by the last enumeration: the partial trees visited at each
+     * depth, the branches pruned, the trees scored, the ties and improvements of the best score, and
+     * the time it took.
+     *
+     * @return the metrics of the last enumeration
+     */
+    public SearchMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public long getTreesVisited() {
+        return metrics.getVisited();
+    }
+
+    @Override
+    public double getBestScore() {
+        return bestCount > 0 ? parsimonyScore : Double.NaN;
+    }
+
+    @Override
+    public long getBestCount() {
+        return bestCount;
+    }
+
+    //Only enumerations that insert the labelled nodes on edges in a fixed order can estimate it
+    @Override
+    public double getCoverage() {
+        return -1;
+    }
+
+    /**
+     * Sends the most parsimonious trees to a sink as they are found, instead of keeping them until the
+     * enumeration ends. The sink is reset at the start of every enumeration, and the lists of trees the
+     * enumerations return are then empty. The enumeration keeps nothing else for each tree, so its memory
+     * does not grow with the number of most parsimonious trees (unless it saves checkpoints, which have to
+     * hold the trees to restore them).
+     *
+     * @param treeSink the sink, or null to keep the trees in the returned list
+     */
+    public void setTreeSink(TreeSink<S> treeSink) {
+        this.treeSink = treeSink;
+    }
+
+    /**
+     * Limits the time and number of partial trees of the branch+bounded enumerations. Once the budget
+     * runs out, an enumeration stops and returns the most parsimonious trees found so far, and
+     * {@link #isComplete()} tells that the trees it did not search might have been better. The budget is
+     * started again by every enumeration.
+     *
+     * @param budget the budget, or null to search every tree
+     */
+    public void setBudget(SearchBudget budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Checks whether the last branch+bounded enumeration searched every tree, rather than running out of
+     * budget, so that the trees it found are certain to be the most parsimonious.
+     *
+     * @return true if the enumeration was complete
+     */
+    public boolean isComplete() {
+        return !incomplete;
+    }
+
+    /**
+     * Gets how much better than the trees found by the last branch+bounded enumeration the trees it did not
+     * search could be: the gap between the best score found and the lower bound on the score of the
+     * partial trees it stopped at.
+     *
+     * @return the gap (0 if the enumeration was complete), or -1 if it stopped before finding any tree
+     */
+    public int getScoreGap() {
+        if (!incomplete) return 0;
+        if (bestCount == 0) return -1;
+        return Math.max(0, parsimonyScore - unsearchedBound);
+    }
+
+    //Start the budget (if any) for a new enumeration
+    protected void startBudget() {
+        incomplete = false;
+        unsearchedBound = Integer.MAX_VALUE;
+        unspent = 0;
+        if (budget != null) {
+            budget.start();
+        }
+    }
+
+    //Count a partial tree against the budget before searching the trees that extend it, returning whether
+    //the budget has run out. Once it has, the enumeration is incomplete, and keeps the bound on the score of
+    //the trees it does not search.
+    protected boolean outOfBudget(int score, int size) {
+        if (budget == null) return false;
+        if (++unspent >= budget.getBatch()) {
+            budget.spend(unspent);
+            unspent = 0;
+        }
+        if (!budget.isExhausted()) return false;
+        incomplete = true;
+        unsearchedBound = Math.min(unsearchedBound, bound(score, size));
+        return true;
+    }
+
+    //The least score of any tree extending a partial tree with the given score and number of labelled nodes
+    protected int bound(int score, int size) {
+        return score;
+    }
+
+    //Unbox a list of character weights, keeping null as null
+    protected static int[] toArray(List<Integer> weights) {
+        if (weights == null) return null;
+        int[] array = new int[weights.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = weights.get(i);
+        }
+        return array;
+    }
+
     //Add internal between current and parent, and then make leaf a child of internal
-    protected void addNodeToEdge(Node<S> current, Node<S> parent, Node<S> internal, Node<S> leaf) {
+    protected static <S> void addNodeToEdge(Node<S> current, Node<S> parent, Node<S> internal, Node<S> leaf) {
         Node.unlinkNodes(parent, current);
 
         Node.linkNodes(parent, internal);
@@ -40,8 +193,17 @@ public abstract class TreeEnumerator<S> {
         Node.linkNodes(internal, leaf);
     }
 
+    //Move current to the end of its parent's children without adding anything to its edge, as adding
+    //and removing a node there would have. The enumerations visit every child of a node by recursing
+    //into the first child once per child, so an edge that is pruned must still be moved along.
+    protected void skipEdge(Node<S> current) {
+        Node<S> parent = current.parent;
+        Node.unlinkNodes(parent, current);
+        Node.linkNodes(parent, current);
+    }
+
     //Remove internal and leaf, leaving just parent and current
-    protected void removeNodeFromEdge(Node<S> current, Node<S> parent, Node<S> internal, Node<S> leaf) {
+    protected static <S> void removeNodeFromEdge(Node<S> current, Node<S> parent, Node<S> internal, Node<S> leaf) {
         Node.unlinkNodes(internal, leaf);
         Node.unlinkNodes(internal, current);
         Node.unlinkNodes(parent, internal);
@@ -56,13 +218,40 @@ public abstract class TreeEnumerator<S> {
                 //Clear the list if a new best parsimony score is found
                 parsimonyScore = thisParsimonyScore;
                 trees.clear();
+                bestCount = 0;
+                metrics.improve();
+            } else {
+                metrics.tie();
             }
             //Add the tree if it matches the current best parsimony score
-            trees.add(root.clone());
+            addTree();
         } else if (parsimonyScore == -1) {
             //Initialize the parsimony score if it is -1
             parsimonyScore = thisParsimonyScore;
-            trees.add(root.clone());
+            metrics.improve();
+            addTree();
+        }
+    }
+
+    //Start a new, empty list of trees (a new one, as the last enumeration's may have been returned),
+    //and reset the sink if there is one
+    protected void clearTrees() {
+        bestCount = 0;
+        trees = new CompactTreeList<>(labelledNodes);
+        if (treeSink != null) {
+            treeSink.reset();
+        }
+    }
+
+    //Add the current tree to the list of trees (or send it to the sink). The list stores its own compact
+    //copy of the tree's structure. The enumerations insert the taxa in a fixed order, so they reach each
+    //unrooted tree exactly once and the trees need no check for duplicates.
+    protected void addTree() {
+        bestCount++;
+        if (treeSink != null) {
+            treeSink.accept(root, parsimonyScore);
+        } else {
+            trees.add(root);
         }
     }
 }
@@ -0,0 +1,203 @@
+package edu.tcnj.phylotrees.simpleweight.data;
+
+import java.util.List;
+
+/**
+ * A tree stored in primitive arrays, as an alternative to linked {@link Node} objects for the
+ * inner loops of an enumeration.
+ * <p>
+ * Every node is an index from 0 to the capacity, and the structure is kept in parallel arrays: the
+ * parent of each node, and its children as a doubly linked list (first and last child, next and
+ * previous sibling). Linking, unlinking and replacing a child are all O(1) and don't allocate, so
+ * inserting a node on an edge and removing it again costs a few array writes. Nodes may have any
+ * number of children, so both cubic and mixed trees can be built.
+ * <p>
+ * Other per-node data (such as packed state sets) can be kept by the user of the tree in arrays
+ * indexed the same way, with node {@code i}'s data at offset {@code i * stride}.
+ */
+public class ArrayTree {
+
+    /**
+     * The index used for "no node", such as the parent of the root.
+     */
+    public static final int NONE = -1;
+
+    /**
+     * The parent of each node, or {@link #NONE}.
+     */
+    public final int[] parent;
+    /**
+     * The first child of each node, or {@link #NONE} for a leaf.
+     */
+    public final int[] firstChild;
+    /**
+     * The last child of each node, or {@link #NONE} for a leaf.
+     */
+    public final int[] lastChild;
+    /**
+     * The next child of each node's parent, or {@link #NONE}.
+     */
+    public final int[] nextSibling;
+    /**
+     * The previous child of each node's parent, or {@link #NONE}.
+     */
+    public final int[] prevSibling;
+    /**
+     * The number of children of each node.
+     */
+    public final int[] degree;
+    /**
+     * The root of the tree, or {@link #NONE} if it has not been set.
+     */
+    public int root = NONE;
+
+    /**
+     * Creates a tree of unlinked nodes.
+     *
+     * @param capacity the number of nodes
+     */
+    public ArrayTree(int capacity) {
+        parent = new int[capacity];
+        firstChild = new int[capacity];
+        lastChild = new int[capacity];
+        nextSibling = new int[capacity];
+        prevSibling = new int[capacity];
+        degree = new int[capacity];
+        clear();
+    }
+
+    /**
+     * Unlinks every node.
+     */
+    public void clear() {
+        for (int i = 0; i < parent.length; i++) {
+            parent[i] = firstChild[i] = lastChild[i] = nextSibling[i] = prevSibling[i] = NONE;
+            degree[i] = 0;
+        }
+        root = NONE;
+    }
+
+    /**
+     * Gets the number of nodes this tree has room for.
+     *
+     * @return the capacity
+     */
+    public int capacity() {
+        return parent.length;
+    }
+
+    /**
+     * Makes a node the last child of another.
+     *
+     * @param parent the node to be the parent
+     * @param child  the node to be the child, which must not have a parent
+     */
+    public void link(int parent, int child) {
+        this.parent[child] = parent;
+        prevSibling[child] = lastChild[parent];
+        nextSibling[child] = NONE;
+        if (lastChild[parent] == NONE) {
+            firstChild[parent] = child;
+        } else {
+            nextSibling[lastChild[parent]] = child;
+        }
+        lastChild[parent] = child;
+        degree[parent]++;
+    }
+
+    /**
+     * Removes a node from its parent's children.
+     *
+     * @param child the node to unlink from its parent
+     */
+    public void unlink(int child) {
+        int parent = this.parent[child];
+        int prev = prevSibling[child];
+        int next = nextSibling[child];
+        if (prev == NONE) {
+            firstChild[parent] = next;
+        } else {
+            nextSibling[prev] = next;
+        }
+        if (next == NONE) {
+            lastChild[parent] = prev;
+        } else {
+            prevSibling[next] = prev;
+        }
+        this.parent[child] = prevSibling[child] = nextSibling[child] = NONE;
+        degree[parent]--;
+    }
+
+    /**
+     * Puts a node in the place of another among its parent's children, unlinking the other node.
+     *
+     * @param child       the node to replace
+     * @param replacement the node to take its place, which must not have a parent
+     */
+    public void replace(int child, int replacement) {
+        int parent = this.parent[child];
+        int prev = prevSibling[child];
+        int next = nextSibling[child];
+        this.parent[replacement] = parent;
+        prevSibling[replacement] = prev;
+        nextSibling[replacement] = next;
+        if (prev == NONE) {
+            firstChild[parent] = replacement;
+        } else {
+            nextSibling[prev] = replacement;
+        }
+        if (next == NONE) {
+            lastChild[parent] = replacement;
+        } else {
+            prevSibling[next] = replacement;
+        }
+        this.parent[child] = prevSibling[child] = nextSibling[child] = NONE;
+    }
+
+    /**
+     * Adds internal on the edge above child, and then makes leaf the other child of internal.
+     *
+     * @param child    the lower end of the edge
+     * @param internal an unlinked node to put on the edge
+     * @param leaf     an unlinked node to be internal's second child
+     * @see #removeFromEdge(int)
+     */
+    public void insertOnEdge(int child, int internal, int leaf) {
+        replace(child, internal);
+        link(internal, child);
+        link(internal, leaf);
+    }
+
+    /**
+     * Undoes {@link #insertOnEdge(int, int, int)}: removes internal and its second child (the leaf),
+     * putting its first child back in its place.
+     *
+     * @param internal the node that was put on an edge
+     */
+    public void removeFromEdge(int internal) {
+        int child = firstChild[internal];
+        int leaf = lastChild[internal];
+        unlink(leaf);
+        unlink(child);
+        replace(internal, child);
+    }
+
+    /**
+     * Builds the tree as linked {@link Node}s. Node {@code i} is a clone of the {@code i}th labelled
+     * node if there is one, and an unlabelled node otherwise.
+     *
+     * @param labelledNodes the labelled nodes, by index
+     * @return the root of the new tree
+     */
+    public <S> Node<S> toNode(List<Node<S>> labelledNodes) {
+        return toNode(root, labelledNodes);
+    }
+
+    private <S> Node<S> toNode(int node, List<Node<S>> labelledNodes) {
+        Node<S> newNode = node < labelledNodes.size() ? labelledNodes.get(node).clone() : new Node<S>("");
+        for (int child = firstChild[node]; child != NONE; child = nextSibling[child]) {
+            Node.linkNodes(newNode, toNode(child, labelledNodes));
+        }
+        return newNode;
+    }
+}
@@ -0,0 +1,269 @@
+package edu.tcnj.phylotrees.simpleweight.data;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A list of trees of the same labelled nodes, each stored as a packed parent array instead of
+ * linked {@link Node}s, for keeping large numbers of (most parsimonious) trees.
+ * <p>
+ * Labelled node {@code i} of a tree is numbered {@code i}, and its unlabelled nodes are numbered
+ * from {@code n} up in preorder. A tree is then the parent number of each node (the root being its
+ * own parent), in one byte per node, or two once trees can have more than 256 nodes. A tree of 20
+ * species takes about 40 bytes, instead of the 40 {@code Node}s and child lists of a clone.
+ * <p>
+ * Adding a tree copies its structure, so the tree may go on changing afterwards. The trees are only
+ * built as {@code Node}s again, as clones of the labelled nodes, when they are iterated over or
+ * fetched with {@link #get(int)}; each time, new nodes are made (so, as {@code Node}s are compared
+ * by identity, the list never contains a tree it has given out). Trees are kept in the order they
+ * are added, without any check for duplicates: the tree enumerators reach each tree only once, so
+ * nothing else is kept per tree, and where the same tree can come up more than once (edge
+ * contraction), its {@link Topology} is the key.
+ * <p>
+ * The list can also be given to an enumerator as its {@link TreeSink}, keeping the trees of the best score.
+ *
+ * @param <S> the data type used to represent each character state
+ */
+public class CompactTreeList<S> extends AbstractList<Node<S>> implements TreeSink<S> {
+
+    //The labelled nodes, by number
+    private final List<Node<S>> labelledNodes;
+    //The number of each labelled node, by its label
+    private final Map<String, Integer> labelIndex = new HashMap<>();
+    //Whether parent numbers take two bytes
+    private final boolean wide;
+    //The parent array of each tree
+    private final List<byte[]> encoded = new ArrayList<>();
+    //The score of the trees given as a sink, or -1 if none have been
+    private int score = -1;
+
+    /**
+     * Creates an empty list for trees of the given labelled nodes.
+     *
+     * @param labelledNodes the labelled nodes that every tree is made of
+     */
+    public CompactTreeList(List<Node<S>> labelledNodes) {
+        this.labelledNodes = new ArrayList<>(labelledNodes);
+        for (Node<S> node : labelledNodes) {
+            labelIndex.put(node.label, labelIndex.size());
+        }
+        //A tree has at most n labelled nodes, n - 2 unlabelled ones and a bifurcating root
+        this.wide = 2 * labelledNodes.size() > 256;
+    }
+
+    /**
+     * Records the structure of a tree, which must contain every labelled node.
+     *
+     * @param root the root of the tree
+     * @return true
+     */
+    @Override
+    public boolean add(Node<S> root) {
+        store(encode(root));
+        return true;
+    }
+
+    /**
+     * Keeps a packed tree.
+     *
+     * @param tree the packed parent array, from {@link #encode(Node)}
+     */
+    protected void store(byte[] tree) {
+        encoded.add(tree);
+    }
+
+    @Override
+    public synchronized void accept(Node<S> tree, int score) {
+        if (this.score != -1 && score > this.score) return;
+        if (score != this.score) {
+            clear();
+            this.score = score;
+        }
+        add(tree);
+    }
+
+    @Override
+    public synchronized void reset() {
+        clear();
+        score = -1;
+    }
+
+    /**
+     * Gets the score of the trees given to this list as a {@link TreeSink}.
+     *
+     * @return the best score accepted, or -1 if no tree has been
+     */
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * Packs the structure of a tree into a parent array.
+     *
+     * @param root the root of the tree, which must contain every labelled node
+     * @return the packed parent array
+     */
+    protected byte[] encode(Node<S> root) {
+        int[] parents = new int[labelledNodes.size() + root.size()];
+        int[] nextUnlabelled = {labelledNodes.size()};
+        number(root, -1, parents, nextUnlabelled);
+
+        int count = nextUnlabelled[0];
+        byte[] tree = new byte[wide ? 2 * count : count];
+        for (int i = 0; i < count; i++) {
+            if (wide) {
+                tree[2 * i] = (byte) (parents[i] >>> 8);
+                tree[2 * i + 1] = (byte) parents[i];
+            } else {
+                tree[i] = (byte) parents[i];
+            }
+        }
+        return tree;
+    }
+
+    //Number the nodes of a (sub)tree, unlabelled ones in preorder, and record the parent of each
+    private void number(Node<S> node, int parent, int[] parents, int[] nextUnlabelled) {
+        int number = node.labelled ? labelIndex.get(node.label) : nextUnlabelled[0]++;
+        parents[number] = parent == -1 ? number : parent;
+        for (Node<S> child : node.children) {
+            number(child, number, parents, nextUnlabelled);
+        }
+    }
+
+    /**
+     * Builds one of the trees as linked {@code Node}s. This only reads the list, so different threads
+     * may build trees at the same time.
+     *
+     * @param index the position of the tree, in the order the trees were added
+     * @return the root of a new copy of the tree
+     */
+    public Node<S> get(int index) {
+        return decode(packed(index));
+    }
+
+    /**
+     * Gets one of the trees as its packed parent array.
+     *
+     * @param index the position of the tree, in the order the trees were added
+     * @return the packed parent array, which must not be changed
+     */
+    protected byte[] packed(int index) {
+        return encoded.get(index);
+    }
+
+    /**
+     * Copies the list into memory. The packed trees never change once stored, so they are shared
+     * rather than copied, and copying takes no longer than copying a list of them.
+     *
+     * @return a new list of the same trees and score
+     */
+    public synchronized CompactTreeList<S> copy() {
+        CompactTreeList<S> copy = new CompactTreeList<>(labelledNodes);
+        for (int i = 0; i < size(); i++) {
+            copy.encoded.add(packed(i));
+        }
+        copy.score = score;
+        return copy;
+    }
+
+    /**
+     * Writes the packed trees, in order, to be added back to a list of the same labelled nodes with
+     * {@link #read(DataInput)}.
+     *
+     * @param out where to write the trees
+     * @throws IOException if the trees can't be written
+     */
+    public synchronized void write(DataOutput out) throws IOException {
+        out.writeInt(size());
+        for (int i = 0; i < size(); i++) {
+            byte[] tree = packed(i);
+            out.writeInt(tree.length);
+            out.write(tree);
+        }
+    }
+
+    /**
+     * Adds the packed trees written by {@link #write(DataOutput)}.
+     *
+     * @param in where to read the trees from
+     * @throws IOException if the trees can't be read, or are not trees of this list's labelled nodes
+     */
+    public void read(DataInput in) throws IOException {
+        int count = in.readInt();
+        //A tree has at most 2n nodes, each taking one or two bytes
+        int maxLength = (wide ? 4 : 2) * labelledNodes.size();
+        for (int i = 0; i < count; i++) {
+            int length = in.readInt();
+            if (length < labelledNodes.size() || length > maxLength) {
+                throw new IOException("A tree of " + length + " bytes is not one of " + labelledNodes.size()
+                        + " labelled nodes.");
+            }
+            byte[] tree = new byte[length];
+            in.readFully(tree);
+            store(tree);
+        }
+    }
+
+    /**
+     * Builds a tree as linked {@code Node}s from its packed parent array.
+     *
+     * @param tree the packed parent array, from {@link #encode(Node)}
+     * @return the root of the tree
+     */
+    protected Node<S> decode(byte[] tree) {
+        int count = wide ? tree.length / 2 : tree.length;
+        List<Node<S>> nodes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            nodes.add(i < labelledNodes.size() ? labelledNodes.get(i).clone() : new Node<S>(""));
+        }
+        Node<S> root = null;
+        for (int i = 0; i < count; i++) {
+            int parent = wide ? (tree[2 * i] & 0xFF) << 8 | (tree[2 * i + 1] & 0xFF) : tree[i] & 0xFF;
+            if (parent == i) {
+                root = nodes.get(i);
+            } else {
+                Node.linkNodes(nodes.get(parent), nodes.get(i));
+            }
+        }
+        return root;
+    }
+
+    @Override
+    public Iterator<Node<S>> iterator() {
+        return new Iterator<Node<S>>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < size();
+            }
+
+            @Override
+            public Node<S> next() {
+                return get(next++);
+            }
+
+            @Override
+            public void remove() {
+                encoded.remove(--next);
+            }
+        };
+    }
+
+    @Override
+    public int size() {
+        return encoded.size();
+    }
+
+    @Override
+    public void clear() {
+        encoded.clear();
+    }
+}
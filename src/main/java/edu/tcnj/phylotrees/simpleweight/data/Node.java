@@ -41,6 +41,33 @@ public class Node<S> implements Cloneable {
      * The lower set of a node. This is generally used in Hartigan's algorithm.
      */
     public CharacterList<S> lower;
+    /**
+     * The root set of a node packed into bit slices, used by
+     * {@link edu.tcnj.phylotrees.simpleweight.algo.PackedFitch} in place of {@link #root}.
+     */
+    public long[] packed;
+    /**
+     * The Fitch score of the subtree below this node, cached alongside {@link #packed}.
+     */
+    public int packedScore;
+    /**
+     * The states of a labelled node as one bitmask per character, used by
+     * {@link edu.tcnj.phylotrees.simpleweight.algo.PackedHartigan} in place of {@link #root}.
+     * It is never modified, so clones share it.
+     */
+    public long[] labelMask;
+    /**
+     * The upper set of a node as one bitmask per character, used in place of {@link #upper}.
+     */
+    public long[] upperMask;
+    /**
+     * The lower set of a node as one bitmask per character, used in place of {@link #lower}.
+     */
+    public long[] lowerMask;
+    /**
+     * The root set of a node as one bitmask per character, as found by Hartigan's top down.
+     */
+    public long[] rootMask;
 
     /**
      * The parent of this node, or null if this node has no parent.
@@ -117,6 +144,11 @@ public class Node<S> implements Cloneable {
         newNode.root = this.root;
         newNode.upper = this.upper;
         newNode.lower = this.lower;
+        //Packed sets of unlabelled nodes are overwritten in place as a tree is rescored, so only share labelled ones
+        if (this.labelled) {
+            newNode.packed = this.packed;
+        }
+        newNode.labelMask = this.labelMask;
         return newNode;
     }
 
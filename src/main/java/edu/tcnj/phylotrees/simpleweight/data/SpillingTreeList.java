@@ -0,0 +1,180 @@
+package edu.tcnj.phylotrees.simpleweight.data;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A {@link CompactTreeList} that keeps its trees in memory up to a limit, and writes the rest to a
+ * temporary file.
+ * <p>
+ * Once the packed trees in memory would pass the limit, every later tree is appended to the file
+ * (its length, then its parent array), and only its offset in the file is kept in memory. Fetching a
+ * spilled tree reads it back, so the list can be iterated and passed to a
+ * {@link edu.tcnj.phylotrees.simpleweight.algo.ParallelCompactor} as usual, only more slowly. Clearing
+ * the list (such as when a new best score drops its trees) empties the file, and {@link #close()}
+ * deletes it.
+ *
+ * @param <S> the data type used to represent each character state
+ */
+public class SpillingTreeList<S> extends CompactTreeList<S> implements Closeable {
+
+    //The approximate memory taken by a packed tree besides its parent array (the array header and list entry)
+    private static final int OVERHEAD = 24;
+
+    //The number of bytes of trees to keep in memory before spilling
+    private final long memoryLimit;
+    //The number of bytes of trees in memory
+    private long memoryUsed = 0;
+
+    //The file the spilled trees are written to, and read back from (created when first needed)
+    private File file;
+    private DataOutputStream out;
+    private RandomAccessFile in;
+    //The offset of each spilled tree in the file
+    private long[] offsets = new long[16];
+    private int spilled = 0;
+    //The length of the file
+    private long written = 0;
+
+    /**
+     * Creates an empty list for trees of the given labelled nodes.
+     *
+     * @param labelledNodes the labelled nodes that every tree is made of
+     * @param memoryLimit   the number of bytes of packed trees to keep in memory
+     */
+    public SpillingTreeList(List<Node<S>> labelledNodes, long memoryLimit) {
+        super(labelledNodes);
+        this.memoryLimit = memoryLimit;
+    }
+
+    @Override
+    protected synchronized void store(byte[] tree) {
+        //Once a tree has been spilled, the rest are too, so that the trees stay in order
+        if (spilled == 0 && memoryUsed + tree.length + OVERHEAD <= memoryLimit) {
+            super.store(tree);
+            memoryUsed += tree.length + OVERHEAD;
+            return;
+        }
+        try {
+            if (out == null) {
+                open();
+            }
+            if (spilled == offsets.length) {
+                offsets = Arrays.copyOf(offsets, 2 * spilled);
+            }
+            offsets[spilled++] = written;
+            out.writeInt(tree.length);
+            out.write(tree);
+            written += 4 + tree.length;
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not write a tree to " + file, e);
+        }
+    }
+
+    @Override
+    protected byte[] packed(int index) {
+        int inMemory = super.size();
+        return index < inMemory ? super.packed(index) : read(index - inMemory);
+    }
+
+    //Read a spilled tree back from the file
+    private synchronized byte[] read(int spilledIndex) {
+        try {
+            out.flush();
+            in.seek(offsets[spilledIndex]);
+            byte[] tree = new byte[in.readInt()];
+            in.readFully(tree);
+            return tree;
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read a tree from " + file, e);
+        }
+    }
+
+    private void open() throws IOException {
+        if (file == null) {
+            file = File.createTempFile("trees", ".bin");
+            file.deleteOnExit();
+        }
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        in = new RandomAccessFile(file, "r");
+    }
+
+    /**
+     * Gets the number of trees that have been written to the file.
+     *
+     * @return the number of spilled trees
+     */
+    public synchronized int spilledCount() {
+        return spilled;
+    }
+
+    @Override
+    public Iterator<Node<S>> iterator() {
+        final Iterator<Node<S>> iterator = super.iterator();
+        return new Iterator<Node<S>>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public Node<S> next() {
+                return iterator.next();
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("Trees can't be removed from a spilling list");
+            }
+        };
+    }
+
+    @Override
+    public synchronized int size() {
+        return super.size() + spilled;
+    }
+
+    @Override
+    public synchronized void clear() {
+        super.clear();
+        memoryUsed = 0;
+        spilled = 0;
+        written = 0;
+        closeFile();
+    }
+
+    /**
+     * Empties the list and deletes its file.
+     */
+    @Override
+    public synchronized void close() {
+        clear();
+        if (file != null) {
+            file.delete();
+            file = null;
+        }
+    }
+
+    //Close the streams, so that the file is truncated when it is next opened
+    private void closeFile() {
+        try {
+            if (out != null) {
+                out.close();
+                in.close();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not close " + file, e);
+        } finally {
+            out = null;
+            in = null;
+        }
+    }
+}
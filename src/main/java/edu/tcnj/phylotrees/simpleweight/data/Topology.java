@@ -0,0 +1,117 @@
+package edu.tcnj.phylotrees.simpleweight.data;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The unrooted topology of a tree, used as a key to keep only one copy of each distinct tree.
+ * <p>
+ * Every edge of a tree splits its labelled nodes in two, and a tree whose unlabelled nodes all have
+ * at least three neighbours is determined by the set of these splits. A topology is that set, with
+ * each split stored as the side that doesn't contain the first labelled node. Two trees have equal
+ * topologies exactly when they are the same unrooted tree, so re-rooted copies (such as a cubic tree
+ * and its bifurcating version from {@link edu.tcnj.phylotrees.simpleweight.algo.Fitch#cubicToBinary(Node)})
+ * are equal, whatever order their children are in.
+ * <p>
+ * Building a topology takes one pass over the tree, with one bitset per edge.
+ */
+public class Topology {
+
+    //The splits of the tree, by the labelled nodes on the side without the first one
+    private final Set<BitSet> splits = new HashSet<>();
+    //The hash of the splits
+    private final int hash;
+
+    /**
+     * Finds the topology of a tree.
+     *
+     * @param root   the root of the tree
+     * @param labels the index of every label in the tree (see {@link #index(List)})
+     */
+    public <S> Topology(Node<S> root, Map<String, Integer> labels) {
+        split(root, labels, labels.size(), true);
+        //The sum of the splits' hashes doesn't depend on their order, but they are mixed first since
+        //the hashes of small bitsets are small numbers, and their sums would collide often
+        int hash = 0;
+        for (BitSet split : splits) {
+            int h = split.hashCode() * 0x9E3779B9;
+            hash += h ^ (h >>> 16);
+        }
+        this.hash = hash;
+    }
+
+    /**
+     * Numbers the labelled nodes, so that trees of the same nodes can be compared.
+     *
+     * @param labelledNodes the labelled nodes (such as species)
+     * @return the index of each node, by its label
+     */
+    public static <S> Map<String, Integer> index(List<Node<S>> labelledNodes) {
+        Map<String, Integer> labels = new HashMap<>();
+        for (Node<S> node : labelledNodes) {
+            labels.put(node.label, labels.size());
+        }
+        return labels;
+    }
+
+    /**
+     * Numbers the labelled nodes of a tree, so that trees of the same nodes can be compared.
+     *
+     * @param root the root of the tree
+     * @return the index of each labelled node in the tree, by its label
+     */
+    public static <S> Map<String, Integer> index(Node<S> root) {
+        Map<String, Integer> labels = new HashMap<>();
+        index(root, labels);
+        return labels;
+    }
+
+    private static <S> void index(Node<S> node, Map<String, Integer> labels) {
+        if (node.labelled) {
+            labels.put(node.label, labels.size());
+        }
+        for (Node<S> child : node.children) {
+            index(child, labels);
+        }
+    }
+
+    //Find the labelled nodes below (and including) a node, adding the split of the edge above it
+    private <S> BitSet split(Node<S> node, Map<String, Integer> labels, int size, boolean isRoot) {
+        BitSet below = new BitSet(size);
+        if (node.labelled) {
+            below.set(labels.get(node.label));
+        }
+        for (Node<S> child : node.children) {
+            below.or(split(child, labels, size, false));
+        }
+        if (!isRoot) {
+            BitSet split = below;
+            if (split.get(0)) {
+                split = (BitSet) below.clone();
+                split.flip(0, size);
+            }
+            //An edge with every labelled node on one side doesn't split them (it leads to an unlabelled leaf)
+            if (!split.isEmpty()) {
+                splits.add(split);
+            }
+        }
+        return below;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Topology)) return false;
+        Topology other = (Topology) o;
+        return hash == other.hash && splits.equals(other.splits);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
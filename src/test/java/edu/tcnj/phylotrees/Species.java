@@ -0,0 +1,56 @@
+package edu.tcnj.phylotrees;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Generates the input lines of a set of DNA species from a fixed seed, for the tests to compare the
+ * searches on. Each species is a copy of an earlier one with a few mutations, so that the species are
+ * related like real ones and have several most parsimonious trees, rather than the many of random data.
+ */
+public class Species {
+
+    private static final String BASES = "AGTC";
+
+    private Species() {
+    }
+
+    /**
+     * Generates distinct species, labelled A, B, C and so on.
+     *
+     * @param seed    the seed of the random mutations
+     * @param count   the number of species (at most 26)
+     * @param length  the number of characters of each species
+     * @return a line "L:XYZ" for each species, as read from species.txt
+     */
+    public static List<String> generate(long seed, int count, int length) {
+        Random random = new Random(seed);
+        List<String> sequences = new ArrayList<>();
+        Set<String> distinct = new HashSet<>();
+        StringBuilder first = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            first.append(BASES.charAt(random.nextInt(BASES.length())));
+        }
+        sequences.add(first.toString());
+        distinct.add(first.toString());
+        while (sequences.size() < count) {
+            //Copy a species already made, with one to three mutations
+            char[] sequence = sequences.get(random.nextInt(sequences.size())).toCharArray();
+            int mutations = 1 + random.nextInt(3);
+            for (int i = 0; i < mutations; i++) {
+                sequence[random.nextInt(length)] = BASES.charAt(random.nextInt(BASES.length()));
+            }
+            if (distinct.add(new String(sequence))) {
+                sequences.add(new String(sequence));
+            }
+        }
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            lines.add((char) ('A' + i) + ":" + sequences.get(i));
+        }
+        return lines;
+    }
+}
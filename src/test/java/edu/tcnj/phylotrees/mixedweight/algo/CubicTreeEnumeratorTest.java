@@ -0,0 +1,108 @@
+package edu.tcnj.phylotrees.mixedweight.algo;
+
+import edu.tcnj.phylotrees.Species;
+import edu.tcnj.phylotrees.mixedweight.Parser;
+import edu.tcnj.phylotrees.mixedweight.data.Alphabet;
+import edu.tcnj.phylotrees.mixedweight.data.Node;
+import edu.tcnj.phylotrees.mixedweight.data.Topology;
+import org.junit.Test;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CubicTreeEnumeratorTest {
+
+    private static final long[] SEEDS = {1, 2, 3};
+    private static final int SPECIES = 8;
+    private static final int CHARS = 16;
+
+    //Transitions (A-G, T-C) cost less than transversions
+    static final double[][] WEIGHTS = {
+            {0, 1, 2.5, 2.5},
+            {1, 0, 2.5, 2.5},
+            {2.5, 2.5, 0, 1},
+            {2.5, 2.5, 1, 0}
+    };
+
+    @Test
+    public void unscaledSankoffMatchesScaled() {
+        //Weights too large to scale to integers without overflow are scored with doubles
+        double[][] large = new double[WEIGHTS.length][WEIGHTS.length];
+        for (int i = 0; i < WEIGHTS.length; i++) {
+            for (int j = 0; j < WEIGHTS.length; j++) {
+                large[i][j] = WEIGHTS[i][j] * 1e7;
+            }
+        }
+        assertNotNull(ScaledSankoff.create(WEIGHTS, CHARS, 2 * SPECIES));
+        assertNull(ScaledSankoff.create(large, CHARS, 2 * SPECIES));
+
+        for (long seed : SEEDS) {
+            List<Node> species = Parser.speciesList(Species.generate(seed, SPECIES, CHARS), Alphabet.DNA);
+            CubicTreeEnumerator scaled = new CubicTreeEnumerator(species, WEIGHTS, CHARS);
+            CubicTreeEnumerator unscaled = new CubicTreeEnumerator(species, large, CHARS);
+            List<Node> scaledTrees = scaled.sankoffEnumerate();
+            List<Node> unscaledTrees = unscaled.sankoffEnumerate();
+            assertTrue(scaledTrees.size() > 0);
+            assertEquals("seed " + seed, scaled.getBestScore() * 1e7, unscaled.getBestScore(), 1e-3);
+            assertEquals("seed " + seed, topologies(species, scaledTrees), topologies(species, unscaledTrees));
+        }
+    }
+
+    @Test
+    public void sinkMatchesCompactingEveryTree() {
+        for (long seed : SEEDS) {
+            List<Node> species = Parser.speciesList(Species.generate(seed, SPECIES, CHARS), Alphabet.DNA);
+            CubicTreeEnumerator enumerator = new CubicTreeEnumerator(species, WEIGHTS, CHARS);
+            List<Node> trees = enumerator.sankoffEnumerate();
+
+            //Contract every tree one after another
+            int bestSize = Integer.MAX_VALUE;
+            Set<Topology> expected = new HashSet<>();
+            for (Node tree : trees) {
+                Set<Node> compact = new EdgeContractor(WEIGHTS, CHARS).edgeContraction(tree);
+                int size = compact.iterator().next().size();
+                if (size < bestSize) {
+                    bestSize = size;
+                    expected.clear();
+                }
+                if (size == bestSize) {
+                    expected.addAll(topologies(species, compact));
+                }
+            }
+
+            ParallelCompactor compactor = new ParallelCompactor(WEIGHTS, CHARS, 4);
+            List<Node> compacted = compactor.compact(trees);
+            assertEquals("seed " + seed, bestSize, compactor.getBestSize());
+            assertEquals("seed " + seed, expected, topologies(species, compacted));
+
+            CubicTreeEnumerator sinkEnumerator = new CubicTreeEnumerator(species, WEIGHTS, CHARS);
+            CompactingTreeSink sink = new CompactingTreeSink(WEIGHTS, CHARS, 4);
+            sinkEnumerator.setTreeSink(sink);
+            sinkEnumerator.sankoffEnumerate();
+            List<Node> mostCompact = sink.finish();
+            assertEquals("seed " + seed, enumerator.getBestScore(), sink.getScore(), 1e-9);
+            assertEquals("seed " + seed, trees.size(), sink.getTreeCount());
+            assertEquals("seed " + seed, bestSize, sink.getBestSize());
+            assertEquals("seed " + seed, expected.size(), mostCompact.size());
+            assertEquals("seed " + seed, expected, topologies(species, mostCompact));
+        }
+    }
+
+    //The distinct unrooted trees of a collection of trees
+    private static Set<Topology> topologies(List<Node> species, Collection<Node> trees) {
+        Map<String, Integer> labels = Topology.index(species);
+        Set<Topology> topologies = new HashSet<>();
+        for (Node tree : trees) {
+            topologies.add(new Topology(tree, labels));
+        }
+        return topologies;
+    }
+}
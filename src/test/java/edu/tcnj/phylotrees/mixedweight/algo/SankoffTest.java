@@ -0,0 +1,62 @@
+package edu.tcnj.phylotrees.mixedweight.algo;
+
+import edu.tcnj.phylotrees.Species;
+import edu.tcnj.phylotrees.mixedweight.Parser;
+import edu.tcnj.phylotrees.mixedweight.data.Alphabet;
+import edu.tcnj.phylotrees.mixedweight.data.Node;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SankoffTest {
+
+    private static final int SPECIES = 8;
+    private static final int CHARS = 16;
+    private static final double[][] WEIGHTS = CubicTreeEnumeratorTest.WEIGHTS;
+
+    @Test
+    public void scaledSankoffMatchesSankoff() {
+        for (long seed = 1; seed <= 3; seed++) {
+            List<Node> species = Parser.speciesList(Species.generate(seed, SPECIES, CHARS), Alphabet.DNA);
+            ScaledSankoff scaledSankoff = ScaledSankoff.create(WEIGHTS, CHARS, 2 * SPECIES);
+            int zeroCostEdges = 0;
+            for (Node tree : new CubicTreeEnumerator(species, WEIGHTS, CHARS).sankoffEnumerate()) {
+                double cost = Sankoff.bottomUp(tree, WEIGHTS, CHARS);
+                List<Node> edges = children(Sankoff.topDown(tree, WEIGHTS, CHARS));
+                List<int[]> fits = fitMasks(tree, new ArrayList<int[]>());
+
+                assertEquals(cost, scaledSankoff.unscale(scaledSankoff.bottomUp(tree)), 1e-9);
+                assertEquals(edges, children(scaledSankoff.topDown(tree)));
+                List<int[]> scaledFits = fitMasks(tree, new ArrayList<int[]>());
+                for (int i = 0; i < fits.size(); i++) {
+                    assertArrayEquals(fits.get(i), scaledFits.get(i));
+                }
+                zeroCostEdges += edges.size();
+            }
+            assertTrue(zeroCostEdges > 0);
+        }
+    }
+
+    //The lower node of each edge
+    private static List<Node> children(List<List<Node>> edges) {
+        List<Node> children = new ArrayList<>();
+        for (List<Node> edge : edges) {
+            children.add(edge.get(1));
+        }
+        return children;
+    }
+
+    //Copies of the top down sets of every node, in preorder
+    private static List<int[]> fitMasks(Node node, List<int[]> fits) {
+        fits.add(node.fitMasks.clone());
+        for (Node child : node.children) {
+            fitMasks(child, fits);
+        }
+        return fits;
+    }
+}
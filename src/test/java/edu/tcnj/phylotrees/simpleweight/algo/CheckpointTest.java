@@ -0,0 +1,108 @@
+package edu.tcnj.phylotrees.simpleweight.algo;
+
+import edu.tcnj.phylotrees.SearchBudget;
+import edu.tcnj.phylotrees.Species;
+import edu.tcnj.phylotrees.simpleweight.data.Node;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CheckpointTest {
+
+    private static final long[] SEEDS = {1, 3, 8};
+    private static final long[] BUDGETS = {500, 2000, 5000};
+
+    private final List<String> lines = Species.generate(5, 11, 20);
+
+    @Test
+    public void resumedFitchMatchesUninterrupted() throws IOException {
+        resumeMatchesUninterrupted(false, false);
+    }
+
+    @Test
+    public void resumedHartiganMatchesUninterrupted() throws IOException {
+        resumeMatchesUninterrupted(false, true);
+    }
+
+    @Test
+    public void resumedParallelFitchMatchesUninterrupted() throws IOException {
+        resumeMatchesUninterrupted(true, false);
+    }
+
+    @Test
+    public void resumedParallelHartiganMatchesUninterrupted() throws IOException {
+        resumeMatchesUninterrupted(true, true);
+    }
+
+    @Test(expected = IOException.class)
+    public void resumeRefusesOtherSpecies() throws IOException {
+        File file = File.createTempFile("checkpoint", ".dat");
+        try {
+            CubicTreeEnumerator<Character> enumerator = new Dataset(lines, true).sequential();
+            enumerator.setCheckpoint(file, 60000);
+            enumerator.fitchEnumerate();
+            assertNull(enumerator.getCheckpointError());
+
+            //Swapping the sequences of two species keeps the labels, characters and weights the same
+            String first = lines.get(0);
+            String second = lines.get(1);
+            lines.set(0, first.substring(0, 2) + second.substring(2));
+            lines.set(1, second.substring(0, 2) + first.substring(2));
+            new Dataset(lines, true).sequential().resume(file);
+        } finally {
+            file.delete();
+        }
+    }
+
+    //Stop enumerations by their budget, resume them from the checkpoints they wrote, and compare the trees
+    //with those of ones that were never stopped. A parallel enumeration's checkpoint depends on which
+    //subproblems were done when it stopped, so several are stopped at different points.
+    private void resumeMatchesUninterrupted(boolean parallel, boolean hartigan) throws IOException {
+        int stoppedEarly = 0;
+        for (long seed : SEEDS) {
+            Dataset dataset = new Dataset(Species.generate(seed, 9, 16), true);
+            CubicTreeEnumerator<Character> uninterrupted = parallel ? dataset.parallel() : dataset.sequential();
+            uninterrupted.planAdditionOrder();
+            List<Node<Character>> expected = enumerate(uninterrupted, hartigan);
+
+            for (long budget : BUDGETS) {
+                String name = (parallel ? "parallel" : "sequential") + ", seed " + seed + ", budget " + budget;
+                File file = File.createTempFile("checkpoint", ".dat");
+                try {
+                    CubicTreeEnumerator<Character> stopped = parallel ? dataset.parallel() : dataset.sequential();
+                    stopped.planAdditionOrder();
+                    stopped.setCheckpoint(file, 60000);
+                    stopped.setBudget(new SearchBudget(0, budget));
+                    enumerate(stopped, hartigan);
+                    assertNull(name, stopped.getCheckpointError());
+                    if (!stopped.isComplete()) {
+                        stoppedEarly++;
+                    }
+
+                    CubicTreeEnumerator<Character> resumed = parallel ? dataset.parallel() : dataset.sequential();
+                    resumed.resume(file);
+                    List<Node<Character>> trees = enumerate(resumed, hartigan);
+                    assertTrue(name, resumed.isComplete());
+                    assertEquals(name, uninterrupted.getParsimonyScore(), resumed.getParsimonyScore());
+                    //The sets of topologies would hide a tree found twice, so compare the counts too
+                    assertEquals(name, expected.size(), trees.size());
+                    assertEquals(name, uninterrupted.getBestCount(), resumed.getBestCount());
+                    assertEquals(name, dataset.topologies(expected), dataset.topologies(trees));
+                } finally {
+                    file.delete();
+                }
+            }
+        }
+        assertTrue(stoppedEarly > 0);
+    }
+
+    private List<Node<Character>> enumerate(CubicTreeEnumerator<Character> enumerator, boolean hartigan) {
+        return hartigan ? enumerator.hartiganEnumerate() : enumerator.fitchEnumerate();
+    }
+}
@@ -0,0 +1,89 @@
+package edu.tcnj.phylotrees.simpleweight.algo;
+
+import edu.tcnj.phylotrees.Species;
+import edu.tcnj.phylotrees.simpleweight.data.Node;
+import edu.tcnj.phylotrees.simpleweight.data.SpillingTreeList;
+import edu.tcnj.phylotrees.simpleweight.data.Topology;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CompactingTreeSinkTest {
+
+    private static final long[] SEEDS = {1, 2, 3};
+
+    @Test
+    public void sinkMatchesCompactingEveryTree() {
+        for (long seed : SEEDS) {
+            Dataset dataset = new Dataset(Species.generate(seed, 9, 16), true);
+            CubicTreeEnumerator<Character> enumerator = dataset.sequential();
+            List<Node<Character>> trees = enumerator.fitchEnumerate();
+
+            //Contract every tree one after another
+            int bestSize = Integer.MAX_VALUE;
+            Set<Topology> expected = new HashSet<>();
+            for (Node<Character> tree : trees) {
+                Set<Node<Character>> compact = new EdgeContractor<>(dataset.worldSet, dataset.chars).edgeContraction(tree);
+                int size = compact.iterator().next().size();
+                if (size < bestSize) {
+                    bestSize = size;
+                    expected.clear();
+                }
+                if (size == bestSize) {
+                    expected.addAll(dataset.topologies(compact));
+                }
+            }
+
+            ParallelCompactor<Character> compactor = new ParallelCompactor<>(dataset.worldSet, dataset.chars, 4);
+            List<Node<Character>> compacted = compactor.compact(trees);
+            assertEquals("seed " + seed, bestSize, compactor.getBestSize());
+            assertEquals("seed " + seed, expected, dataset.topologies(compacted));
+
+            for (CubicTreeEnumerator<Character> sinkEnumerator : Arrays.asList(dataset.sequential(), dataset.parallel())) {
+                String name = sinkEnumerator.getClass().getSimpleName() + ", seed " + seed;
+                CompactingTreeSink<Character> sink = new CompactingTreeSink<>(dataset.worldSet, dataset.chars, 4);
+                sinkEnumerator.setTreeSink(sink);
+                sinkEnumerator.fitchEnumerate();
+                List<Node<Character>> mostCompact = sink.finish();
+                assertEquals(name, enumerator.getParsimonyScore(), sink.getScore());
+                assertEquals(name, trees.size(), sink.getTreeCount());
+                assertEquals(name, bestSize, sink.getBestSize());
+                assertEquals(name, expected.size(), mostCompact.size());
+                assertEquals(name, expected, dataset.topologies(mostCompact));
+            }
+        }
+    }
+
+    @Test
+    public void spillingTreeListKeepsEveryTree() {
+        Dataset dataset = new Dataset(Species.generate(1, 9, 16), true);
+        CubicTreeEnumerator<Character> enumerator = dataset.sequential();
+        Set<Topology> expected = dataset.topologies(enumerator.fitchEnumerate());
+
+        SpillingTreeList<Character> spilled = new SpillingTreeList<>(dataset.species, 1024);
+        try {
+            CubicTreeEnumerator<Character> sinkEnumerator = dataset.parallel();
+            sinkEnumerator.setTreeSink(spilled);
+            sinkEnumerator.fitchEnumerate();
+            assertTrue(spilled.spilledCount() > 0);
+            assertEquals(enumerator.getParsimonyScore(), spilled.getScore());
+            assertEquals(expected.size(), spilled.size());
+            assertEquals(expected, dataset.topologies(spilled));
+
+            //The spilled trees are read back to be contracted
+            ParallelCompactor<Character> compactor = new ParallelCompactor<>(dataset.worldSet, dataset.chars, 4);
+            ParallelCompactor<Character> inMemory = new ParallelCompactor<>(dataset.worldSet, dataset.chars, 4);
+            Set<Topology> compact = dataset.topologies(compactor.compact(spilled));
+            assertEquals(dataset.topologies(inMemory.compact(enumerator.fitchEnumerate())), compact);
+            assertEquals(inMemory.getBestSize(), compactor.getBestSize());
+        } finally {
+            spilled.close();
+        }
+    }
+}
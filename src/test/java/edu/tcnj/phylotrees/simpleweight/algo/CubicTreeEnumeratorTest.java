@@ -0,0 +1,98 @@
+package edu.tcnj.phylotrees.simpleweight.algo;
+
+import edu.tcnj.phylotrees.Species;
+import edu.tcnj.phylotrees.simpleweight.data.Node;
+import edu.tcnj.phylotrees.simpleweight.data.Topology;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CubicTreeEnumeratorTest {
+
+    private static final long[] SEEDS = {1, 2, 3};
+
+    @Test
+    public void parallelAndArrayMatchSequentialFitch() {
+        for (long seed : SEEDS) {
+            Dataset dataset = new Dataset(Species.generate(seed, 9, 16), true);
+            CubicTreeEnumerator<Character> sequential = dataset.sequential();
+            Set<Topology> expected = dataset.topologies(sequential.fitchEnumerate());
+            assertTrue(expected.size() > 0);
+
+            for (CubicTreeEnumerator<Character> enumerator : Arrays.asList(dataset.parallel(), dataset.array())) {
+                List<Node<Character>> trees = enumerator.fitchEnumerate();
+                String name = enumerator.getClass().getSimpleName() + ", seed " + seed;
+                assertEquals(name, sequential.getParsimonyScore(), enumerator.getParsimonyScore());
+                assertEquals(name, expected.size(), trees.size());
+                assertEquals(name, expected, dataset.topologies(trees));
+            }
+        }
+    }
+
+    @Test
+    public void hartiganMatchesFitch() {
+        for (long seed : SEEDS) {
+            Dataset dataset = new Dataset(Species.generate(seed, 9, 16), true);
+            CubicTreeEnumerator<Character> fitch = dataset.sequential();
+            Set<Topology> expected = dataset.topologies(fitch.fitchEnumerate());
+
+            for (CubicTreeEnumerator<Character> enumerator : Arrays.asList(dataset.sequential(), dataset.parallel())) {
+                List<Node<Character>> trees = enumerator.hartiganEnumerate();
+                String name = enumerator.getClass().getSimpleName() + ", seed " + seed;
+                assertEquals(name, fitch.getParsimonyScore(), enumerator.getParsimonyScore());
+                assertEquals(name, expected, dataset.topologies(trees));
+            }
+        }
+    }
+
+    @Test
+    public void compressedPatternsMatchEveryColumn() {
+        for (long seed : SEEDS) {
+            //Every column is repeated, and the species differ by few mutations, so some patterns are uninformative
+            List<String> lines = new ArrayList<>();
+            for (String line : Species.generate(seed, 9, 12)) {
+                lines.add(line + line.substring(line.indexOf(':') + 1));
+            }
+            Dataset compressed = new Dataset(lines, true);
+            Dataset columns = new Dataset(lines, false);
+            assertTrue(compressed.uninformativeScore > 0);
+            assertTrue(compressed.chars < columns.chars);
+
+            CubicTreeEnumerator<Character> compressedEnumerator = compressed.sequential();
+            CubicTreeEnumerator<Character> columnsEnumerator = columns.sequential();
+            List<Node<Character>> compressedTrees = compressedEnumerator.fitchEnumerate();
+            List<Node<Character>> columnsTrees = columnsEnumerator.fitchEnumerate();
+            assertEquals(columnsEnumerator.getParsimonyScore(),
+                    compressedEnumerator.getParsimonyScore() + compressed.uninformativeScore);
+            assertEquals(columns.topologies(columnsTrees), compressed.topologies(compressedTrees));
+
+            //The uninformative patterns are kept to contract the trees
+            ParallelCompactor<Character> compressedCompactor = new ParallelCompactor<>(compressed.worldSet,
+                    compressed.chars, 2);
+            ParallelCompactor<Character> columnsCompactor = new ParallelCompactor<>(columns.worldSet, columns.chars, 2);
+            Set<Topology> compressedCompact = compressed.topologies(compressedCompactor.compact(compressedTrees));
+            Set<Topology> columnsCompact = columns.topologies(columnsCompactor.compact(columnsTrees));
+            assertEquals(columnsCompactor.getBestSize(), compressedCompactor.getBestSize());
+            assertEquals(columnsCompact, compressedCompact);
+        }
+    }
+
+    @Test
+    public void additionOrderKeepsTheTrees() {
+        Dataset dataset = new Dataset(Species.generate(4, 9, 16), true);
+        CubicTreeEnumerator<Character> inputOrder = dataset.sequential();
+        Set<Topology> expected = dataset.topologies(inputOrder.fitchEnumerate());
+
+        CubicTreeEnumerator<Character> maxMin = dataset.sequential();
+        maxMin.planAdditionOrder();
+        List<Node<Character>> trees = maxMin.fitchEnumerate();
+        assertEquals(inputOrder.getParsimonyScore(), maxMin.getParsimonyScore());
+        assertEquals(expected, dataset.topologies(trees));
+    }
+}
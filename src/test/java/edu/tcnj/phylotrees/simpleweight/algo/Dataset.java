@@ -0,0 +1,69 @@
+package edu.tcnj.phylotrees.simpleweight.algo;
+
+import edu.tcnj.phylotrees.simpleweight.Parser;
+import edu.tcnj.phylotrees.simpleweight.data.CharacterList;
+import edu.tcnj.phylotrees.simpleweight.data.Node;
+import edu.tcnj.phylotrees.simpleweight.data.Topology;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Species parsed for the tests as the program parses them, with their site patterns either compressed
+ * into weighted characters or kept as one character per column.
+ */
+class Dataset {
+
+    final List<Node<Character>> species = new ArrayList<>();
+    final CharacterList<Character> worldSet;
+    //The weight of each character, or null if every column is kept
+    final List<Integer> weights;
+    //The number of characters to score cubic trees with, and the score the rest add to every tree
+    final int informative;
+    final int uninformativeScore;
+    //All of the characters, which are needed to contract trees
+    final int chars;
+
+    Dataset(List<String> lines, boolean compress) {
+        Parser parser = new Parser();
+        List<Set<Character>> worldSet0 = new ArrayList<>();
+        weights = compress ? new ArrayList<Integer>() : null;
+        informative = parser.speciesList(lines, species, worldSet0, weights);
+        uninformativeScore = compress ? parser.uninformativeScore(worldSet0, weights, informative) : 0;
+        worldSet = new CharacterList<>(worldSet0);
+        chars = worldSet0.size();
+    }
+
+    CubicTreeEnumerator<Character> sequential() {
+        return weights == null ? new CubicTreeEnumerator<>(species, worldSet, informative)
+                : new CubicTreeEnumerator<>(species, worldSet, informative, weights);
+    }
+
+    CubicTreeEnumerator<Character> parallel() {
+        ParallelCubicTreeEnumerator<Character> enumerator = weights == null
+                ? new ParallelCubicTreeEnumerator<>(species, worldSet, informative, 4)
+                : new ParallelCubicTreeEnumerator<>(species, worldSet, informative, weights, 4);
+        //Split small inputs too, so that they are searched in parallel
+        enumerator.setSplitSize(5);
+        return enumerator;
+    }
+
+    CubicTreeEnumerator<Character> array() {
+        return weights == null ? new ArrayCubicTreeEnumerator<>(species, worldSet, informative)
+                : new ArrayCubicTreeEnumerator<>(species, worldSet, informative, weights);
+    }
+
+    //The distinct unrooted trees of a collection of trees
+    Set<Topology> topologies(Collection<Node<Character>> trees) {
+        Map<String, Integer> labels = Topology.index(species);
+        Set<Topology> topologies = new HashSet<>();
+        for (Node<Character> tree : trees) {
+            topologies.add(new Topology(tree, labels));
+        }
+        return topologies;
+    }
+}